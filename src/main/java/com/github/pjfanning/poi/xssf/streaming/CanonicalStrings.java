@@ -0,0 +1,74 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Bounded pool of weakly referenced strings, keyed by index, that lets repeated lookups of an index return the same
+ * String instance. The pool is a direct mapped table: each index maps to one slot and a newer index evicts the
+ * string that was in its slot. Strings are only kept alive by the callers that hold them.
+ * <p>
+ * The pool is lock free. Racing threads may each store their own instance; a lookup that misses because of a race
+ * just returns a new instance.
+ * </p>
+ */
+final class CanonicalStrings {
+    private static final int MAX_SLOTS = 1 << 24;
+
+    private static final class Slot extends WeakReference<String> {
+        final int idx;
+
+        Slot(int idx, String value) {
+            super(value);
+            this.idx = idx;
+        }
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+
+    /**
+     * @param maxSlots the maximum number of strings to pool (rounded up to a power of 2)
+     */
+    CanonicalStrings(int maxSlots) {
+        if (maxSlots <= 0) {
+            throw new IllegalArgumentException("maxSlots must be positive: " + maxSlots);
+        }
+        int size = maxSlots >= MAX_SLOTS ? MAX_SLOTS : Integer.highestOneBit(Math.max(1, maxSlots - 1)) << 1;
+        slots = new Slot[size];
+        mask = size - 1;
+    }
+
+    /**
+     * @param idx the index of the string
+     * @return the pooled instance or <code>null</code> if there is none
+     */
+    String get(int idx) {
+        Slot slot = slots[idx & mask];
+        return slot == null || slot.idx != idx ? null : slot.get();
+    }
+
+    /**
+     * @param idx the index of the string
+     * @param value the string that was looked up
+     * @return the pooled instance, which is <code>value</code> unless another thread pooled an instance first
+     */
+    String put(int idx, String value) {
+        int pos = idx & mask;
+        Slot slot = slots[pos];
+        if (slot != null && slot.idx == idx) {
+            String pooled = slot.get();
+            if (pooled != null) {
+                return pooled;
+            }
+        }
+        slots[pos] = new Slot(idx, value);
+        return value;
+    }
+
+    /**
+     * @return the number of slots
+     */
+    int capacity() {
+        return slots.length;
+    }
+}
@@ -0,0 +1,212 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The chunk and capacity logic of {@link ChunkedStringArray} and {@link ChunkedLongArray}: a dense, index
+ * addressed store whose values are kept in fixed size chunks, so that growing the store never copies existing
+ * values and lookups are plain array access. Subclasses supply the chunk type (eg <code>String[]</code> or
+ * <code>long[]</code>) and read and write the values of a chunk.
+ * <p>
+ * Writes are expected to come from one thread at a time (they are serialized on this instance). Reads are
+ * lock free and see every value that was set before the read started.
+ * </p>
+ *
+ * @param <C> the type of a chunk
+ */
+abstract class ChunkedArray<C> {
+    static final int CHUNK_SHIFT = 12;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int MIN_CHUNK_SIZE = 16;
+    // hints usually come from untrusted input (eg a uniqueCount attribute), so do not reserve more than this up front
+    private static final int MAX_PRESIZE = 1 << 24;
+
+    private volatile C[] chunks = newChunks(0);
+    private volatile int length;
+    private int size;
+
+    /**
+     * @param count the number of chunks
+     * @return a new array of chunks
+     */
+    abstract C[] newChunks(int count);
+
+    /**
+     * @param chunkSize the number of values in the chunk
+     * @return a new chunk, with no values set
+     */
+    abstract C newChunk(int chunkSize);
+
+    /**
+     * @param chunk a chunk
+     * @return the number of values the chunk can hold
+     */
+    abstract int chunkLength(C chunk);
+
+    /**
+     * @param chunk a chunk
+     * @param offset the offset in the chunk, which is lower than its length
+     * @return whether a value has been set at this offset
+     */
+    abstract boolean isSet(C chunk, int offset);
+
+    /**
+     * @param expectedSize the number of values that are expected to be stored
+     */
+    final synchronized void ensureCapacity(int expectedSize) {
+        int capacity = Math.min(expectedSize, MAX_PRESIZE);
+        if (capacity <= 0) {
+            return;
+        }
+        int chunkCount = ((capacity - 1) >>> CHUNK_SHIFT) + 1;
+        C[] current = chunks;
+        if (chunkCount > current.length) {
+            C[] grown = newChunks(chunkCount);
+            System.arraycopy(current, 0, grown, 0, current.length);
+            current = grown;
+        }
+        if (current[0] == null) {
+            current[0] = newChunk(Math.max(MIN_CHUNK_SIZE, Math.min(capacity, CHUNK_SIZE)));
+        }
+        chunks = current;
+    }
+
+    /**
+     * @param idx the index of a value
+     * @return the chunk that holds the index (its offset is <code>idx &amp; CHUNK_MASK</code>), or
+     * <code>null</code> if no value has been set at this index; the offset can be beyond the end of the chunk
+     */
+    final C readChunk(int idx) {
+        if (idx < 0 || idx >= length) {
+            return null;
+        }
+        return chunks[idx >>> CHUNK_SHIFT];
+    }
+
+    /**
+     * Grows the store so that it has room for the index. The caller then sets the value and calls
+     * {@link #published(int, boolean)}, while it holds the lock on this instance.
+     *
+     * @param idx the index of a value
+     * @return the chunk that holds the index, at offset <code>idx &amp; CHUNK_MASK</code>
+     * @throws IllegalArgumentException if the index is negative
+     */
+    final C writeChunk(int idx) {
+        if (idx < 0) {
+            throw new IllegalArgumentException("Index must not be negative: " + idx);
+        }
+        int chunkIdx = idx >>> CHUNK_SHIFT;
+        int offset = idx & CHUNK_MASK;
+        C[] current = chunks;
+        if (chunkIdx >= current.length) {
+            C[] grown = newChunks(Math.max(chunkIdx + 1, current.length * 2));
+            System.arraycopy(current, 0, grown, 0, current.length);
+            current = grown;
+            chunks = current;
+        }
+        C chunk = current[chunkIdx];
+        if (chunk == null) {
+            chunk = newChunk(chunkSize(offset));
+            current[chunkIdx] = chunk;
+        } else if (offset >= chunkLength(chunk)) {
+            int chunkLength = chunkLength(chunk);
+            C grown = newChunk(chunkSize(Math.max(offset, chunkLength * 2 - 1)));
+            System.arraycopy(chunk, 0, grown, 0, chunkLength);
+            chunk = grown;
+            current[chunkIdx] = chunk;
+        }
+        return chunk;
+    }
+
+    /**
+     * Publishes a value that was set in the chunk returned by {@link #writeChunk(int)} to lock free readers.
+     *
+     * @param idx the index of the value
+     * @param added whether there was no value at this index before
+     */
+    final void published(int idx, boolean added) {
+        if (added) {
+            size++;
+        }
+        if (idx >= length) {
+            // volatile write publishes the value to lock free readers
+            length = idx + 1;
+        } else {
+            // so does a volatile write of the chunks, when the value is below the length
+            C[] current = chunks;
+            chunks = current;
+        }
+    }
+
+    /**
+     * @return one more than the highest index that has been set
+     */
+    final int length() {
+        return length;
+    }
+
+    /**
+     * @return the number of values that have been set
+     */
+    final synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return iterator over the indexes that have values, in ascending order
+     */
+    final Iterator<Integer> indexIterator() {
+        final int limit = length;
+        return new Iterator<Integer>() {
+            private int next = advance(0);
+
+            private int advance(int from) {
+                int idx = from;
+                while (idx < limit) {
+                    C chunk = chunks[idx >>> CHUNK_SHIFT];
+                    int offset = idx & CHUNK_MASK;
+                    if (chunk == null || offset >= chunkLength(chunk)) {
+                        // skip to the start of the next chunk
+                        idx = (idx | CHUNK_MASK) + 1;
+                        if (idx <= 0) {
+                            return limit;
+                        }
+                    } else if (!isSet(chunk, offset)) {
+                        idx++;
+                    } else {
+                        return idx;
+                    }
+                }
+                return limit;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < limit;
+            }
+
+            @Override
+            public Integer next() {
+                if (next >= limit) {
+                    throw new NoSuchElementException();
+                }
+                int idx = next;
+                next = advance(idx + 1);
+                return idx;
+            }
+        };
+    }
+
+    final synchronized void clear() {
+        chunks = newChunks(0);
+        length = 0;
+        size = 0;
+    }
+
+    private static int chunkSize(int offset) {
+        int needed = Math.max(MIN_CHUNK_SIZE, offset + 1);
+        return needed >= CHUNK_SIZE ? CHUNK_SIZE : Integer.highestOneBit(needed - 1) << 1;
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.util.Arrays;
+
+/**
+ * Dense, index addressed store of non-negative <code>long</code> values (typically offsets into some other
+ * storage). Works like {@link ChunkedStringArray}: values are kept in fixed size chunks, writes are serialized
+ * on this instance and reads are lock free.
+ */
+final class ChunkedLongArray extends ChunkedArray<long[]> {
+    static final long ABSENT = -1L;
+
+    ChunkedLongArray() {}
+
+    /**
+     * @param idx the index of the value
+     * @return the value or {@link #ABSENT} if no value has been set at this index
+     */
+    long get(int idx) {
+        long[] chunk = readChunk(idx);
+        int offset = idx & CHUNK_MASK;
+        return chunk == null || offset >= chunk.length ? ABSENT : chunk[offset];
+    }
+
+    /**
+     * @param idx the index of the value
+     * @param value the value (not negative)
+     * @throws IllegalArgumentException if the index or the value is negative
+     */
+    synchronized void set(int idx, long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Value must not be negative: " + value);
+        }
+        long[] chunk = writeChunk(idx);
+        int offset = idx & CHUNK_MASK;
+        boolean added = chunk[offset] == ABSENT;
+        chunk[offset] = value;
+        published(idx, added);
+    }
+
+    @Override
+    long[][] newChunks(int count) {
+        return new long[count][];
+    }
+
+    @Override
+    long[] newChunk(int chunkSize) {
+        long[] chunk = new long[chunkSize];
+        Arrays.fill(chunk, ABSENT);
+        return chunk;
+    }
+
+    @Override
+    int chunkLength(long[] chunk) {
+        return chunk.length;
+    }
+
+    @Override
+    boolean isSet(long[] chunk, int offset) {
+        return chunk[offset] != ABSENT;
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+/**
+ * Dense, index addressed store of strings. The entries are kept in fixed size <code>String[]</code> chunks
+ * so that growing the store never copies existing entries and lookups are plain array access.
+ * <p>
+ * Writes are expected to come from one thread at a time (they are serialized on this instance). Reads are
+ * lock free and see every entry that was set before the read started.
+ * </p>
+ */
+final class ChunkedStringArray extends ChunkedArray<String[]> {
+    ChunkedStringArray() {}
+
+    ChunkedStringArray(int expectedSize) {
+        ensureCapacity(expectedSize);
+    }
+
+    /**
+     * @param idx the index of the entry
+     * @return the entry or <code>null</code> if no entry has been set at this index
+     */
+    String get(int idx) {
+        String[] chunk = readChunk(idx);
+        int offset = idx & CHUNK_MASK;
+        return chunk == null || offset >= chunk.length ? null : chunk[offset];
+    }
+
+    /**
+     * @param idx the index of the entry
+     * @param value the entry (not null)
+     * @throws IllegalArgumentException if the index is negative
+     */
+    synchronized void set(int idx, String value) {
+        String[] chunk = writeChunk(idx);
+        int offset = idx & CHUNK_MASK;
+        boolean added = chunk[offset] == null;
+        chunk[offset] = value;
+        published(idx, added);
+    }
+
+    @Override
+    String[][] newChunks(int count) {
+        return new String[count][];
+    }
+
+    @Override
+    String[] newChunk(int chunkSize) {
+        return new String[chunkSize];
+    }
+
+    @Override
+    int chunkLength(String[] chunk) {
+        return chunk.length;
+    }
+
+    @Override
+    boolean isSet(String[] chunk, int offset) {
+        return chunk[offset] != null;
+    }
+}
@@ -55,6 +55,14 @@ public abstract class CommentsTableBase extends POIXMLDocumentPart implements Co
     protected final boolean fullFormat;
     protected ConcurrentMap<String, SerializableComment> comments;
     protected ConcurrentMap<Integer, String> authors;
+    private volatile TableLimits limits = TableLimits.NONE;
+    // the number of chars in the comments that have been stored
+    private long storedChars;
+    // the number of chars in the authors
+    private long authorChars;
+
+    // rough heap cost of a comment object, its map entry and the headers of its three strings
+    private static final int COMMENT_OVERHEAD = 160;
 
     private static final XmlOptions textSaveOptions = new XmlOptions(Constants.saveOptions);
     static {
@@ -119,7 +127,9 @@ public abstract class CommentsTableBase extends POIXMLDocumentPart implements Co
                     if (xmlEvent.isStartElement()) {
                         StartElement se = xmlEvent.asStartElement();
                         if (se.getName().getLocalPart().equals("author")) {
-                            authors.put(getNumberOfAuthors(), xmlEventReader.getElementText());
+                            String author = xmlEventReader.getElementText();
+                            authors.put(getNumberOfAuthors(), author);
+                            authorChars += author.length();
                         } else if (se.getName().getLocalPart().equals("comment")) {
                             String ref = se.getAttributeByName(new QName("ref")).getValue();
                             String authorId = se.getAttributeByName(new QName("authorId")).getValue();
@@ -137,7 +147,7 @@ public abstract class CommentsTableBase extends POIXMLDocumentPart implements Co
                             xc.setAddress(new CellAddress(ref));
                             xc.setAuthor(authors.get(Integer.parseInt(authorId)));
                             xc.setString(str);
-                            comments.put(ref, xc);
+                            putComment(ref, xc, null);
                         }
                     }
                 }
@@ -154,6 +164,68 @@ public abstract class CommentsTableBase extends POIXMLDocumentPart implements Co
         return comments.size();
     }
 
+    /**
+     * Sets caps on the size of this table. Each comment that is read or added is checked before it is stored, and
+     * a {@link TableLimitExceededException} is thrown as soon as a comment would cross a limit (the comment is
+     * not stored). The entry length is the length of the comment text and the total chars also count the author
+     * and cell reference of each comment. The temp file size is checked before each comment is stored, so the
+     * temp file can end up one comment over the limit. The default is {@link TableLimits#NONE}.
+     *
+     * @param limits the limits to apply
+     */
+    public void configureLimits(TableLimits limits) {
+        if (limits == null) {
+            throw new IllegalArgumentException("limits must not be null");
+        }
+        this.limits = limits;
+    }
+
+    /**
+     * @return the limits that are applied to this table
+     */
+    public TableLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Estimates how much memory and disk space this table uses.
+     *
+     * @return the estimated footprint of this table
+     */
+    public TableFootprint estimateFootprint() {
+        return new TableFootprint(estimateHeapBytes(), estimateOffHeapBytes(), estimateTempFileBytes(),
+                comments.size());
+    }
+
+    /**
+     * Used by {@link #estimateFootprint()}. The default is derived from the running count of stored chars, so it
+     * does not walk the comments, and assumes that the comments and authors are held on the heap.
+     *
+     * @return the estimated number of bytes that the comments and authors hold on the heap
+     */
+    protected long estimateHeapBytes() {
+        return comments.size() * (long) COMMENT_OVERHEAD + 2 * storedChars
+                + getNumberOfAuthors() * (long) SharedStringsTableBase.HEAP_ENTRY_OVERHEAD + 2 * authorChars;
+    }
+
+    /**
+     * Used by {@link #estimateFootprint()}.
+     *
+     * @return the estimated number of bytes that this table holds in direct (off-heap) buffers
+     */
+    protected long estimateOffHeapBytes() {
+        return 0;
+    }
+
+    /**
+     * Used by {@link #estimateFootprint()}.
+     *
+     * @return the number of bytes in the temp files of this table
+     */
+    protected long estimateTempFileBytes() {
+        return 0;
+    }
+
     @Override
     public int getNumberOfAuthors() {
         return authors.size();
@@ -180,6 +252,7 @@ public abstract class CommentsTableBase extends POIXMLDocumentPart implements Co
             authors.put(index++, "");
         }
         authors.put(index, nullSafeAuthor);
+        authorChars += nullSafeAuthor.length();
         return index;
     }
 
@@ -196,7 +269,12 @@ public abstract class CommentsTableBase extends POIXMLDocumentPart implements Co
 
     @Override
     public boolean removeComment(CellAddress cellRef) {
-        return comments.remove(cellRef.formatAsString()) != null;
+        SerializableComment removed = comments.remove(cellRef.formatAsString());
+        if (removed == null) {
+            return false;
+        }
+        storedChars -= removed.estimateChars();
+        return true;
     }
 
     @Override
@@ -242,30 +320,73 @@ public abstract class CommentsTableBase extends POIXMLDocumentPart implements Co
         ctComment.setRef(key);
         SerializableComment serializableComment = new SerializableComment();
         serializableComment.setAddress(ref);
-        comments.put(key, serializableComment);
+        putComment(key, serializableComment, null);
 
         return new XSSFComment(this, ctComment, vmlShape);
     }
 
     @Override
     public void referenceUpdated(CellAddress oldReference, XSSFComment comment) {
-        removeComment(oldReference);
-        addToMap(comment);
+        addToMap(comment, oldReference.formatAsString());
     }
 
     @Override
     public void commentUpdated(XSSFComment comment) {
-        removeComment(comment.getAddress());
-        addToMap(comment);
+        addToMap(comment, null);
     }
 
-    private void addToMap(XSSFComment comment) {
+    private void addToMap(XSSFComment comment, String oldRef) {
         SerializableComment serializableComment = new SerializableComment();
         serializableComment.setAddress(comment.getAddress());
         serializableComment.setString(comment.getString());
         serializableComment.setAuthor(comment.getAuthor());
         serializableComment.setVisible(comment.isVisible());
-        comments.put(comment.getAddress().formatAsString(), serializableComment);
+        putComment(comment.getAddress().formatAsString(), serializableComment, oldRef);
+    }
+
+    /**
+     * Adds or replaces the comment at <code>ref</code>, and removes the comment at <code>oldRef</code> (if it is
+     * not null) when a comment is moved. The limits are checked before anything is changed.
+     */
+    private void putComment(String ref, SerializableComment comment, String oldRef) {
+        SerializableComment replaced = comments.get(ref);
+        SerializableComment moved = oldRef == null || oldRef.equals(ref) ? null : comments.get(oldRef);
+        TableLimits tableLimits = limits;
+        if (tableLimits != TableLimits.NONE) {
+            String tableName = getClass().getSimpleName();
+            long entries = comments.size() + 1L - (replaced == null ? 0 : 1) - (moved == null ? 0 : 1);
+            long totalChars = storedChars + comment.estimateChars() - estimateChars(replaced) - estimateChars(moved);
+            tableLimits.checkEntry(tableName, comment.getStoredTextLength(), entries, totalChars);
+            if (tableLimits.limitsTempFileBytes()) {
+                tableLimits.checkTempFileBytes(tableName, estimateTempFileBytes());
+            }
+        }
+        if (moved != null) {
+            removeComment(new CellAddress(oldRef));
+        }
+        storeComment(ref, comment);
+        storedChars += comment.estimateChars() - estimateChars(replaced);
+    }
+
+    private static int estimateChars(SerializableComment comment) {
+        return comment == null ? 0 : comment.estimateChars();
+    }
+
+    /**
+     * @return the number of chars in the stored comments (see {@link TableLimits.Builder#maxTotalChars(long)})
+     */
+    protected long getStoredChars() {
+        return storedChars;
+    }
+
+    /**
+     * Adds or replaces a comment in {@link #comments}. Subclasses can override this to prepare their storage first.
+     *
+     * @param ref the cell reference of the comment
+     * @param comment the comment
+     */
+    protected void storeComment(String ref, SerializableComment comment) {
+        comments.put(ref, comment);
     }
 
     /**
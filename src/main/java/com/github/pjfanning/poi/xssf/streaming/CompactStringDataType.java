@@ -0,0 +1,83 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.h2.mvstore.DataUtils;
+import org.h2.mvstore.WriteBuffer;
+import org.h2.mvstore.type.BasicDataType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * MVStore data type for the strings that the temp file tables store, as keys or as values. Each string is written
+ * as a varint header followed by its bytes. The low bit of the header says whether the bytes are Latin-1 (one byte
+ * per char, which covers most spreadsheet text and decodes without a UTF-8 decoder) or UTF-8; the remaining bits
+ * hold the number of bytes. Strings compare in natural (<code>String.compareTo</code>) order.
+ */
+final class CompactStringDataType extends BasicDataType<String> {
+    static final CompactStringDataType INSTANCE = new CompactStringDataType();
+
+    // rough size of a String object and its array header
+    private static final int STRING_OVERHEAD = 40;
+
+    private CompactStringDataType() {}
+
+    @Override
+    public int getMemory(String obj) {
+        // MVStore calls this a lot, so do not scan the chars (which would show how compact the string is)
+        return STRING_OVERHEAD + 2 * obj.length();
+    }
+
+    @Override
+    public void write(WriteBuffer buff, String obj) {
+        if (isLatin1(obj)) {
+            byte[] bytes = obj.getBytes(StandardCharsets.ISO_8859_1);
+            buff.putVarInt(bytes.length << 1 | 1);
+            buff.put(bytes);
+        } else {
+            byte[] bytes = obj.getBytes(StandardCharsets.UTF_8);
+            buff.putVarInt(bytes.length << 1);
+            buff.put(bytes);
+        }
+    }
+
+    @Override
+    public String read(ByteBuffer buff) {
+        int header = DataUtils.readVarInt(buff);
+        int length = header >>> 1;
+        String value;
+        if (buff.hasArray()) {
+            int offset = buff.arrayOffset() + buff.position();
+            value = new String(buff.array(), offset, length, charset(header));
+            buff.position(buff.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buff.get(bytes);
+            value = new String(bytes, charset(header));
+        }
+        return value;
+    }
+
+    @Override
+    public int compare(String a, String b) {
+        return a.compareTo(b);
+    }
+
+    @Override
+    public String[] createStorage(int size) {
+        return new String[size];
+    }
+
+    private static Charset charset(int header) {
+        return (header & 1) == 0 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1;
+    }
+
+    private static boolean isLatin1(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
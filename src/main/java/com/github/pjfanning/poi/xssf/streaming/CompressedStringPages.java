@@ -0,0 +1,344 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Store of strings that packs consecutive entries into pages and compresses each page with {@link Deflater}.
+ * The entries are added in ascending index order (0, 1, 2...); there can be gaps in the indexes (eg after a file
+ * with a wrong uniqueCount is read), and a gap starts a new page. The page that is being filled is kept uncompressed; once it
+ * reaches the page size, it is compressed and handed to a {@link PageStore}. A small LRU cache of decompressed
+ * pages makes reads of nearby entries cheap. An entry that is added at an index below {@link #size()} (eg when the
+ * uniqueCount of a file is lower than its number of entries) replaces the entry at that index; such entries are
+ * rare, so they are kept uncompressed, on the heap.
+ * <p>
+ * Each page is written as a varint with its uncompressed length followed by the deflated entries; each entry is
+ * a varint byte length followed by the UTF-8 bytes. All access is serialized on this instance.
+ * </p>
+ */
+final class CompressedStringPages {
+    static final int DEFAULT_PAGE_SIZE = 1 << 14;
+    static final int DEFAULT_CACHED_PAGES = 16;
+    private static final int MAX_VARINT_LENGTH = 5;
+
+    /**
+     * Where the compressed pages are kept.
+     */
+    interface PageStore {
+        void putPage(int pageNo, byte[] page);
+
+        byte[] getPage(int pageNo);
+
+        void clear();
+    }
+
+    /**
+     * Keeps the compressed pages on the heap.
+     */
+    static final class HeapPageStore implements PageStore {
+        private final List<byte[]> pages = new ArrayList<>();
+
+        @Override
+        public void putPage(int pageNo, byte[] page) {
+            if (pageNo == pages.size()) {
+                pages.add(page);
+            } else {
+                pages.set(pageNo, page);
+            }
+        }
+
+        @Override
+        public byte[] getPage(int pageNo) {
+            return pages.get(pageNo);
+        }
+
+        @Override
+        public void clear() {
+            pages.clear();
+        }
+    }
+
+    private final PageStore pageStore;
+    private final int pageSize;
+    private final Map<Integer, String[]> cache;
+    private final Deflater deflater = new Deflater();
+    private final Inflater inflater = new Inflater();
+    // page p holds the entries from pageStarts[p] (inclusive) to pageEnds[p] (exclusive)
+    private int[] pageStarts = new int[16];
+    private int[] pageEnds = new int[16];
+    private int pageCount;
+    private final List<String> openEntries = new ArrayList<>();
+    private ByteBuffer openPage;
+    // index of the first entry in the open page
+    private int openStart;
+    private int size;
+    private long compressedBytes;
+    // entries that were added below size, they take precedence over the pages
+    private final TreeMap<Integer, String> overrides = new TreeMap<>();
+    private long overrideChars;
+
+    CompressedStringPages(PageStore pageStore) {
+        this(pageStore, DEFAULT_PAGE_SIZE, DEFAULT_CACHED_PAGES);
+    }
+
+    /**
+     * @param pageStore where to keep the compressed pages
+     * @param pageSize the uncompressed size (in bytes) at which a page is compressed
+     * @param cachedPages the number of decompressed pages to cache
+     */
+    CompressedStringPages(PageStore pageStore, int pageSize, final int cachedPages) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        }
+        this.pageStore = pageStore;
+        this.pageSize = pageSize;
+        this.openPage = ByteBuffer.allocate(pageSize + MAX_VARINT_LENGTH);
+        this.cache = new LinkedHashMap<Integer, String[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String[]> eldest) {
+                return size() > cachedPages;
+            }
+        };
+    }
+
+    /**
+     * @param idx the index of the entry; if this is higher than the current {@link #size()}, the indexes in
+     *            between have no entry, and if it is lower, the entry replaces the one at this index
+     * @param value the entry
+     * @throws IllegalArgumentException if the index is negative
+     */
+    synchronized void add(int idx, String value) {
+        if (idx < 0) {
+            throw new IllegalArgumentException("Index must not be negative: " + idx);
+        }
+        if (idx < size) {
+            String replaced = overrides.put(idx, value);
+            overrideChars += value.length() - (replaced == null ? 0 : replaced.length());
+            return;
+        }
+        if (idx > size) {
+            // the entries of a page are contiguous, so a gap starts a new page
+            if (!openEntries.isEmpty()) {
+                sealPage();
+            }
+            openStart = idx;
+            size = idx;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int needed = Utf8Arena.varIntLength(bytes.length) + bytes.length;
+        if (needed > openPage.remaining()) {
+            ByteBuffer grown = ByteBuffer.allocate(openPage.position() + needed);
+            openPage.flip();
+            grown.put(openPage);
+            openPage = grown;
+        }
+        Utf8Arena.putVarInt(openPage, bytes.length);
+        openPage.put(bytes);
+        openEntries.add(value);
+        size++;
+        if (openPage.position() >= pageSize) {
+            sealPage();
+        }
+    }
+
+    /**
+     * @param idx the index of the entry
+     * @return the entry or <code>null</code> if there is no entry at this index
+     */
+    synchronized String get(int idx) {
+        if (idx < 0 || idx >= size) {
+            return null;
+        }
+        if (!overrides.isEmpty()) {
+            String override = overrides.get(idx);
+            if (override != null) {
+                return override;
+            }
+        }
+        if (idx >= openStart) {
+            return openEntries.get(idx - openStart);
+        }
+        int pageNo = findPage(idx);
+        if (pageNo < 0 || idx >= pageEnds[pageNo]) {
+            return null;
+        }
+        String[] entries = cache.get(pageNo);
+        if (entries == null) {
+            entries = loadPage(pageNo);
+            cache.put(pageNo, entries);
+        }
+        return entries[idx - pageStarts[pageNo]];
+    }
+
+    /**
+     * @return the highest index that has an entry plus 1 (the number of entries, if there are no gaps)
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of bytes in the compressed pages
+     */
+    synchronized long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    /**
+     * @return the estimated heap size (in bytes) of the page that is being filled, of the cached pages and of the
+     * replaced entries, which are not compressed
+     */
+    synchronized long getBufferedBytes() {
+        // the entries of the open page and of the cached pages are held as Strings (2 bytes per char, at most)
+        return openPage.capacity() * 3L + cache.size() * (long) pageSize * 2
+                + overrides.size() * (long) SharedStringsTableBase.HEAP_ENTRY_OVERHEAD + 2 * overrideChars;
+    }
+
+    /**
+     * @return iterator over the indexes of the entries, in ascending order
+     */
+    Iterator<Integer> indexIterator() {
+        final int limit = size();
+        return new Iterator<Integer>() {
+            private int next = nextIndex(0);
+
+            @Override
+            public boolean hasNext() {
+                return next < limit;
+            }
+
+            @Override
+            public Integer next() {
+                if (next >= limit) {
+                    throw new NoSuchElementException();
+                }
+                int idx = next;
+                next = nextIndex(idx + 1);
+                return idx;
+            }
+        };
+    }
+
+    // the lowest index that has an entry and is not lower than from, or size if there is none
+    private synchronized int nextIndex(int from) {
+        int next = nextPagedIndex(from);
+        if (!overrides.isEmpty()) {
+            // a replaced entry can be in a gap between the pages
+            Integer override = overrides.ceilingKey(from);
+            if (override != null && override < next) {
+                return override;
+            }
+        }
+        return next;
+    }
+
+    private int nextPagedIndex(int from) {
+        if (from >= openStart) {
+            return Math.min(from, size);
+        }
+        int pageNo = findPage(from);
+        if (pageNo >= 0 && from < pageEnds[pageNo]) {
+            return from;
+        }
+        return pageNo + 1 < pageCount ? pageStarts[pageNo + 1] : openStart;
+    }
+
+    // the page with the highest start that is not higher than idx, or -1 if there is none
+    private int findPage(int idx) {
+        int pageNo = Arrays.binarySearch(pageStarts, 0, pageCount, idx);
+        return pageNo < 0 ? -pageNo - 2 : pageNo;
+    }
+
+    /**
+     * Clears the page store and releases the cached pages and the compression resources.
+     * This instance cannot be used afterwards.
+     */
+    synchronized void close() {
+        pageStore.clear();
+        cache.clear();
+        openEntries.clear();
+        openPage.clear();
+        overrides.clear();
+        overrideChars = 0;
+        pageCount = 0;
+        openStart = 0;
+        size = 0;
+        compressedBytes = 0;
+        deflater.end();
+        inflater.end();
+    }
+
+    private void sealPage() {
+        int rawLength = openPage.position();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(rawLength / 4 + MAX_VARINT_LENGTH);
+        ByteBuffer header = ByteBuffer.allocate(MAX_VARINT_LENGTH);
+        Utf8Arena.putVarInt(header, rawLength);
+        bos.write(header.array(), 0, header.position());
+        deflater.reset();
+        deflater.setInput(openPage.array(), 0, rawLength);
+        deflater.finish();
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buffer);
+            bos.write(buffer, 0, n);
+        }
+        if (pageCount == pageStarts.length) {
+            pageStarts = Arrays.copyOf(pageStarts, pageCount * 2);
+            pageEnds = Arrays.copyOf(pageEnds, pageCount * 2);
+        }
+        pageStarts[pageCount] = openStart;
+        pageEnds[pageCount] = size;
+        byte[] compressed = bos.toByteArray();
+        compressedBytes += compressed.length;
+        pageStore.putPage(pageCount, compressed);
+        pageCount++;
+        openEntries.clear();
+        openStart = size;
+        if (openPage.capacity() > pageSize + MAX_VARINT_LENGTH) {
+            // do not hold on to the buffer that was grown for an oversized entry
+            openPage = ByteBuffer.allocate(pageSize + MAX_VARINT_LENGTH);
+        } else {
+            openPage.clear();
+        }
+    }
+
+    private String[] loadPage(int pageNo) {
+        ByteBuffer page = ByteBuffer.wrap(pageStore.getPage(pageNo));
+        int rawLength = Utf8Arena.readVarInt(page);
+        byte[] raw = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(page.array(), page.position(), page.remaining());
+        try {
+            int offset = 0;
+            while (offset < rawLength) {
+                int n = inflater.inflate(raw, offset, rawLength - offset);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IllegalStateException("Shared strings page " + pageNo + " is truncated");
+                }
+                offset += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Failed to decompress shared strings page " + pageNo, e);
+        }
+        String[] entries = new String[pageEnds[pageNo] - pageStarts[pageNo]];
+        ByteBuffer buffer = ByteBuffer.wrap(raw);
+        for (int i = 0; i < entries.length; i++) {
+            int length = Utf8Arena.readVarInt(buffer);
+            entries[i] = new String(raw, buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,133 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * Open addressing hash table that maps entries to their index in a string store. Only the <code>int</code>
+ * indexes (and their hashes) are kept; equality is checked by looking the candidate index up in the store, so
+ * the strings themselves are not referenced a second time.
+ * <p>
+ * This class is not thread safe. Writers need to be serialized by the caller.
+ * </p>
+ */
+final class DedupIndex {
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final int EMPTY = -1;
+
+    private final IntFunction<String> resolver;
+    private int[] slots;
+    private int[] hashes;
+    private int size;
+    private int resizeThreshold;
+
+    /**
+     * @param resolver returns the entry stored at an index
+     */
+    DedupIndex(IntFunction<String> resolver) {
+        this.resolver = resolver;
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * @param entry the entry to look for
+     * @return the index of the entry or -1 if the entry is not in the index
+     */
+    int find(String entry) {
+        final int hash = hash(entry);
+        final int mask = slots.length - 1;
+        int pos = hash & mask;
+        int slot;
+        while ((slot = slots[pos]) != EMPTY) {
+            if (hashes[pos] == hash && entry.equals(resolver.apply(slot))) {
+                return slot;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Maps the entry to the index. If the entry is already present, its mapping is replaced.
+     *
+     * @param entry the entry (must already be resolvable using the index)
+     * @param idx the index of the entry
+     */
+    void put(String entry, int idx) {
+        if (idx < 0) {
+            throw new IllegalArgumentException("Index out of range: " + idx);
+        }
+        final int hash = hash(entry);
+        final int mask = slots.length - 1;
+        int pos = hash & mask;
+        int slot;
+        while ((slot = slots[pos]) != EMPTY) {
+            if (hashes[pos] == hash && entry.equals(resolver.apply(slot))) {
+                slots[pos] = idx;
+                return;
+            }
+            pos = (pos + 1) & mask;
+        }
+        slots[pos] = idx;
+        hashes[pos] = hash;
+        if (++size > resizeThreshold) {
+            resize();
+        }
+    }
+
+    /**
+     * @return the number of distinct entries in the index
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of bytes that the slots and hashes take up
+     */
+    long getAllocatedBytes() {
+        return 8L * slots.length;
+    }
+
+    void clear() {
+        size = 0;
+        allocate(MIN_CAPACITY);
+    }
+
+    private void resize() {
+        if (slots.length >= MAX_CAPACITY) {
+            throw new IllegalStateException("DedupIndex cannot grow beyond " + size + " entries");
+        }
+        int[] oldSlots = slots;
+        int[] oldHashes = hashes;
+        allocate(oldSlots.length << 1);
+        final int mask = slots.length - 1;
+        for (int i = 0; i < oldSlots.length; i++) {
+            if (oldSlots[i] != EMPTY) {
+                // the stored hashes mean that no entries need to be resolved while rehashing
+                int pos = oldHashes[i] & mask;
+                while (slots[pos] != EMPTY) {
+                    pos = (pos + 1) & mask;
+                }
+                slots[pos] = oldSlots[i];
+                hashes[pos] = oldHashes[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        if (slots == null || slots.length != capacity) {
+            slots = new int[capacity];
+            hashes = new int[capacity];
+        }
+        Arrays.fill(slots, EMPTY);
+        resizeThreshold = (int) (capacity * 0.7f);
+    }
+
+    private static int hash(String entry) {
+        // spread the String hash so that the low bits used for the slot position are well mixed
+        int h = entry.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,189 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.nio.ByteBuffer;
+import java.util.function.IntFunction;
+
+/**
+ * Open addressing hash table that maps entries to their index in a string store, keyed by a 64-bit fingerprint
+ * of the entry. Each slot holds the fingerprint and the <code>int</code> index (12 bytes), in a heap or a direct
+ * (off-heap) buffer, so neither the strings nor boxed keys are kept. Two different entries are very unlikely to
+ * have the same fingerprint, but when fingerprints match the candidate is still looked up in the store and
+ * compared, so a collision can not map an entry to the wrong index. Entries whose fingerprints differ are never
+ * looked up.
+ * <p>
+ * This class is not thread safe. Writers need to be serialized by the caller.
+ * </p>
+ */
+final class FingerprintIndex {
+    private static final int SLOT_SIZE = 12;
+    private static final int MIN_CAPACITY = 16;
+    // keeps the buffer below 2GB
+    private static final int MAX_CAPACITY = 1 << 27;
+    private static final int EMPTY = -1;
+
+    private static final long PRIME1 = 0x9E3779B97F4A7C15L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+
+    private final IntFunction<String> resolver;
+    private final boolean direct;
+    private ByteBuffer slots;
+    private int capacity;
+    private int size;
+    private int resizeThreshold;
+
+    /**
+     * @param resolver returns the entry stored at an index
+     * @param direct whether to keep the slots in a direct (off-heap) buffer
+     */
+    FingerprintIndex(IntFunction<String> resolver, boolean direct) {
+        this.resolver = resolver;
+        this.direct = direct;
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * @param entry the entry to look for
+     * @return the index of the entry or -1 if the entry is not in the index
+     */
+    int find(String entry) {
+        final long fingerprint = fingerprint(entry);
+        final int mask = capacity - 1;
+        int pos = (int) fingerprint & mask;
+        int slot;
+        while ((slot = idxAt(pos)) != EMPTY) {
+            if (fingerprintAt(pos) == fingerprint && entry.equals(resolver.apply(slot))) {
+                return slot;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Maps the entry to the index. If the entry is already present, its mapping is replaced.
+     *
+     * @param entry the entry (must already be resolvable using the index)
+     * @param idx the index of the entry
+     */
+    void put(String entry, int idx) {
+        if (idx < 0) {
+            throw new IllegalArgumentException("Index out of range: " + idx);
+        }
+        final long fingerprint = fingerprint(entry);
+        final int mask = capacity - 1;
+        int pos = (int) fingerprint & mask;
+        int slot;
+        while ((slot = idxAt(pos)) != EMPTY) {
+            if (fingerprintAt(pos) == fingerprint && entry.equals(resolver.apply(slot))) {
+                slots.putInt(pos * SLOT_SIZE + 8, idx);
+                return;
+            }
+            pos = (pos + 1) & mask;
+        }
+        slots.putLong(pos * SLOT_SIZE, fingerprint);
+        slots.putInt(pos * SLOT_SIZE + 8, idx);
+        if (++size > resizeThreshold) {
+            resize();
+        }
+    }
+
+    /**
+     * @return the number of distinct entries in the index
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of bytes that the slots take up
+     */
+    long getAllocatedBytes() {
+        return (long) capacity * SLOT_SIZE;
+    }
+
+    /**
+     * @return whether the slots are in a direct (off-heap) buffer
+     */
+    boolean isDirect() {
+        return direct;
+    }
+
+    void clear() {
+        size = 0;
+        slots = null;
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * A 64-bit hash of the chars of the entry (4 chars are mixed in at a time, with the xxHash64 primes and
+     * final avalanche).
+     *
+     * @param entry the entry
+     * @return the fingerprint
+     */
+    static long fingerprint(String entry) {
+        final int length = entry.length();
+        long h = PRIME3 + length;
+        int i = 0;
+        for (; i + 4 <= length; i += 4) {
+            long k = entry.charAt(i)
+                    | (long) entry.charAt(i + 1) << 16
+                    | (long) entry.charAt(i + 2) << 32
+                    | (long) entry.charAt(i + 3) << 48;
+            h ^= Long.rotateLeft(k * PRIME2, 31) * PRIME1;
+            h = Long.rotateLeft(h, 27) * PRIME1 + PRIME3;
+        }
+        for (; i < length; i++) {
+            h ^= entry.charAt(i) * PRIME1;
+            h = Long.rotateLeft(h, 11) * PRIME2;
+        }
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private int idxAt(int pos) {
+        return slots.getInt(pos * SLOT_SIZE + 8);
+    }
+
+    private long fingerprintAt(int pos) {
+        return slots.getLong(pos * SLOT_SIZE);
+    }
+
+    private void resize() {
+        if (capacity >= MAX_CAPACITY) {
+            throw new IllegalStateException("FingerprintIndex cannot grow beyond " + size + " entries");
+        }
+        ByteBuffer oldSlots = slots;
+        int oldCapacity = capacity;
+        allocate(oldCapacity << 1);
+        final int mask = capacity - 1;
+        for (int i = 0; i < oldCapacity; i++) {
+            int idx = oldSlots.getInt(i * SLOT_SIZE + 8);
+            if (idx != EMPTY) {
+                // the stored fingerprints mean that no entries need to be resolved while rehashing
+                long fingerprint = oldSlots.getLong(i * SLOT_SIZE);
+                int pos = (int) fingerprint & mask;
+                while (idxAt(pos) != EMPTY) {
+                    pos = (pos + 1) & mask;
+                }
+                slots.putLong(pos * SLOT_SIZE, fingerprint);
+                slots.putInt(pos * SLOT_SIZE + 8, idx);
+            }
+        }
+    }
+
+    private void allocate(int newCapacity) {
+        int bytes = newCapacity * SLOT_SIZE;
+        slots = direct ? ByteBuffer.allocateDirect(bytes) : ByteBuffer.allocate(bytes);
+        for (int pos = 0; pos < newCapacity; pos++) {
+            slots.putInt(pos * SLOT_SIZE + 8, EMPTY);
+        }
+        capacity = newCapacity;
+        resizeThreshold = (int) (newCapacity * 0.7f);
+    }
+}
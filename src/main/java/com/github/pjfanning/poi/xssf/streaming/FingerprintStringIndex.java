@@ -0,0 +1,62 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.h2.mvstore.MVStore;
+
+import java.util.function.IntFunction;
+
+/**
+ * A dedup index of a {@link TempFileSharedStringsTable} that is backed by a {@link FingerprintIndex}, so the
+ * entries are only stored once (in the table) and adding an entry does not update a B-tree.
+ */
+final class FingerprintStringIndex implements TempFileStringIndex {
+    private final FingerprintIndex fingerprints;
+
+    /**
+     * @param resolver returns the entry stored at an index
+     * @param offHeap whether to keep the fingerprints in a direct (off-heap) buffer
+     */
+    FingerprintStringIndex(IntFunction<String> resolver, boolean offHeap) {
+        this.fingerprints = new FingerprintIndex(resolver, offHeap);
+    }
+
+    @Override
+    public int find(String entry) {
+        return fingerprints.find(entry);
+    }
+
+    @Override
+    public void put(String entry, int idx) {
+        fingerprints.put(entry, idx);
+    }
+
+    @Override
+    public void build(TempFileStrings strings) {
+        // the fingerprint index does not benefit from sorted inserts
+        strings.forEach(fingerprints::put);
+    }
+
+    @Override
+    public void moveTo(MVStore mvStore) {
+        // the fingerprints are not kept in the store
+    }
+
+    @Override
+    public long estimateHeapBytes() {
+        return fingerprints.isDirect() ? 0 : fingerprints.getAllocatedBytes();
+    }
+
+    @Override
+    public long estimateOffHeapBytes() {
+        return fingerprints.isDirect() ? fingerprints.getAllocatedBytes() : 0;
+    }
+
+    @Override
+    public void clear() {
+        fingerprints.clear();
+    }
+
+    @Override
+    public void close() {
+        fingerprints.clear();
+    }
+}
@@ -0,0 +1,141 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable snapshot of the entries of a table: the UTF-8 bytes of all the entries in a single array, and an array
+ * with the offset of each entry. Lookups are plain array reads and need no locking.
+ */
+final class FrozenStrings {
+    private static final int MAX_BLOB_SIZE = Integer.MAX_VALUE - 8;
+
+    private final byte[] blob;
+    // entry i is blob[offsets[i], offsets[i + 1])
+    private final int[] offsets;
+    // indexes that have no entry, or null if every index has an entry
+    private final BitSet missing;
+
+    private FrozenStrings(byte[] blob, int[] offsets, BitSet missing) {
+        this.blob = blob;
+        this.offsets = offsets;
+        this.missing = missing;
+    }
+
+    /**
+     * @param idx the index of the entry
+     * @return the entry or <code>null</code> if there is no entry for this index
+     */
+    String get(int idx) {
+        if (idx < 0 || idx >= size() || (missing != null && missing.get(idx))) {
+            return null;
+        }
+        int start = offsets[idx];
+        return new String(blob, start, offsets[idx + 1] - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the last index that has an entry plus 1 (including any lower indexes that have no entry)
+     */
+    int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * @return the number of bytes held by the snapshot
+     */
+    long getAllocatedBytes() {
+        return blob.length + 4L * offsets.length + (missing == null ? 0 : missing.size() / 8);
+    }
+
+    /**
+     * @return the indexes that have an entry, in ascending order
+     */
+    Iterator<Integer> indexIterator() {
+        return new Iterator<Integer>() {
+            private int next = advance(0);
+
+            @Override
+            public boolean hasNext() {
+                return next < size();
+            }
+
+            @Override
+            public Integer next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int idx = next;
+                next = advance(idx + 1);
+                return idx;
+            }
+
+            private int advance(int from) {
+                return missing == null ? from : Math.min(missing.nextClearBit(from), size());
+            }
+        };
+    }
+
+    /**
+     * Collects entries in index order.
+     */
+    static final class Builder {
+        private byte[] blob = new byte[1 << 12];
+        private int[] offsets = new int[17];
+        private BitSet missing;
+        private int size;
+
+        /**
+         * @param idx the index of the entry, which must be higher than the index of the previous entry
+         * @param entry the entry
+         * @throws IllegalStateException if the entries do not fit in a single array
+         */
+        void add(int idx, String entry) {
+            if (idx < size) {
+                throw new IllegalArgumentException("Entries must be added in index order: " + idx);
+            }
+            if (idx > size) {
+                if (missing == null) {
+                    missing = new BitSet();
+                }
+                missing.set(size, idx);
+                ensureOffsets(idx + 2);
+                Arrays.fill(offsets, size + 1, idx + 1, offsets[size]);
+                size = idx;
+            }
+            byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+            int start = offsets[size];
+            if ((long) start + bytes.length > MAX_BLOB_SIZE) {
+                throw new IllegalStateException("The entries are too big to freeze (more than 2GB of UTF-8)");
+            }
+            if (start + bytes.length > blob.length) {
+                blob = Arrays.copyOf(blob, (int) Math.min(MAX_BLOB_SIZE,
+                        Math.max((long) blob.length << 1, (long) start + bytes.length)));
+            }
+            System.arraycopy(bytes, 0, blob, start, bytes.length);
+            ensureOffsets(size + 2);
+            offsets[++size] = start + bytes.length;
+        }
+
+        /**
+         * Builds the snapshot. It covers the indexes up to the last entry; higher indexes have no entry. The
+         * number of entries that a table reports (eg the uniqueCount attribute of a file) is not used, since it
+         * cannot be trusted.
+         *
+         * @return the snapshot
+         */
+        FrozenStrings build() {
+            return new FrozenStrings(Arrays.copyOf(blob, offsets[size]), Arrays.copyOf(offsets, size + 1), missing);
+        }
+
+        private void ensureOffsets(int needed) {
+            if (needed > offsets.length) {
+                offsets = Arrays.copyOf(offsets, (int) Math.min(Integer.MAX_VALUE - 8,
+                        Math.max((long) offsets.length << 1, needed)));
+            }
+        }
+    }
+}
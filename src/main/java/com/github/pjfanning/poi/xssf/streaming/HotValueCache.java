@@ -0,0 +1,92 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Small LRU cache of entry to index mappings, for the values that are added to a table over and over (eg the
+ * handful of status values in a column of a big export). A value is only cached the second time it is seen within
+ * a short window, so a stream of unique values (eg free text or ids) does not flush the cache. All access is
+ * serialized on this instance.
+ */
+final class HotValueCache {
+    // longer values are rarely repeated, and would make the cache expensive to hold
+    static final int MAX_VALUE_LENGTH = 256;
+
+    private final int maxEntries;
+    private final LinkedHashMap<String, Integer> entries;
+    // hash codes of values that have been seen once, direct mapped
+    private final int[] seen;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param maxEntries the maximum number of values to cache
+     */
+    HotValueCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > HotValueCache.this.maxEntries;
+            }
+        };
+        this.seen = new int[Integer.highestOneBit(Math.max(1, maxEntries - 1)) << 2];
+    }
+
+    /**
+     * @param entry the stored form of an entry
+     * @return the index of the entry or -1 if it is not cached
+     */
+    synchronized int get(String entry) {
+        Integer idx = entries.get(entry);
+        if (idx == null) {
+            misses++;
+            return -1;
+        }
+        hits++;
+        return idx;
+    }
+
+    /**
+     * Records the index of an entry. The entry is only cached if it was recorded recently.
+     *
+     * @param entry the stored form of an entry
+     * @param idx the index of the entry
+     */
+    synchronized void record(String entry, int idx) {
+        if (entry.length() > MAX_VALUE_LENGTH) {
+            return;
+        }
+        int hash = entry.hashCode();
+        // 0 marks an empty slot
+        int mark = hash == 0 ? 1 : hash;
+        int slot = (hash ^ (hash >>> 16)) & (seen.length - 1);
+        if (seen[slot] == mark) {
+            entries.put(entry, idx);
+        } else {
+            seen[slot] = mark;
+        }
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        Arrays.fill(seen, 0);
+    }
+}
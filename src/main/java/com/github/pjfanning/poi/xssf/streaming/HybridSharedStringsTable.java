@@ -0,0 +1,269 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Table of strings shared across all sheets in a workbook.
+ * <p>
+ * A workbook may contain thousands of cells containing string (non-numeric) data. Furthermore this data is very
+ * likely to be repeated across many rows or columns. The goal of implementing a single string table that is shared
+ * across the workbook is to improve performance in opening and saving the file by only reading and writing the
+ * repetitive information once.
+ * </p>
+ * <p>
+ * Consider for example a workbook summarizing information for cities within various countries. There may be a
+ * column for the name of the country, a column for the name of each city in that country, and a column
+ * containing the data for each city. In this case the country name is repetitive, being duplicated in many cells.
+ * In many cases the repetition is extensive, and a tremendous savings is realized by making use of a shared string
+ * table when saving the workbook. When displaying text in the spreadsheet, the cell table will just contain an
+ * index into the string table as the value of a cell, instead of the full string.
+ * </p>
+ * <p>
+ * The shared string table contains all the necessary information for displaying the string: the text, formatting
+ * properties, and phonetic properties (for East Asian languages).
+ * </p>
+ * <p>
+ * This implementation starts out like {@link MapBackedSharedStringsTable} and moves its entries to a
+ * {@link TempFileSharedStringsTable} once the number of entries or their estimated heap size crosses a limit.
+ * Small workbooks never create a temp file while big ones do not have to fit on the heap. The indexes of the
+ * entries do not change when the entries are moved. Readers that are active while the entries are moved keep
+ * reading the heap copy, which is only released once they are done with it.
+ * </p>
+ * <p>
+ * The temp file is only created when the limits are crossed, so the h2 jar is only needed at that point.
+ * </p>
+ */
+public class HybridSharedStringsTable extends SharedStringsTableBase {
+    private static final Logger log = LoggerFactory.getLogger(HybridSharedStringsTable.class);
+
+    /**
+     * The default maximum number of entries that are kept on the heap.
+     */
+    public static final int DEFAULT_MAX_HEAP_ENTRIES = 100_000;
+
+    /**
+     * The default maximum estimated heap size (in bytes) of the entries that are kept on the heap.
+     */
+    public static final long DEFAULT_MAX_HEAP_BYTES = 64L * 1024 * 1024;
+
+    private final int maxHeapEntries;
+    private final long maxHeapBytes;
+    private final boolean encryptTempFiles;
+    private final TempFileStoreOptions storeOptions;
+    private final TempFileStorePool storePool;
+    // writes are expected from one thread at a time, the volatile field lets readers follow a move to the temp file
+    private volatile SharedStringsTableBase store;
+    private boolean indexed;
+
+    public HybridSharedStringsTable() {
+        this(DEFAULT_MAX_HEAP_ENTRIES, DEFAULT_MAX_HEAP_BYTES);
+    }
+
+    /**
+     * @param maxHeapEntries the number of entries above which the entries are moved to a temp file
+     * @param maxHeapBytes the estimated heap size (in bytes) above which the entries are moved to a temp file
+     */
+    public HybridSharedStringsTable(int maxHeapEntries, long maxHeapBytes) {
+        this(maxHeapEntries, maxHeapBytes, false, false);
+    }
+
+    /**
+     * @param maxHeapEntries the number of entries above which the entries are moved to a temp file
+     * @param maxHeapBytes the estimated heap size (in bytes) above which the entries are moved to a temp file
+     * @param encryptTempFiles whether to encrypt the temp file (if one is needed)
+     * @param fullFormat whether to store format information (which is more expensive)
+     */
+    public HybridSharedStringsTable(int maxHeapEntries, long maxHeapBytes,
+                                    boolean encryptTempFiles, boolean fullFormat) {
+        this(maxHeapEntries, maxHeapBytes, encryptTempFiles, fullFormat, TempFileStoreOptions.DEFAULT);
+    }
+
+    /**
+     * @param maxHeapEntries the number of entries above which the entries are moved to a temp file
+     * @param maxHeapBytes the estimated heap size (in bytes) above which the entries are moved to a temp file
+     * @param encryptTempFiles whether to encrypt the temp file (if one is needed)
+     * @param fullFormat whether to store format information (which is more expensive)
+     * @param storeOptions tuning options for the MVStore that is opened on the temp file (if one is needed)
+     */
+    public HybridSharedStringsTable(int maxHeapEntries, long maxHeapBytes, boolean encryptTempFiles,
+                                    boolean fullFormat, TempFileStoreOptions storeOptions) {
+        this(maxHeapEntries, maxHeapBytes, encryptTempFiles, fullFormat, storeOptions, null);
+    }
+
+    /**
+     * @param maxHeapEntries the number of entries above which the entries are moved to a temp file
+     * @param maxHeapBytes the estimated heap size (in bytes) above which the entries are moved to a temp file
+     * @param fullFormat whether to store format information (which is more expensive)
+     * @param storePool the pool to lease the store from when the entries are moved (its options and encryption
+     *                  setting are used)
+     */
+    public HybridSharedStringsTable(int maxHeapEntries, long maxHeapBytes, boolean fullFormat,
+                                    TempFileStorePool storePool) {
+        this(maxHeapEntries, maxHeapBytes, storePool.isEncryptTempFiles(), fullFormat, storePool.getStoreOptions(),
+                storePool);
+    }
+
+    private HybridSharedStringsTable(int maxHeapEntries, long maxHeapBytes, boolean encryptTempFiles,
+                                     boolean fullFormat, TempFileStoreOptions storeOptions,
+                                     TempFileStorePool storePool) {
+        super(fullFormat);
+        if (maxHeapEntries < 0) {
+            throw new IllegalArgumentException("maxHeapEntries must not be negative: " + maxHeapEntries);
+        }
+        if (maxHeapBytes < 0) {
+            throw new IllegalArgumentException("maxHeapBytes must not be negative: " + maxHeapBytes);
+        }
+        this.maxHeapEntries = maxHeapEntries;
+        this.maxHeapBytes = maxHeapBytes;
+        this.encryptTempFiles = encryptTempFiles;
+        this.storeOptions = storeOptions;
+        this.storePool = storePool;
+        this.store = new MapBackedSharedStringsTable(fullFormat);
+    }
+
+    public HybridSharedStringsTable(OPCPackage pkg) throws IOException {
+        this(pkg, DEFAULT_MAX_HEAP_ENTRIES, DEFAULT_MAX_HEAP_BYTES, false, false);
+    }
+
+    public HybridSharedStringsTable(OPCPackage pkg, int maxHeapEntries, long maxHeapBytes,
+                                    boolean encryptTempFiles, boolean fullFormat) throws IOException {
+        this(maxHeapEntries, maxHeapBytes, encryptTempFiles, fullFormat);
+        ArrayList<PackagePart> parts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+        if (!parts.isEmpty()) {
+            PackagePart sstPart = parts.get(0);
+            this.readFrom(sstPart.getInputStream());
+        }
+    }
+
+    /**
+     * @return whether the entries have been moved to a temp file
+     */
+    public boolean isSpilled() {
+        return store instanceof TempFileSharedStringsTable;
+    }
+
+    // the table that holds the entries
+    SharedStringsTableBase getStore() {
+        return store;
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return log;
+    }
+
+    @Override
+    protected Iterator<Integer> keyIterator() {
+        return store.keyIterator();
+    }
+
+    @Override
+    protected String getEntry(int idx) {
+        return store.getEntry(idx);
+    }
+
+    @Override
+    protected String getEntryForFreeze(int idx) {
+        return store.getEntryForFreeze(idx);
+    }
+
+    @Override
+    protected void putEntry(int idx, String entry) {
+        if (!isSpilled() && (idx >= maxHeapEntries
+                || store.estimateHeapBytes() + HEAP_ENTRY_OVERHEAD + 2L * entry.length() > maxHeapBytes)) {
+            spill();
+        }
+        store.putDelegatedEntry(idx, entry);
+    }
+
+    @Override
+    protected int findIndex(String entry) {
+        return store.findIndex(entry);
+    }
+
+    @Override
+    protected void putIndex(String entry, int idx) {
+        indexed = true;
+        store.putIndex(entry, idx);
+    }
+
+    @Override
+    protected void presize(int expectedUniqueCount) {
+        if (expectedUniqueCount > maxHeapEntries) {
+            // the XML claims more entries than we want to keep on the heap, so do not copy them to the temp file later
+            spill();
+        } else {
+            store.presize(expectedUniqueCount);
+        }
+    }
+
+    @Override
+    protected long estimateHeapBytes() {
+        return store.estimateHeapBytes();
+    }
+
+    @Override
+    protected long estimateOffHeapBytes() {
+        return store.estimateOffHeapBytes();
+    }
+
+    @Override
+    protected long estimateTempFileBytes() {
+        return store.estimateTempFileBytes();
+    }
+
+    /**
+     * HybridSharedStringsTable does not implement getSharedStringItems().
+     * Use <code>getItemAt</code> instead.
+     *
+     * @return throws UnsupportedOperationException
+     * @throws UnsupportedOperationException not supported
+     */
+    @Override
+    public List<RichTextString> getSharedStringItems() {
+        throw new UnsupportedOperationException("HybridSharedStringsTable only supports streaming access of shared strings");
+    }
+
+    @Override
+    public void close() throws IOException {
+        store.close();
+    }
+
+    private void spill() {
+        if (isSpilled()) {
+            return;
+        }
+        SharedStringsTableBase heapStore = store;
+        TempFileSharedStringsTable fileStore;
+        try {
+            fileStore = storePool == null
+                    ? new TempFileSharedStringsTable(encryptTempFiles, fullFormat, false, storeOptions)
+                    : new TempFileSharedStringsTable(fullFormat, false, storePool);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create temp file for shared strings", e);
+        }
+        log.debug("moving shared strings (about {} bytes) to a temp file", heapStore.estimateHeapBytes());
+        Iterator<Integer> idIter = heapStore.keyIterator();
+        while (idIter.hasNext()) {
+            int idx = idIter.next();
+            String entry = heapStore.getEntry(idx);
+            fileStore.putDelegatedEntry(idx, entry);
+            if (indexed) {
+                fileStore.putIndex(entry, idx);
+            }
+        }
+        // the heap copy is not cleared, readers that still use it can finish and it is then garbage collected
+        store = fileStore;
+    }
+}
@@ -0,0 +1,328 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ooxml.POIXMLException;
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.util.TempFile;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Read only table of strings shared across all sheets in a workbook.
+ * <p>
+ * {@link #readFrom(InputStream)} does a single pass over the <code>sharedStrings.xml</code> part. It copies the
+ * part to a temp file and records the offset of each <code>si</code> element, but does not parse them. Each item
+ * is parsed from the temp file when it is looked up, so opening a workbook with a huge shared strings part is
+ * fast and only one <code>long</code> per entry is kept on the heap. This suits read pipelines (eg
+ * {@link org.apache.poi.xssf.eventusermodel.XSSFReader} with
+ * {@link org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler}) where sheets only reference some of the
+ * strings, or reference each string a few times. Items that are looked up often are parsed every time.
+ * </p>
+ * <p>
+ * The part is expected to be UTF-8 encoded, as Excel writes it. The temp file is not encrypted.
+ * New items cannot be added to this table.
+ * </p>
+ */
+public class LazySharedStringsTable extends SharedStringsTableBase {
+    private static final Logger log = LoggerFactory.getLogger(LazySharedStringsTable.class);
+    private static final Pattern COUNT_PATTERN = Pattern.compile("\\scount\\s*=\\s*[\"'](\\d+)[\"']");
+    private static final Pattern UNIQUE_COUNT_PATTERN = Pattern.compile("\\suniqueCount\\s*=\\s*[\"'](\\d+)[\"']");
+
+    private final ChunkedLongArray offsets = new ChunkedLongArray();
+    private File tempFile;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private byte[] sstStartTag;
+    private byte[] sstEndTag;
+    private long sstEnd;
+
+    public LazySharedStringsTable() {
+        this(false);
+    }
+
+    /**
+     * @param fullFormat whether to return format information (which is more expensive)
+     */
+    public LazySharedStringsTable(boolean fullFormat) {
+        super(fullFormat);
+    }
+
+    public LazySharedStringsTable(OPCPackage pkg) throws IOException {
+        this(pkg, false);
+    }
+
+    public LazySharedStringsTable(OPCPackage pkg, boolean fullFormat) throws IOException {
+        this(fullFormat);
+        ArrayList<PackagePart> parts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+        if (!parts.isEmpty()) {
+            PackagePart sstPart = parts.get(0);
+            this.readFrom(sstPart.getInputStream());
+        }
+    }
+
+    /**
+     * Copies the shared strings part to a temp file and indexes its items. The items are parsed when they are
+     * looked up. Of the {@link #configureLimits(TableLimits) limits}, only the entry count and temp file size
+     * apply, as the items are not decoded here.
+     *
+     * @param is The input stream containing the XML document.
+     * @throws IOException if an error occurs while reading.
+     * @throws IllegalStateException if this table has already been read
+     * @throws TableLimitExceededException if the part has more items or bytes than the limits allow
+     */
+    @Override
+    public void readFrom(InputStream is) throws IOException {
+        if (tempFile != null) {
+            throw new IllegalStateException("LazySharedStringsTable can only be read once");
+        }
+        tempFile = TempFile.createTempFile("poi-lazy-shared-strings", ".tmp");
+        SharedStringsPartScanner scanner;
+        try {
+            try (OutputStream spool = new BufferedOutputStream(limitTempFile(new FileOutputStream(tempFile)))) {
+                scanner = new SharedStringsPartScanner(is, spool, limitEntries());
+                scanner.scan(offsets);
+            }
+            if (scanner.getSstStartTag() == null && offsets.length() > 0) {
+                throw new IOException("Shared strings part has si elements but no sst element");
+            }
+            raf = new RandomAccessFile(tempFile, "r");
+            channel = raf.getChannel();
+        } catch (IOException | RuntimeException | Error e) {
+            close();
+            throw e;
+        }
+        sstStartTag = scanner.getSstStartTag();
+        if (sstStartTag != null) {
+            sstEndTag = ("</" + scanner.getSstTagName() + ">").getBytes(StandardCharsets.UTF_8);
+        }
+        sstEnd = scanner.getSstEnd() < 0 ? scanner.getLength() : scanner.getSstEnd();
+        this.uniqueCount = offsets.length();
+        this.count = this.uniqueCount;
+        if (sstStartTag != null) {
+            String tag = new String(sstStartTag, StandardCharsets.UTF_8);
+            int count = parseCount(COUNT_PATTERN, tag);
+            if (count > -1) {
+                this.count = count;
+            }
+            int uniqueCount = parseCount(UNIQUE_COUNT_PATTERN, tag);
+            if (uniqueCount > -1) {
+                if (uniqueCount != this.uniqueCount) {
+                    log.warn("SharedStringsTable has uniqueCount={} but read {} entries. This will probably cause some cells to be misinterpreted.",
+                            uniqueCount, this.uniqueCount);
+                }
+                this.uniqueCount = uniqueCount;
+            }
+        }
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return log;
+    }
+
+    @Override
+    protected Iterator<Integer> keyIterator() {
+        return offsets.indexIterator();
+    }
+
+    @Override
+    protected String getEntry(int idx) {
+        long start = offsets.get(idx);
+        if (start == ChunkedLongArray.ABSENT) {
+            return null;
+        }
+        long next = offsets.get(idx + 1);
+        long end = next == ChunkedLongArray.ABSENT ? sstEnd : next;
+        try {
+            return parseEntry(readBytes(start, (int) (end - start)));
+        } catch (IOException | XMLStreamException e) {
+            throw new POIXMLException("Failed to read shared string " + idx, e);
+        }
+    }
+
+    /**
+     * LazySharedStringsTable is read only.
+     *
+     * @throws UnsupportedOperationException not supported
+     */
+    @Override
+    protected void putEntry(int idx, String entry) {
+        throw new UnsupportedOperationException("LazySharedStringsTable is read only");
+    }
+
+    @Override
+    protected int findIndex(String entry) {
+        throw new UnsupportedOperationException("LazySharedStringsTable is read only");
+    }
+
+    @Override
+    protected void putIndex(String entry, int idx) {
+        throw new UnsupportedOperationException("LazySharedStringsTable is read only");
+    }
+
+    @Override
+    protected long estimateHeapBytes() {
+        // the entries stay in the temp file, only their offsets are kept
+        return 8L * offsets.length();
+    }
+
+    @Override
+    protected long estimateTempFileBytes() {
+        return tempFile == null ? 0 : tempFile.length();
+    }
+
+    /**
+     * LazySharedStringsTable is read only.
+     *
+     * @param string the entry to add
+     * @return throws UnsupportedOperationException
+     * @throws UnsupportedOperationException not supported
+     */
+    @Override
+    public int addSharedStringItem(RichTextString string) {
+        throw new UnsupportedOperationException("LazySharedStringsTable is read only");
+    }
+
+    /**
+     * LazySharedStringsTable does not implement getSharedStringItems().
+     * Use <code>getItemAt</code> instead.
+     *
+     * @return throws UnsupportedOperationException
+     * @throws UnsupportedOperationException not supported
+     */
+    @Override
+    public List<RichTextString> getSharedStringItems() {
+        throw new UnsupportedOperationException("LazySharedStringsTable only supports streaming access of shared strings");
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (raf != null) {
+                raf.close();
+            }
+        } finally {
+            if (tempFile != null && !tempFile.delete()) {
+                log.debug("failed to delete temp file - probably already deleted");
+            }
+        }
+    }
+
+    private byte[] readBytes(long position, int length) throws IOException {
+        byte[] bytes = new byte[sstStartTag.length + length + sstEndTag.length];
+        System.arraycopy(sstStartTag, 0, bytes, 0, sstStartTag.length);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, sstStartTag.length, length);
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, pos);
+            if (n < 0) {
+                throw new IOException("Unexpected end of " + tempFile);
+            }
+            pos += n;
+        }
+        System.arraycopy(sstEndTag, 0, bytes, sstStartTag.length + length, sstEndTag.length);
+        return bytes;
+    }
+
+    private String parseEntry(byte[] document) throws IOException, XMLStreamException {
+        // the si element is parsed inside a copy of the sst start tag, so that namespace prefixes resolve
+        XMLEventReader xmlEventReader = Constants.XML_INPUT_FACTORY.createXMLEventReader(new ByteArrayInputStream(document));
+        try {
+            while (xmlEventReader.hasNext()) {
+                XMLEvent xmlEvent = xmlEventReader.nextEvent();
+                if (xmlEvent.isStartElement()) {
+                    StartElement startElement = xmlEvent.asStartElement();
+                    if (startElement.getName().getLocalPart().equals("si")) {
+                        return readEntry(xmlEventReader, startElement.getName());
+                    }
+                }
+            }
+            throw new IOException("No si element found");
+        } finally {
+            xmlEventReader.close();
+        }
+    }
+
+    private SharedStringsPartScanner.Listener limitEntries() {
+        final TableLimits limits = getLimits();
+        final String tableName = LazySharedStringsTable.class.getSimpleName();
+        return new SharedStringsPartScanner.Listener() {
+            @Override
+            public void sstStart(byte[] startTag) {
+                // fail before the items are spooled if the part claims too many
+                int uniqueCount = parseCount(UNIQUE_COUNT_PATTERN, new String(startTag, StandardCharsets.UTF_8));
+                if (uniqueCount > -1) {
+                    limits.checkEntry(tableName, 0, uniqueCount, 0);
+                }
+            }
+
+            @Override
+            public void si(int siCount) {
+                limits.checkEntry(tableName, 0, siCount, 0);
+            }
+        };
+    }
+
+    private OutputStream limitTempFile(OutputStream out) {
+        final TableLimits limits = getLimits();
+        if (!limits.limitsTempFileBytes()) {
+            return out;
+        }
+        return new FilterOutputStream(out) {
+            private long written;
+
+            @Override
+            public void write(int b) throws IOException {
+                count(1);
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                count(len);
+                out.write(b, off, len);
+            }
+
+            private void count(int len) {
+                written += len;
+                limits.checkTempFileBytes(LazySharedStringsTable.class.getSimpleName(), written);
+            }
+        };
+    }
+
+    private static int parseCount(Pattern pattern, String tag) {
+        Matcher matcher = pattern.matcher(tag);
+        if (matcher.find()) {
+            try {
+                return Integer.parseInt(matcher.group(1));
+            } catch (NumberFormatException e) {
+                log.warn("Failed to parse SharedStringsTable count");
+            }
+        }
+        return -1;
+    }
+}
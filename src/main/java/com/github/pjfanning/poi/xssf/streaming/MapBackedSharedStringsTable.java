@@ -11,7 +11,6 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Table of strings shared across all sheets in a workbook.
@@ -36,6 +35,9 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class MapBackedSharedStringsTable extends SharedStringsTableBase {
     private static final Logger log = LoggerFactory.getLogger(MapBackedSharedStringsTable.class);
+    private final ChunkedStringArray entries = new ChunkedStringArray();
+    private final CompressedStringPages pages;
+    private final DedupIndex index = new DedupIndex(this::getEntry);
 
     public MapBackedSharedStringsTable() {
         this(false);
@@ -45,9 +47,17 @@ public class MapBackedSharedStringsTable extends SharedStringsTableBase {
      * @param fullFormat whether to store format information (which is more expensive)
      */
     public MapBackedSharedStringsTable(boolean fullFormat) {
+        this(fullFormat, false);
+    }
+
+    /**
+     * @param fullFormat whether to store format information (which is more expensive)
+     * @param compressStrings whether to store the strings in pages compressed with {@link java.util.zip.Deflater}
+     *                        (uses less memory but more CPU)
+     */
+    public MapBackedSharedStringsTable(boolean fullFormat, boolean compressStrings) {
         super(fullFormat);
-        strings = new ConcurrentHashMap<>();
-        stmap = new ConcurrentHashMap<>();
+        pages = compressStrings ? new CompressedStringPages(new CompressedStringPages.HeapPageStore()) : null;
     }
 
     public MapBackedSharedStringsTable(OPCPackage pkg) throws IOException {
@@ -55,7 +65,18 @@ public class MapBackedSharedStringsTable extends SharedStringsTableBase {
     }
 
     public MapBackedSharedStringsTable(OPCPackage pkg, boolean fullFormat) throws IOException {
-        this(fullFormat);
+        this(pkg, fullFormat, false);
+    }
+
+    /**
+     * @param pkg the package to read the shared strings from
+     * @param fullFormat whether to store format information (which is more expensive)
+     * @param compressStrings whether to store the strings in pages compressed with {@link java.util.zip.Deflater}
+     *                        (uses less memory but more CPU)
+     * @throws IOException if the shared strings cannot be read
+     */
+    public MapBackedSharedStringsTable(OPCPackage pkg, boolean fullFormat, boolean compressStrings) throws IOException {
+        this(fullFormat, compressStrings);
         ArrayList<PackagePart> parts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
         if (!parts.isEmpty()) {
             PackagePart sstPart = parts.get(0);
@@ -70,7 +91,46 @@ public class MapBackedSharedStringsTable extends SharedStringsTableBase {
 
     @Override
     protected Iterator<Integer> keyIterator() {
-        return strings.keySet().iterator();
+        return pages == null ? entries.indexIterator() : pages.indexIterator();
+    }
+
+    @Override
+    protected String getEntry(int idx) {
+        return pages == null ? entries.get(idx) : pages.get(idx);
+    }
+
+    @Override
+    protected void putEntry(int idx, String entry) {
+        if (pages == null) {
+            entries.set(idx, entry);
+        } else {
+            pages.add(idx, entry);
+        }
+    }
+
+    @Override
+    protected int findIndex(String entry) {
+        return index.find(entry);
+    }
+
+    @Override
+    protected void putIndex(String entry, int idx) {
+        index.put(entry, idx);
+    }
+
+    @Override
+    protected void presize(int expectedUniqueCount) {
+        // the compressed pages grow one page at a time, so only the uncompressed entries are presized
+        if (pages == null) {
+            entries.ensureCapacity(expectedUniqueCount);
+        }
+    }
+
+    @Override
+    protected long estimateHeapBytes() {
+        long entryBytes = pages == null ? super.estimateHeapBytes()
+                : pages.getCompressedBytes() + pages.getBufferedBytes();
+        return entryBytes + index.getAllocatedBytes();
     }
 
     /**
@@ -88,7 +148,10 @@ public class MapBackedSharedStringsTable extends SharedStringsTableBase {
 
     @Override
     public void close() throws IOException {
-        strings.clear();
-        stmap.clear();
+        entries.clear();
+        if (pages != null) {
+            pages.close();
+        }
+        index.clear();
     }
 }
@@ -0,0 +1,275 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.h2.mvstore.Cursor;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ObjIntConsumer;
+
+import static com.github.pjfanning.poi.xssf.streaming.SharedStringsTableBase.HEAP_ENTRY_OVERHEAD;
+
+/**
+ * The default dedup index of a {@link TempFileSharedStringsTable}: a map from each entry to its index, which is
+ * held in memory until {@link #moveTo(MVStore)} is called and is an MVMap (a B-tree in the temp file) from then on.
+ * New entries can be held in an on-heap map and written to the MVMap in sorted batches (see
+ * {@link #configureDeferral(int)}), and {@link #build(TempFileStrings)} sorts the entries before it writes them.
+ */
+final class MapStringIndex implements TempFileStringIndex {
+    // estimated heap size of the entries that build sorts in memory before it spills a sorted run
+    private static final long SORT_RUN_BYTES = 16L * 1024 * 1024;
+
+    private volatile Map<String, Integer> map = new ConcurrentHashMap<>();
+    private MVStore mvStore;
+    // entries that have not been written to the map yet, see configureDeferral
+    private HashMap<String, Integer> pending;
+    private int maxPending;
+    private long sortRunBytes = SORT_RUN_BYTES;
+
+    @Override
+    public int find(String entry) {
+        if (pending != null) {
+            Integer idx = pending.get(entry);
+            if (idx != null) {
+                return idx;
+            }
+        }
+        Integer idx = map.get(entry);
+        return idx == null ? -1 : idx;
+    }
+
+    @Override
+    public void put(String entry, int idx) {
+        if (pending == null) {
+            map.put(entry, idx);
+        } else {
+            pending.put(entry, idx);
+            if (pending.size() >= maxPending) {
+                flushPending();
+            }
+        }
+    }
+
+    /**
+     * Rather than adding the entries to the MVMap in index order (which is random order for the B-tree and causes
+     * constant page splits and rewrites), the entries are sorted and written in key order. Entries are sorted in
+     * memory in runs of about 16MB; if there is more than one run, the sorted runs are spilled to the store and
+     * merged.
+     */
+    @Override
+    public void build(TempFileStrings strings) {
+        if (mvStore == null) {
+            // the index is still in memory, so the order does not matter
+            strings.forEach(map::put);
+            return;
+        }
+        flushPending();
+        SortedRuns sortedRuns = new SortedRuns();
+        try {
+            strings.forEach(sortedRuns::add);
+            sortedRuns.writeTo(map);
+        } finally {
+            sortedRuns.close();
+        }
+    }
+
+    @Override
+    public void moveTo(MVStore mvStore) {
+        if (this.mvStore != null) {
+            return;
+        }
+        MVMap<String, Integer> stmap = openIndexMap(mvStore, "stmap");
+        stmap.putAll(map);
+        this.mvStore = mvStore;
+        map = stmap;
+    }
+
+    /**
+     * Passes every entry and its index to the action, eg to move them to another index.
+     *
+     * @param action the action
+     */
+    void forEach(ObjIntConsumer<String> action) {
+        flushPending();
+        for (Map.Entry<String, Integer> mapEntry : map.entrySet()) {
+            action.accept(mapEntry.getKey(), mapEntry.getValue());
+        }
+    }
+
+    /**
+     * Defers writing new entries to the map. New entries are kept in an on-heap map (which is checked first) and
+     * are written to the map in key order when there are <code>maxPendingEntries</code> of them. Changing the
+     * configuration writes the pending entries.
+     *
+     * @param maxPendingEntries the maximum number of entries to hold on the heap, 0 disables deferral
+     */
+    void configureDeferral(int maxPendingEntries) {
+        flushPending();
+        maxPending = maxPendingEntries;
+        pending = maxPendingEntries == 0 ? null : new HashMap<>();
+    }
+
+    /**
+     * @return the number of entries that have been written to the map (not counting the pending entries)
+     */
+    int getMapSize() {
+        return map.size();
+    }
+
+    // visible for testing
+    void setSortRunBytes(long sortRunBytes) {
+        this.sortRunBytes = sortRunBytes;
+    }
+
+    @Override
+    public long estimateHeapBytes() {
+        // the in-memory map is counted with the entries of the table
+        HashMap<String, Integer> deferred = pending;
+        return deferred == null ? 0 : deferred.size() * (long) HEAP_ENTRY_OVERHEAD;
+    }
+
+    @Override
+    public long estimateOffHeapBytes() {
+        return 0;
+    }
+
+    @Override
+    public void clear() {
+        if (pending != null) {
+            pending.clear();
+        }
+        map.clear();
+    }
+
+    @Override
+    public void close() {
+        pending = null;
+        if (mvStore == null) {
+            map.clear();
+        }
+    }
+
+    private void flushPending() {
+        if (pending != null && !pending.isEmpty()) {
+            ArrayList<String> keys = new ArrayList<>(pending.keySet());
+            Collections.sort(keys);
+            for (String key : keys) {
+                map.put(key, pending.get(key));
+            }
+            pending.clear();
+        }
+    }
+
+    private static MVMap<String, Integer> openIndexMap(MVStore mvStore, String name) {
+        return mvStore.openMap(name, new MVMap.Builder<String, Integer>()
+                .keyType(CompactStringDataType.INSTANCE)
+                .valueType(VarIntDataType.INSTANCE));
+    }
+
+    /**
+     * Sorts index entries in runs of about 16MB. Runs are spilled to the store (rather than a separate file, so
+     * that they are encrypted with it) when there is more than one.
+     */
+    private final class SortedRuns {
+        private final List<MVMap<String, Integer>> spilled = new ArrayList<>();
+        // a TreeMap keeps the highest index for an entry that is stored more than once
+        private final TreeMap<String, Integer> run = new TreeMap<>();
+        private long runBytes;
+
+        void add(String entry, int idx) {
+            if (entry == null) {
+                return;
+            }
+            run.put(entry, idx);
+            runBytes += HEAP_ENTRY_OVERHEAD + 2L * entry.length();
+            if (runBytes >= sortRunBytes) {
+                spill();
+            }
+        }
+
+        void writeTo(Map<String, Integer> target) {
+            if (spilled.isEmpty()) {
+                for (Map.Entry<String, Integer> mapEntry : run.entrySet()) {
+                    target.put(mapEntry.getKey(), mapEntry.getValue());
+                }
+                return;
+            }
+            if (!run.isEmpty()) {
+                spill();
+            }
+            PriorityQueue<RunCursor> queue = new PriorityQueue<>();
+            for (MVMap<String, Integer> spilledRun : spilled) {
+                RunCursor runCursor = new RunCursor(spilledRun.cursor(null));
+                if (runCursor.advance()) {
+                    queue.add(runCursor);
+                }
+            }
+            while (!queue.isEmpty()) {
+                RunCursor head = queue.poll();
+                String key = head.key;
+                int idx = head.idx;
+                if (head.advance()) {
+                    queue.add(head);
+                }
+                // an entry that is stored more than once can be in several runs; the highest index wins
+                while (!queue.isEmpty() && queue.peek().key.equals(key)) {
+                    RunCursor same = queue.poll();
+                    idx = Math.max(idx, same.idx);
+                    if (same.advance()) {
+                        queue.add(same);
+                    }
+                }
+                target.put(key, idx);
+            }
+        }
+
+        void close() {
+            for (MVMap<String, Integer> spilledRun : spilled) {
+                mvStore.removeMap(spilledRun);
+            }
+            spilled.clear();
+            run.clear();
+        }
+
+        private void spill() {
+            MVMap<String, Integer> spilledRun = openIndexMap(mvStore, "stmap-run-" + spilled.size());
+            spilled.add(spilledRun);
+            for (Map.Entry<String, Integer> mapEntry : run.entrySet()) {
+                spilledRun.put(mapEntry.getKey(), mapEntry.getValue());
+            }
+            run.clear();
+            runBytes = 0;
+        }
+    }
+
+    private static final class RunCursor implements Comparable<RunCursor> {
+        private final Cursor<String, Integer> cursor;
+        private String key;
+        private int idx;
+
+        RunCursor(Cursor<String, Integer> cursor) {
+            this.cursor = cursor;
+        }
+
+        boolean advance() {
+            if (!cursor.hasNext()) {
+                return false;
+            }
+            key = cursor.next();
+            idx = cursor.getValue();
+            return true;
+        }
+
+        @Override
+        public int compareTo(RunCursor other) {
+            return key.compareTo(other.key);
+        }
+    }
+}
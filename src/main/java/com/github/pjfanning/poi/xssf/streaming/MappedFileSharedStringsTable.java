@@ -0,0 +1,139 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Table of strings shared across all sheets in a workbook.
+ * <p>
+ * A workbook may contain thousands of cells containing string (non-numeric) data. Furthermore this data is very
+ * likely to be repeated across many rows or columns. The goal of implementing a single string table that is shared
+ * across the workbook is to improve performance in opening and saving the file by only reading and writing the
+ * repetitive information once.
+ * </p>
+ * <p>
+ * Consider for example a workbook summarizing information for cities within various countries. There may be a
+ * column for the name of the country, a column for the name of each city in that country, and a column
+ * containing the data for each city. In this case the country name is repetitive, being duplicated in many cells.
+ * In many cases the repetition is extensive, and a tremendous savings is realized by making use of a shared string
+ * table when saving the workbook. When displaying text in the spreadsheet, the cell table will just contain an
+ * index into the string table as the value of a cell, instead of the full string.
+ * </p>
+ * <p>
+ * The shared string table contains all the necessary information for displaying the string: the text, formatting
+ * properties, and phonetic properties (for East Asian languages).
+ * </p>
+ * <p>
+ * This implementation appends the entries, UTF-8 encoded, to a temp file and reads them back through memory mapped
+ * segments of that file. Only the file offset of each entry and the dedup hash index are kept on the heap.
+ * Unlike {@link TempFileSharedStringsTable}, no H2 MVStore is used: writes are sequential and lookups by index are
+ * a single read from the page cache. The temp file is not encrypted.
+ * </p>
+ */
+public class MappedFileSharedStringsTable extends SharedStringsTableBase {
+    private static final Logger log = LoggerFactory.getLogger(MappedFileSharedStringsTable.class);
+    private final MappedStringLog stringLog;
+    private final ChunkedLongArray offsets = new ChunkedLongArray();
+    private final DedupIndex index = new DedupIndex(this::getEntry);
+
+    public MappedFileSharedStringsTable() throws IOException {
+        this(false);
+    }
+
+    /**
+     * @param fullFormat whether to store format information (which is more expensive)
+     * @throws IOException if an error occurs while creating the temp file
+     */
+    public MappedFileSharedStringsTable(boolean fullFormat) throws IOException {
+        super(fullFormat);
+        stringLog = new MappedStringLog("poi-shared-strings");
+    }
+
+    public MappedFileSharedStringsTable(OPCPackage pkg) throws IOException {
+        this(pkg, false);
+    }
+
+    public MappedFileSharedStringsTable(OPCPackage pkg, boolean fullFormat) throws IOException {
+        this(fullFormat);
+        ArrayList<PackagePart> parts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+        if (!parts.isEmpty()) {
+            PackagePart sstPart = parts.get(0);
+            this.readFrom(sstPart.getInputStream());
+        }
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return log;
+    }
+
+    @Override
+    protected Iterator<Integer> keyIterator() {
+        return offsets.indexIterator();
+    }
+
+    @Override
+    protected String getEntry(int idx) {
+        long offset = offsets.get(idx);
+        return offset == ChunkedLongArray.ABSENT ? null : stringLog.get(offset);
+    }
+
+    @Override
+    protected void putEntry(int idx, String entry) {
+        offsets.set(idx, stringLog.append(entry));
+    }
+
+    @Override
+    protected int findIndex(String entry) {
+        return index.find(entry);
+    }
+
+    @Override
+    protected void putIndex(String entry, int idx) {
+        index.put(entry, idx);
+    }
+
+    @Override
+    protected void presize(int expectedUniqueCount) {
+        offsets.ensureCapacity(expectedUniqueCount);
+    }
+
+    @Override
+    protected long estimateHeapBytes() {
+        return 8L * offsets.length() + index.getAllocatedBytes();
+    }
+
+    @Override
+    protected long estimateTempFileBytes() {
+        return stringLog.length();
+    }
+
+    /**
+     * MappedFileSharedStringsTable does not implement getSharedStringItems().
+     * It could be made to work, but it would be memory intensive and slow.
+     * Use <code>getItemAt</code> instead.
+     *
+     * @return throws UnsupportedOperationException
+     * @throws UnsupportedOperationException not supported
+     */
+    @Override
+    public List<RichTextString> getSharedStringItems() {
+        throw new UnsupportedOperationException("MappedFileSharedStringsTable only supports streaming access of shared strings");
+    }
+
+    @Override
+    public void close() throws IOException {
+        offsets.clear();
+        index.clear();
+        stringLog.close();
+    }
+}
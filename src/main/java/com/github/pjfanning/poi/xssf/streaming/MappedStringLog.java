@@ -0,0 +1,175 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.apache.poi.util.TempFile;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Append only log of UTF-8 encoded strings in a temp file. Each string is written as a varint byte length
+ * followed by the UTF-8 bytes. The file is mapped in fixed size segments; each segment is mapped once, when the
+ * first entry is written to it, and entries are written to and read from the mapped segments.
+ * <p>
+ * An entry never spans two segments; if it would, the rest of the segment is left unused. Appends are
+ * serialized on this instance; reads take no lock.
+ * </p>
+ */
+final class MappedStringLog implements Closeable {
+    private static final int DEFAULT_SEGMENT_SHIFT = 26;
+
+    private final int segmentShift;
+    private final int segmentSize;
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    // replaced (never modified) when a segment is added, so that readers can use it without a lock
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    // written after the entry bytes, so a reader that sees an offset below this also sees the entry
+    private volatile long length;
+    private boolean closed;
+
+    /**
+     * @param prefix the temp file name prefix
+     * @throws IOException if the temp file cannot be created
+     */
+    MappedStringLog(String prefix) throws IOException {
+        this(prefix, DEFAULT_SEGMENT_SHIFT);
+    }
+
+    /**
+     * @param prefix the temp file name prefix
+     * @param segmentShift log2 of the size of the mapped segments
+     * @throws IOException if the temp file cannot be created
+     */
+    MappedStringLog(String prefix, int segmentShift) throws IOException {
+        this.segmentShift = segmentShift;
+        this.segmentSize = 1 << segmentShift;
+        file = TempFile.createTempFile(prefix, ".tmp");
+        RandomAccessFile openedRaf = null;
+        try {
+            openedRaf = new RandomAccessFile(file, "rw");
+            raf = openedRaf;
+            channel = raf.getChannel();
+        } catch (IOException | RuntimeException | Error e) {
+            if (openedRaf != null) {
+                openedRaf.close();
+            }
+            deleteTempFile();
+            throw e;
+        }
+    }
+
+    /**
+     * @param value the string to append
+     * @return the file offset of the entry
+     * @throws UncheckedIOException if the segment cannot be mapped
+     * @throws IllegalArgumentException if the encoded entry is larger than a segment
+     */
+    synchronized long append(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int needed = Utf8Arena.varIntLength(bytes.length) + bytes.length;
+        if (needed > segmentSize) {
+            throw new IllegalArgumentException("Entry is too large: " + bytes.length + " bytes");
+        }
+        long offset = length;
+        long segmentEnd = ((offset >>> segmentShift) + 1) << segmentShift;
+        if (offset + needed > segmentEnd) {
+            offset = segmentEnd;
+        }
+        int segmentIdx = (int) (offset >>> segmentShift);
+        MappedByteBuffer[] current = segments;
+        if (segmentIdx >= current.length) {
+            current = addSegment(current);
+        }
+        ByteBuffer buffer = current[segmentIdx].duplicate();
+        buffer.position((int) (offset & (segmentSize - 1)));
+        Utf8Arena.putVarInt(buffer, bytes.length);
+        buffer.put(bytes);
+        length = offset + needed;
+        return offset;
+    }
+
+    /**
+     * @param offset an offset returned by {@link #append(String)}
+     * @return the decoded string
+     * @throws IllegalArgumentException if no entry has been appended at this offset
+     */
+    String get(long offset) {
+        if (offset < 0 || offset >= length) {
+            throw new IllegalArgumentException("No entry at offset " + offset);
+        }
+        ByteBuffer buffer = segments[(int) (offset >>> segmentShift)].duplicate();
+        buffer.position((int) (offset & (segmentSize - 1)));
+        return decode(buffer);
+    }
+
+    /**
+     * @return the number of bytes written to the log
+     */
+    long length() {
+        return length;
+    }
+
+    /**
+     * @return the number of segments that have been mapped
+     */
+    int getSegmentCount() {
+        return segments.length;
+    }
+
+    // visible for testing
+    File getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        segments = new MappedByteBuffer[0];
+        length = 0;
+        try {
+            channel.close();
+            raf.close();
+        } finally {
+            deleteTempFile();
+        }
+    }
+
+    private MappedByteBuffer[] addSegment(MappedByteBuffer[] current) {
+        long start = (long) current.length << segmentShift;
+        MappedByteBuffer[] grown = new MappedByteBuffer[current.length + 1];
+        System.arraycopy(current, 0, grown, 0, current.length);
+        try {
+            // mapping read-write extends the file to the end of the segment
+            grown[current.length] = channel.map(FileChannel.MapMode.READ_WRITE, start, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map " + file, e);
+        }
+        segments = grown;
+        return grown;
+    }
+
+    private void deleteTempFile() {
+        if (!file.delete() && file.exists()) {
+            // a mapped file cannot be deleted on some platforms until the mapping is garbage collected
+            file.deleteOnExit();
+        }
+    }
+
+    private static String decode(ByteBuffer buffer) {
+        int length = Utf8Arena.readVarInt(buffer);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
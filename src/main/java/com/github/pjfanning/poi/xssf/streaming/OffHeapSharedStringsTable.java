@@ -0,0 +1,137 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Table of strings shared across all sheets in a workbook.
+ * <p>
+ * A workbook may contain thousands of cells containing string (non-numeric) data. Furthermore this data is very
+ * likely to be repeated across many rows or columns. The goal of implementing a single string table that is shared
+ * across the workbook is to improve performance in opening and saving the file by only reading and writing the
+ * repetitive information once.
+ * </p>
+ * <p>
+ * Consider for example a workbook summarizing information for cities within various countries. There may be a
+ * column for the name of the country, a column for the name of each city in that country, and a column
+ * containing the data for each city. In this case the country name is repetitive, being duplicated in many cells.
+ * In many cases the repetition is extensive, and a tremendous savings is realized by making use of a shared string
+ * table when saving the workbook. When displaying text in the spreadsheet, the cell table will just contain an
+ * index into the string table as the value of a cell, instead of the full string.
+ * </p>
+ * <p>
+ * The shared string table contains all the necessary information for displaying the string: the text, formatting
+ * properties, and phonetic properties (for East Asian languages).
+ * </p>
+ * <p>
+ * This implementation keeps the entries UTF-8 encoded in direct (off-heap) memory and decodes them on lookup.
+ * It avoids the temp file used by {@link TempFileSharedStringsTable} while keeping the string data out of the
+ * Java heap (unlike {@link MapBackedSharedStringsTable}). The direct memory is limited by
+ * <code>-XX:MaxDirectMemorySize</code> and is released when the table is garbage collected after {@link #close()}.
+ * </p>
+ */
+public class OffHeapSharedStringsTable extends SharedStringsTableBase {
+    private static final Logger log = LoggerFactory.getLogger(OffHeapSharedStringsTable.class);
+    private final Utf8Arena arena = new Utf8Arena();
+    private final ChunkedLongArray addresses = new ChunkedLongArray();
+    private final DedupIndex index = new DedupIndex(this::getEntry);
+
+    public OffHeapSharedStringsTable() {
+        this(false);
+    }
+
+    /**
+     * @param fullFormat whether to store format information (which is more expensive)
+     */
+    public OffHeapSharedStringsTable(boolean fullFormat) {
+        super(fullFormat);
+    }
+
+    public OffHeapSharedStringsTable(OPCPackage pkg) throws IOException {
+        this(pkg, false);
+    }
+
+    public OffHeapSharedStringsTable(OPCPackage pkg, boolean fullFormat) throws IOException {
+        this(fullFormat);
+        ArrayList<PackagePart> parts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+        if (!parts.isEmpty()) {
+            PackagePart sstPart = parts.get(0);
+            this.readFrom(sstPart.getInputStream());
+        }
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return log;
+    }
+
+    @Override
+    protected Iterator<Integer> keyIterator() {
+        return addresses.indexIterator();
+    }
+
+    @Override
+    protected String getEntry(int idx) {
+        long address = addresses.get(idx);
+        return address == ChunkedLongArray.ABSENT ? null : arena.get(address);
+    }
+
+    @Override
+    protected void putEntry(int idx, String entry) {
+        addresses.set(idx, arena.append(entry));
+    }
+
+    @Override
+    protected int findIndex(String entry) {
+        return index.find(entry);
+    }
+
+    @Override
+    protected void putIndex(String entry, int idx) {
+        index.put(entry, idx);
+    }
+
+    @Override
+    protected void presize(int expectedUniqueCount) {
+        addresses.ensureCapacity(expectedUniqueCount);
+    }
+
+    @Override
+    protected long estimateHeapBytes() {
+        return 8L * addresses.length() + index.getAllocatedBytes();
+    }
+
+    @Override
+    protected long estimateOffHeapBytes() {
+        return arena.getAllocatedBytes();
+    }
+
+    /**
+     * OffHeapSharedStringsTable does not implement getSharedStringItems().
+     * It could be made to work, but it would put all the strings back on the heap.
+     * Use <code>getItemAt</code> instead.
+     *
+     * @return throws UnsupportedOperationException
+     * @throws UnsupportedOperationException not supported
+     */
+    @Override
+    public List<RichTextString> getSharedStringItems() {
+        throw new UnsupportedOperationException("OffHeapSharedStringsTable only supports streaming access of shared strings");
+    }
+
+    @Override
+    public void close() throws IOException {
+        addresses.clear();
+        arena.clear();
+        index.clear();
+    }
+}
@@ -19,6 +19,8 @@ public class SXSSFFactory extends XSSFFactory {
     private boolean encryptTempFiles = false;
     private boolean enableTempFileSharedStrings = true;
     private boolean enableTempFileComments = false;
+    private TempFileStoreOptions storeOptions = TempFileStoreOptions.DEFAULT;
+    private TempFileStorePool storePool;
 
     public SXSSFFactory() {}
 
@@ -61,11 +63,41 @@ public class SXSSFFactory extends XSSFFactory {
         return this;
     }
 
+    /**
+     * @param storeOptions tuning options for the MVStore instances that back the temp file tables
+     *                     (default is {@link TempFileStoreOptions#DEFAULT})
+     * @return this factory instance
+     * @since v2.9.3
+     */
+    public SXSSFFactory storeOptions(TempFileStoreOptions storeOptions) {
+        if (storeOptions == null) {
+            throw new IllegalArgumentException("storeOptions must not be null");
+        }
+        this.storeOptions = storeOptions;
+        return this;
+    }
+
+    /**
+     * @param storePool a pool to lease the MVStore instances that back the temp file tables from, instead of
+     *                  creating a temp file for each table (default is null, no pool); when set, the options and
+     *                  encryption setting of the pool are used instead of {@link #storeOptions(TempFileStoreOptions)}
+     *                  and {@link #encryptTempFiles(boolean)}
+     * @return this factory instance
+     * @since v2.9.3
+     */
+    public SXSSFFactory storePool(TempFileStorePool storePool) {
+        this.storePool = storePool;
+        return this;
+    }
+
     @Override
     public POIXMLDocumentPart newDocumentPart(POIXMLRelation descriptor) {
         if (XSSFRelation.SHARED_STRINGS.getRelation().equals(descriptor.getRelation()) && enableTempFileSharedStrings) {
             try {
-                return new TempFileSharedStringsTable(encryptTempFiles);
+                if (storePool != null) {
+                    return new TempFileSharedStringsTable(false, false, storePool);
+                }
+                return new TempFileSharedStringsTable(encryptTempFiles, false, false, storeOptions);
             } catch (Exception e) {
                 throw new IllegalStateException("Exception creating TempFileSharedStringsTable; com.h2database h2 jar is " +
                         "required for this feature and is not included as a core dependency of poi-shared-strings");
@@ -73,7 +105,10 @@ public class SXSSFFactory extends XSSFFactory {
         }
         if (XSSFRelation.SHEET_COMMENTS.getRelation().equals(descriptor.getRelation()) && enableTempFileComments) {
             try {
-                return new TempFileCommentsTable(encryptTempFiles);
+                if (storePool != null) {
+                    return new TempFileCommentsTable(false, storePool);
+                }
+                return new TempFileCommentsTable(encryptTempFiles, false, storeOptions);
             } catch (Exception e) {
                 throw new IllegalStateException("Exception creating TempFileCommentsTable; com.h2database h2 jar is " +
                         "required for this feature and is not included as a core dependency of poi-shared-strings");
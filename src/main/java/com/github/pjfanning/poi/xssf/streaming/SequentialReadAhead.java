@@ -0,0 +1,126 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Watches the indexes that are looked up and, once the lookups form an ascending run, asks a {@link RangeLoader}
+ * to load the next block of entries on a background thread. The background thread is a single daemon thread
+ * that is shared by all tables. {@link #close()} waits for a block that is being loaded, so the loader is never
+ * called once <code>close()</code> has returned.
+ */
+final class SequentialReadAhead {
+    private static final Logger log = LoggerFactory.getLogger(SequentialReadAhead.class);
+    // lookups that are at most this far ahead of the previous one continue a run
+    private static final int MAX_STRIDE = 8;
+    // the number of ascending lookups before entries are loaded ahead
+    private static final int MIN_RUN = 3;
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "poi-shared-strings-read-ahead");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Loads a range of entries (eg into a cache).
+     */
+    interface RangeLoader {
+        /**
+         * @param fromIdx the first index to load
+         * @param toIdx the index after the last one to load
+         */
+        void load(int fromIdx, int toIdx);
+    }
+
+    private final int blockSize;
+    private final RangeLoader loader;
+    private final AtomicBoolean loading = new AtomicBoolean();
+    // held while the loader runs, so close() can wait for it
+    private final Object loadLock = new Object();
+    private volatile Future<?> pending;
+    private int lastIdx = -1;
+    private int runLength;
+    // entries below this index have already been loaded (or are being loaded)
+    private int loadedUpTo;
+    private volatile boolean closed;
+
+    /**
+     * @param blockSize the number of entries to load ahead
+     * @param loader loads the entries
+     */
+    SequentialReadAhead(int blockSize, RangeLoader loader) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize must be positive: " + blockSize);
+        }
+        this.blockSize = blockSize;
+        this.loader = loader;
+    }
+
+    /**
+     * Records a lookup and starts loading the next block if the lookups are ascending and have nearly caught up
+     * with the entries that were loaded ahead.
+     *
+     * @param idx the index that was looked up
+     */
+    void onRead(int idx) {
+        final int from;
+        synchronized (this) {
+            if (idx == lastIdx) {
+                // neighbouring cells often share a string; this neither extends nor breaks a run
+                return;
+            } else if (idx > lastIdx && idx - lastIdx <= MAX_STRIDE) {
+                runLength++;
+            } else {
+                runLength = 0;
+                loadedUpTo = 0;
+            }
+            lastIdx = idx;
+            if (closed || runLength < MIN_RUN || (long) idx + blockSize / 2 < loadedUpTo
+                    || (long) idx + 2L * blockSize > Integer.MAX_VALUE || !loading.compareAndSet(false, true)) {
+                return;
+            }
+            from = Math.max(idx + 1, loadedUpTo);
+            loadedUpTo = from + blockSize;
+        }
+        final int to = from + blockSize;
+        try {
+            pending = EXECUTOR.submit(() -> {
+                try {
+                    synchronized (loadLock) {
+                        if (!closed) {
+                            loader.load(from, to);
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    log.debug("failed to read ahead shared strings {} to {}", from, to, e);
+                } finally {
+                    loading.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            loading.set(false);
+        }
+    }
+
+    /**
+     * Stops loading entries ahead. A block that is waiting to be loaded is cancelled and, if a block is being
+     * loaded, this waits until the loader returns, so the caller can then close the store that the loader reads.
+     */
+    void close() {
+        closed = true;
+        Future<?> future = pending;
+        if (future != null) {
+            future.cancel(false);
+        }
+        synchronized (loadLock) {
+            pending = null;
+        }
+    }
+}
@@ -23,6 +23,24 @@ class SerializableComment implements Serializable {
 
     public SerializableComment() {}
 
+    /**
+     * @return the number of chars in the author, text and address of the comment
+     */
+    int estimateChars() {
+        return length(author) + length(commentText) + length(addressAsText);
+    }
+
+    /**
+     * @return the number of chars in the stored text (with full format, this is the XML of the rich text)
+     */
+    int getStoredTextLength() {
+        return length(commentText);
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
     public void setAddress(CellAddress address) {
         this.cellAddress = address;
         this.addressAsText = address.formatAsString();
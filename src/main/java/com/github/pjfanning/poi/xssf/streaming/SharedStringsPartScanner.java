@@ -0,0 +1,242 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Single pass over the bytes of a <code>sharedStrings.xml</code> part that copies the bytes to a spool stream and
+ * records the byte offset of every <code>si</code> element, without parsing the elements themselves. The part
+ * is expected to be UTF-8 encoded (as Excel writes it). Comments, CDATA sections and quoted attribute values are
+ * skipped so that a <code>&lt;</code> inside them is not mistaken for a tag. DOCTYPE declarations are rejected.
+ */
+final class SharedStringsPartScanner {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final InputStream in;
+    private final OutputStream spool;
+    private final Listener listener;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferPos;
+    private int bufferLimit;
+    // offset (in the part) of the next byte that next() returns
+    private long offset;
+    private int lastByte;
+
+    private byte[] sstStartTag;
+    private String sstTagName;
+    private long sstEnd = -1;
+
+    /**
+     * @param in the part data
+     * @param spool receives a copy of every byte of the part
+     * @param listener is notified of the <code>sst</code> and <code>si</code> elements as they are found
+     */
+    SharedStringsPartScanner(InputStream in, OutputStream spool, Listener listener) {
+        this.in = in;
+        this.spool = spool;
+        this.listener = listener;
+    }
+
+    /**
+     * Reads the whole part.
+     *
+     * @param siOffsets receives the offset of each <code>si</code> element, indexed by its position in the part
+     * @throws IOException if the part cannot be read or is not supported
+     */
+    void scan(ChunkedLongArray siOffsets) throws IOException {
+        int siCount = 0;
+        int b;
+        while ((b = next()) != -1) {
+            if (b != '<') {
+                continue;
+            }
+            long tagStart = offset - 1;
+            b = nextOrFail();
+            if (b == '?') {
+                skipUntil("?>");
+            } else if (b == '!') {
+                skipDeclaration();
+            } else if (b == '/') {
+                String name = readName(nextOrFail());
+                if (localName(name).equals("sst")) {
+                    sstEnd = tagStart;
+                }
+                skipTag(null);
+            } else {
+                String name = readName(b);
+                String localName = localName(name);
+                if (localName.equals("sst")) {
+                    ByteArrayOutputStream tag = new ByteArrayOutputStream();
+                    tag.write('<');
+                    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+                    tag.write(nameBytes, 0, nameBytes.length);
+                    skipTag(tag);
+                    sstStartTag = tag.toByteArray();
+                    sstTagName = name;
+                    listener.sstStart(sstStartTag);
+                } else {
+                    if (localName.equals("si")) {
+                        listener.si(siCount + 1);
+                        siOffsets.set(siCount++, tagStart);
+                    }
+                    skipTag(null);
+                }
+            }
+        }
+        spool.flush();
+    }
+
+    /**
+     * @return the <code>sst</code> start tag (including its namespace declarations and attributes) or
+     * <code>null</code> if the part has no <code>sst</code> element
+     */
+    byte[] getSstStartTag() {
+        return sstStartTag;
+    }
+
+    /**
+     * @return the qualified name of the <code>sst</code> element
+     */
+    String getSstTagName() {
+        return sstTagName;
+    }
+
+    /**
+     * @return the offset of the <code>sst</code> end tag or -1 if there is none
+     */
+    long getSstEnd() {
+        return sstEnd;
+    }
+
+    /**
+     * @return the number of bytes in the part
+     */
+    long getLength() {
+        return offset;
+    }
+
+    private int next() throws IOException {
+        if (bufferPos == bufferLimit) {
+            int n = in.read(buffer);
+            if (n <= 0) {
+                return -1;
+            }
+            spool.write(buffer, 0, n);
+            bufferPos = 0;
+            bufferLimit = n;
+        }
+        offset++;
+        return buffer[bufferPos++] & 0xFF;
+    }
+
+    private int nextOrFail() throws IOException {
+        int b = next();
+        if (b == -1) {
+            throw new EOFException("Unexpected end of shared strings part");
+        }
+        return b;
+    }
+
+    private String readName(int first) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int b = first;
+        while (!isNameEnd(b)) {
+            sb.append((char) b);
+            b = nextOrFail();
+        }
+        lastByte = b;
+        return sb.toString();
+    }
+
+    private void skipTag(ByteArrayOutputStream capture) throws IOException {
+        // lastByte is the byte after the tag name
+        int b = lastByte;
+        int quote = 0;
+        while (true) {
+            if (capture != null) {
+                capture.write(b);
+            }
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return;
+            }
+            b = nextOrFail();
+        }
+    }
+
+    private void skipDeclaration() throws IOException {
+        int b = nextOrFail();
+        if (b == '-' && nextOrFail() == '-') {
+            skipUntil("-->");
+        } else if (b == '[' && matches("CDATA[")) {
+            skipUntil("]]>");
+        } else {
+            throw new IOException("DOCTYPE declarations are not supported in shared strings parts");
+        }
+    }
+
+    private boolean matches(String expected) throws IOException {
+        for (int i = 0; i < expected.length(); i++) {
+            if (nextOrFail() != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void skipUntil(String terminator) throws IOException {
+        int length = terminator.length();
+        int[] window = new int[length];
+        int seen = 0;
+        while (true) {
+            System.arraycopy(window, 1, window, 0, length - 1);
+            window[length - 1] = nextOrFail();
+            if (++seen >= length && endsWith(window, terminator)) {
+                return;
+            }
+        }
+    }
+
+    private static boolean endsWith(int[] window, String terminator) {
+        for (int i = 0; i < window.length; i++) {
+            if (window[i] != terminator.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNameEnd(int b) {
+        return b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private static String localName(String name) {
+        return name.substring(name.indexOf(':') + 1);
+    }
+
+    /**
+     * Is notified while the part is scanned, so that a part can be rejected before all of it has been read.
+     */
+    interface Listener {
+        /**
+         * @param startTag the <code>sst</code> start tag (see {@link #getSstStartTag()})
+         */
+        void sstStart(byte[] startTag);
+
+        /**
+         * Called before the offset of an <code>si</code> element is recorded.
+         *
+         * @param siCount the number of <code>si</code> elements, including this one
+         */
+        void si(int siCount);
+    }
+}
@@ -27,7 +27,9 @@ import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.concurrent.ConcurrentMap;
 
@@ -57,16 +59,38 @@ import static org.apache.poi.xssf.usermodel.XSSFRelation.NS_SPREADSHEETML;
 public abstract class SharedStringsTableBase extends SharedStringsTable {
     private static final QName COUNT_QNAME = new QName("count");
     private static final QName UNIQUE_COUNT_QNAME = new QName("uniqueCount");
+    // rough heap cost of a String object, its array header and the map entry that references it
+    static final int HEAP_ENTRY_OVERHEAD = 64;
     protected final boolean fullFormat;
+    // entries loaded by readFrom are only added to the dedup index when something is next added to the table
+    private boolean indexPending;
+    private volatile CanonicalStrings canonicalStrings;
+    private volatile FrozenStrings frozen;
+    // -1: dedup against every entry, 0: no dedup, otherwise the number of recent distinct values to dedup against
+    private int dedupWindowSize = -1;
+    private LinkedHashMap<String, Integer> dedupWindow;
+    // the number of chars in the stored entries
+    private long storedChars;
+    private volatile TableLimits limits = TableLimits.NONE;
 
     /**
      *  Array of individual string items in the Shared String table.
+     *
+     *  @deprecated the tables in this package keep their entries in their own storage and leave this
+     *  <code>null</code>. It is only used by the default {@link #getEntry(int)} and {@link #putEntry(int, String)},
+     *  for subclasses that set it; override those methods instead.
      */
+    @Deprecated
     protected ConcurrentMap<Integer, String> strings;
 
     /**
-     *  Maps strings and their indexes in the <code>strings</code> arrays
+     *  Maps strings and their indexes in the <code>strings</code> arrays.
+     *
+     *  @deprecated the tables in this package keep their dedup index in their own storage and leave this
+     *  <code>null</code>. It is only used by the default {@link #findIndex(String)} and
+     *  {@link #putIndex(String, int)}, for subclasses that set it; override those methods instead.
      */
+    @Deprecated
     protected ConcurrentMap<String, Integer> stmap;
 
     private static final XmlOptions siSaveOptions = new XmlOptions(Constants.saveOptions);
@@ -84,6 +108,81 @@ public abstract class SharedStringsTableBase extends SharedStringsTable {
 
     protected abstract Iterator<Integer> keyIterator();
 
+    /**
+     * @param idx index of the entry
+     * @return the stored entry (plain text or, with <code>fullFormat</code>, the CTRst XML) or <code>null</code>
+     * if there is no entry for this index
+     */
+    protected String getEntry(int idx) {
+        return strings.get(idx);
+    }
+
+    /**
+     * Reads an entry for {@link #freeze()}, which reads every entry once, in index order. This is
+     * {@link #getEntry(int)} by default; implementations that cache or prefetch lookups can bypass that here.
+     *
+     * @param idx index of the entry
+     * @return the stored entry or <code>null</code> if there is no entry for this index
+     */
+    protected String getEntryForFreeze(int idx) {
+        return getEntry(idx);
+    }
+
+    /**
+     * @param idx index of the entry
+     * @param entry the plain text or, with <code>fullFormat</code>, the CTRst XML
+     */
+    protected void putEntry(int idx, String entry) {
+        strings.put(idx, entry);
+    }
+
+    /**
+     * @param entry the stored form of an entry (see {@link #getEntry(int)})
+     * @return the index of the entry or -1 if the table does not contain the entry
+     */
+    protected int findIndex(String entry) {
+        Integer idx = stmap.get(entry);
+        return idx == null ? -1 : idx;
+    }
+
+    /**
+     * Records the index of an entry so that it can be found with {@link #findIndex(String)}. This is called after
+     * {@link #putEntry(int, String)} so implementations can look the entry up by index.
+     *
+     * @param entry the stored form of an entry (see {@link #getEntry(int)})
+     * @param idx index of the entry
+     */
+    protected void putIndex(String entry, int idx) {
+        stmap.put(entry, idx);
+    }
+
+    /**
+     * Adds every stored entry to the dedup index, using {@link #putIndex(String, int)}. This is called before the
+     * first {@link #addSharedStringItem(RichTextString)} after {@link #readFrom(InputStream)}, which does not index
+     * the entries that it loads. Pure read use cases never pay for the dedup index.
+     * Where an entry is stored more than once, the highest index wins.
+     */
+    protected void buildIndex() {
+        Iterator<Integer> idIter = keyIterator();
+        while (idIter.hasNext()) {
+            int idx = idIter.next();
+            String entry = getEntry(idx);
+            if (entry != null) {
+                putIndex(entry, idx);
+            }
+        }
+    }
+
+    /**
+     * Called by {@link #readFrom(InputStream)} with the <code>uniqueCount</code> declared in the XML, before any
+     * entries are added. The value comes from the file, so implementations should treat it as a hint only.
+     *
+     * @param expectedUniqueCount the number of unique entries that the XML claims to hold
+     */
+    protected void presize(int expectedUniqueCount) {
+        // no-op by default
+    }
+
     /**
      * Read this shared strings table from an XML file.
      * 
@@ -121,21 +220,13 @@ public abstract class SharedStringsTableBase extends SharedStringsTable {
                             } catch (Exception e) {
                                 getLogger().warn("Failed to parse SharedStringsTable uniqueCount");
                             }
-                        } else if (localPart.equals("si")) {
-                            if (fullFormat) {
-                                List<String> tags = Arrays.asList(new String[]{"sst", "si"});
-                                String text = TextParser.getXMLText(xmlEventReader, startTag, tags);
-                                CTSst sst;
-                                try {
-                                    sst = SstDocument.Factory.parse(text).getSst();
-                                } catch (XmlException e) {
-                                    throw new IOException("Failed to parse shared string text", e);
-                                }
-                                addRSTEntry(new XSSFRichTextString(sst.getSiArray(0)).getCTRst(), true);
-                            } else {
-                                String text = TextParser.parseCT_Rst(xmlEventReader);
-                                addPlainStringEntry(text, true);
+                            if (uniqueCount > -1) {
+                                // fail before any entries are read if the file claims too many
+                                limits.checkEntry(getClass().getSimpleName(), 0, uniqueCount, 0);
+                                presize(uniqueCount);
                             }
+                        } else if (localPart.equals("si")) {
+                            addEntry(readEntry(xmlEventReader, startTag), true);
                         }
                     }
                 }
@@ -157,14 +248,81 @@ public abstract class SharedStringsTableBase extends SharedStringsTable {
         }
     }
 
+    /**
+     * Reads a <code>si</code> element into the form that is stored by this table (see {@link #getEntry(int)}).
+     *
+     * @param xmlEventReader the reader, pointing to the <code>si</code> start element
+     * @param startTag the name of the <code>si</code> start element
+     * @return the plain text or, with <code>fullFormat</code>, the CTRst XML
+     * @throws IOException if the entry cannot be parsed
+     * @throws XMLStreamException if the XML is malformed
+     */
+    String readEntry(XMLEventReader xmlEventReader, QName startTag) throws IOException, XMLStreamException {
+        if (fullFormat) {
+            List<String> tags = Arrays.asList(new String[]{"sst", "si"});
+            String text = TextParser.getXMLText(xmlEventReader, startTag, tags);
+            CTSst sst;
+            try {
+                sst = SstDocument.Factory.parse(text).getSst();
+            } catch (XmlException e) {
+                throw new IOException("Failed to parse shared string text", e);
+            }
+            return new XSSFRichTextString(sst.getSiArray(0)).getCTRst().xmlText();
+        } else {
+            return TextParser.parseCT_Rst(xmlEventReader);
+        }
+    }
+
+    /**
+     * Copies the entries into a compact, immutable snapshot (the UTF-8 bytes of all entries in one array, plus an
+     * array of offsets) and then releases the storage of this table, using {@link #close()}. Lookups are served
+     * from the snapshot, are lock free, and the retained memory is close to the size of the text. There is no
+     * dedup index, so entries can no longer be added: {@link #addSharedStringItem(RichTextString)} and
+     * {@link #readFrom(InputStream)} throw an <code>IllegalStateException</code>. This is meant for tables that are
+     * only read once they are loaded. It must not be called while other threads use the table.
+     * Calling it again has no effect.
+     *
+     * @throws IOException if the storage of this table cannot be released
+     * @throws IllegalStateException if the entries are too big to freeze (more than 2GB of UTF-8)
+     */
+    public void freeze() throws IOException {
+        if (frozen != null) {
+            return;
+        }
+        FrozenStrings.Builder builder = new FrozenStrings.Builder();
+        Iterator<Integer> idIter = keyIterator();
+        while (idIter.hasNext()) {
+            int idx = idIter.next();
+            String entry = getEntryForFreeze(idx);
+            if (entry != null) {
+                builder.add(idx, entry);
+            }
+        }
+        frozen = builder.build();
+        indexPending = false;
+        close();
+    }
+
+    /**
+     * @return whether {@link #freeze()} has been called
+     */
+    public boolean isFrozen() {
+        return frozen != null;
+    }
+
+    private String lookupEntry(int idx) {
+        FrozenStrings snapshot = frozen;
+        return snapshot == null ? getEntry(idx) : snapshot.get(idx);
+    }
+
     private CTRst getRSTEntryAt(int idx) throws XmlException, IOException {
-        String str = strings.get(idx);
+        String str = lookupEntry(idx);
         if (str == null) throw new NoSuchElementException();
         return CTRst.Factory.parse(new StringReader(str));
     }
 
     private String getPlainStringEntryAt(int idx) {
-        String str = strings.get(idx);
+        String str = lookupEntry(idx);
         if (str == null) throw new NoSuchElementException();
         return str;
     }
@@ -201,11 +359,113 @@ public abstract class SharedStringsTableBase extends SharedStringsTable {
      * @throws POIXMLException if the item cannot be parsed
      */
     public String getString(int idx) throws POIXMLException {
+        CanonicalStrings pool = canonicalStrings;
+        if (pool != null) {
+            String pooled = pool.get(idx);
+            if (pooled != null) {
+                return pooled;
+            }
+        }
+        String str;
         if (fullFormat) {
-            return getItemAt(idx).getString();
+            str = getItemAt(idx).getString();
         } else {
-            return getPlainStringEntryAt(idx);
+            str = getPlainStringEntryAt(idx);
+        }
+        return pool == null ? str : pool.put(idx, str);
+    }
+
+    /**
+     * Makes {@link #getString(int)} return the same String instance for repeated lookups of an index, for as long
+     * as the caller holds on to that instance. Without this, implementations that do not keep the strings on the
+     * heap return a new instance for each lookup, so callers that keep the strings (eg in row objects) can end up
+     * holding many copies of the same text. The pool holds weak references in a fixed number of slots, so it
+     * never keeps strings alive and its own size is bounded.
+     *
+     * @param maxStrings the number of strings to pool (0 disables the pool, which is the default)
+     */
+    public void configureCanonicalStrings(int maxStrings) {
+        canonicalStrings = maxStrings == 0 ? null : new CanonicalStrings(maxStrings);
+    }
+
+    /**
+     * Sets caps on the size of this table. Each entry that is read or added is checked before it is stored, and
+     * a {@link TableLimitExceededException} is thrown as soon as an entry would cross a limit (the entry is not
+     * stored). When {@link #readFrom(InputStream)} finds that the <code>uniqueCount</code> declared in the XML is
+     * above the entry limit, it fails before reading any entries. The temp file size is checked before each entry
+     * is stored, so the temp file can end up one entry over the limit. Entries that are already stored are not
+     * checked again. The default is {@link TableLimits#NONE}.
+     *
+     * @param limits the limits to apply
+     */
+    public void configureLimits(TableLimits limits) {
+        if (limits == null) {
+            throw new IllegalArgumentException("limits must not be null");
+        }
+        this.limits = limits;
+    }
+
+    /**
+     * @return the limits that are applied to this table
+     */
+    public TableLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Estimates how much memory and disk space this table uses. The estimate is cheap to compute (it does not
+     * walk the entries), so it can be checked while a table is being filled, eg to decide whether to switch to
+     * a different implementation before the heap runs out.
+     *
+     * @return the estimated footprint of this table
+     */
+    public TableFootprint estimateFootprint() {
+        FrozenStrings snapshot = frozen;
+        if (snapshot != null) {
+            return new TableFootprint(snapshot.getAllocatedBytes(), 0, 0, uniqueCount);
         }
+        long heapBytes = estimateHeapBytes();
+        LinkedHashMap<String, Integer> window = dedupWindow;
+        if (window != null) {
+            heapBytes += window.size() * (long) HEAP_ENTRY_OVERHEAD;
+        }
+        return new TableFootprint(heapBytes, estimateOffHeapBytes(), estimateTempFileBytes(), uniqueCount);
+    }
+
+    /**
+     * Used by {@link #estimateFootprint()}. The default assumes that every entry is held on the heap as a String,
+     * referenced from a map.
+     *
+     * @return the estimated number of bytes that the entries and indexes of this table hold on the heap
+     */
+    protected long estimateHeapBytes() {
+        return uniqueCount * (long) HEAP_ENTRY_OVERHEAD + 2 * storedChars;
+    }
+
+    /**
+     * Used by {@link #estimateFootprint()}.
+     *
+     * @return the estimated number of bytes that this table holds in direct (off-heap) buffers
+     */
+    protected long estimateOffHeapBytes() {
+        return 0;
+    }
+
+    /**
+     * Used by {@link #estimateFootprint()}.
+     *
+     * @return the number of bytes in the temp files of this table
+     */
+    protected long estimateTempFileBytes() {
+        return 0;
+    }
+
+    /**
+     * @return the number of chars in the entries that have been stored (in their stored form, see
+     * {@link #getEntry(int)})
+     */
+    protected long getStoredChars() {
+        return storedChars;
     }
 
     /**
@@ -235,33 +495,118 @@ public abstract class SharedStringsTableBase extends SharedStringsTable {
         if (st == null) {
             throw new NullPointerException("Cannot add null entry to SharedStringsTable");
         }
-        String s = xmlText(st);
-        count++;
-        if (!keepDuplicates && stmap.containsKey(s)) {
-            return stmap.get(s);
-        }
-
-        int idx = uniqueCount++;
-        stmap.put(s, idx);
-        strings.put(idx, st.xmlText());
-        return idx;
+        return addEntry(st.xmlText(), keepDuplicates);
     }
 
     private int addPlainStringEntry(String string, boolean keepDuplicates) {
         if (string == null) {
             throw new NullPointerException("Cannot add null entry to SharedStringsTable");
         }
+        return addEntry(string, keepDuplicates);
+    }
+
+    private int addEntry(String entry, boolean keepDuplicates) {
+        if (frozen != null) {
+            throw new IllegalStateException("Entries cannot be added to a frozen " + getClass().getSimpleName());
+        }
         count++;
-        if (!keepDuplicates && stmap.containsKey(string)) {
-            return stmap.get(string);
+        if (keepDuplicates) {
+            // readFrom: the entry is indexed lazily, see buildIndex()
+            int idx = appendEntry(entry);
+            indexPending = true;
+            return idx;
+        }
+
+        if (dedupWindowSize >= 0) {
+            return addEntryWithoutIndex(entry);
+        }
+
+        if (indexPending) {
+            buildIndex();
+            indexPending = false;
+        }
+        int existingIdx = findIndex(entry);
+        if (existingIdx >= 0) {
+            return existingIdx;
         }
 
+        int idx = appendEntry(entry);
+        putIndex(entry, idx);
+        return idx;
+    }
+
+    private int appendEntry(String entry) {
+        TableLimits tableLimits = limits;
+        if (tableLimits != TableLimits.NONE) {
+            String tableName = getClass().getSimpleName();
+            tableLimits.checkEntry(tableName, entry.length(), uniqueCount + 1L, storedChars + entry.length());
+            if (tableLimits.limitsTempFileBytes()) {
+                tableLimits.checkTempFileBytes(tableName, estimateTempFileBytes());
+            }
+        }
         int idx = uniqueCount++;
-        stmap.put(string, idx);
-        strings.put(idx, string);
+        putEntry(idx, entry);
+        storedChars += entry.length();
         return idx;
     }
 
+    /**
+     * Stores an entry for a table that keeps its entries in this one (see {@link HybridSharedStringsTable}), and
+     * keeps the counters that {@link #estimateHeapBytes()} uses up to date.
+     */
+    void putDelegatedEntry(int idx, String entry) {
+        putEntry(idx, entry);
+        uniqueCount = Math.max(uniqueCount, idx + 1);
+        storedChars += entry.length();
+    }
+
+    private int addEntryWithoutIndex(String entry) {
+        LinkedHashMap<String, Integer> window = dedupWindow;
+        if (window != null) {
+            Integer existingIdx = window.get(entry);
+            if (existingIdx != null) {
+                return existingIdx;
+            }
+        }
+        int idx = appendEntry(entry);
+        // the index is only built if full dedup is configured again
+        indexPending = true;
+        if (window != null) {
+            window.put(entry, idx);
+        }
+        return idx;
+    }
+
+    /**
+     * Configures how {@link #addSharedStringItem(RichTextString)} deduplicates entries. By default, every entry is
+     * checked against all the entries in the table, which needs an index entry per unique string. When nearly every
+     * string is unique (eg free text or ids), that index saves nothing. With a window size of 0, entries are
+     * appended without any dedup check (like {@link #readFrom(InputStream)} does). With a positive window size,
+     * entries are only checked against the last <code>windowSize</code> distinct values that were added, so the
+     * memory used for dedup does not grow with the table. In both cases, the same string can end up at more than one
+     * index, which is valid in a shared strings part. Configuring full dedup again (-1) indexes every stored entry
+     * before the next entry is added.
+     *
+     * @param windowSize -1 for full dedup (the default), 0 to disable dedup, or the number of recent distinct values
+     *                   to dedup against
+     */
+    public void configureDedupWindow(int windowSize) {
+        if (windowSize < -1) {
+            throw new IllegalArgumentException("windowSize must be -1 or more: " + windowSize);
+        }
+        dedupWindowSize = windowSize;
+        if (windowSize > 0) {
+            dedupWindow = new LinkedHashMap<String, Integer>(Math.min(windowSize, 1 << 10), 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                    return size() > windowSize;
+                }
+            };
+        } else {
+            dedupWindow = null;
+        }
+    }
+
     /**
      * Add an entry to this Shared String table (a new value is appended to the end).
      *
@@ -302,7 +647,8 @@ public abstract class SharedStringsTableBase extends SharedStringsTable {
             writer.write("\" xmlns=\"");
             writer.write(NS_SPREADSHEETML);
             writer.write("\">");
-            Iterator<Integer> idIter = keyIterator();
+            FrozenStrings snapshot = frozen;
+            Iterator<Integer> idIter = snapshot == null ? keyIterator() : snapshot.indexIterator();
             while (idIter.hasNext()) {
                 Integer stringId = idIter.next();
                 XSSFRichTextString rst = (XSSFRichTextString)getItemAt(stringId);
@@ -0,0 +1,104 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of decoded entries, keyed by index, that is bounded by the number of entries and by their estimated
+ * heap size. It counts hits and misses. All access is serialized on this instance.
+ */
+final class StringCache {
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<Integer, String> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param maxEntries the maximum number of entries to keep
+     * @param maxBytes the maximum estimated heap size (in bytes) of the entries to keep
+     */
+    StringCache(int maxEntries, long maxBytes) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param idx the index of the entry
+     * @return the cached entry or <code>null</code> if it is not cached
+     */
+    synchronized String get(int idx) {
+        String value = entries.get(idx);
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+    /**
+     * Caches an entry, evicting the least recently used entries if the cache is full. Entries that are bigger
+     * than the whole cache are not cached.
+     *
+     * @param idx the index of the entry
+     * @param value the entry
+     */
+    synchronized void put(int idx, String value) {
+        long size = estimateSize(value);
+        if (size > maxBytes) {
+            return;
+        }
+        String previous = entries.put(idx, value);
+        if (previous != null) {
+            bytes -= estimateSize(previous);
+        }
+        bytes += size;
+        Iterator<Map.Entry<Integer, String>> iter = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && iter.hasNext()) {
+            Map.Entry<Integer, String> eldest = iter.next();
+            bytes -= estimateSize(eldest.getValue());
+            iter.remove();
+        }
+    }
+
+    int getMaxEntries() {
+        return maxEntries;
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the estimated heap size (in bytes) of the cached entries
+     */
+    synchronized long getEstimatedBytes() {
+        return bytes;
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    private static long estimateSize(String value) {
+        return SharedStringsTableBase.HEAP_ENTRY_OVERHEAD + 2L * value.length();
+    }
+}
@@ -0,0 +1,203 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Table of strings shared across all sheets in a workbook.
+ * <p>
+ * A workbook may contain thousands of cells containing string (non-numeric) data. Furthermore this data is very
+ * likely to be repeated across many rows or columns. The goal of implementing a single string table that is shared
+ * across the workbook is to improve performance in opening and saving the file by only reading and writing the
+ * repetitive information once.
+ * </p>
+ * <p>
+ * Consider for example a workbook summarizing information for cities within various countries. There may be a
+ * column for the name of the country, a column for the name of each city in that country, and a column
+ * containing the data for each city. In this case the country name is repetitive, being duplicated in many cells.
+ * In many cases the repetition is extensive, and a tremendous savings is realized by making use of a shared string
+ * table when saving the workbook. When displaying text in the spreadsheet, the cell table will just contain an
+ * index into the string table as the value of a cell, instead of the full string.
+ * </p>
+ * <p>
+ * The shared string table contains all the necessary information for displaying the string: the text, formatting
+ * properties, and phonetic properties (for East Asian languages).
+ * </p>
+ * <p>
+ * This implementation keeps the strings on the heap, each compressed on its own with a symbol table (in the
+ * style of FSST) that is trained on the first entries that are added or read. Unlike the <code>compressStrings</code>
+ * option of {@link MapBackedSharedStringsTable}, a lookup only decodes the requested entry, so random access stays
+ * fast. The entries that are added before the symbol table is trained are kept uncompressed.
+ * </p>
+ */
+public class SymbolCompressedSharedStringsTable extends SharedStringsTableBase {
+    private static final Logger log = LoggerFactory.getLogger(SymbolCompressedSharedStringsTable.class);
+
+    /**
+     * The default number of entries that the symbol table is trained on.
+     */
+    public static final int DEFAULT_TRAINING_ENTRIES = 1000;
+    // stop sampling early for tables with long entries
+    private static final int MAX_TRAINING_BYTES = 1 << 16;
+
+    private final int trainingEntries;
+    private final Utf8Arena arena = new Utf8Arena(false);
+    private final ChunkedLongArray addresses = new ChunkedLongArray();
+    private final DedupIndex index = new DedupIndex(this::getEntry);
+    // entries are kept here until the symbol table is trained; the field is cleared after the table is published
+    private volatile ChunkedStringArray untrained = new ChunkedStringArray();
+    private volatile SymbolTable symbolTable;
+    private int untrainedBytes;
+
+    public SymbolCompressedSharedStringsTable() {
+        this(false);
+    }
+
+    /**
+     * @param fullFormat whether to store format information (which is more expensive)
+     */
+    public SymbolCompressedSharedStringsTable(boolean fullFormat) {
+        this(fullFormat, DEFAULT_TRAINING_ENTRIES);
+    }
+
+    /**
+     * @param fullFormat whether to store format information (which is more expensive)
+     * @param trainingEntries the number of entries to train the symbol table on
+     */
+    public SymbolCompressedSharedStringsTable(boolean fullFormat, int trainingEntries) {
+        super(fullFormat);
+        if (trainingEntries <= 0) {
+            throw new IllegalArgumentException("trainingEntries must be positive: " + trainingEntries);
+        }
+        this.trainingEntries = trainingEntries;
+    }
+
+    public SymbolCompressedSharedStringsTable(OPCPackage pkg) throws IOException {
+        this(pkg, false);
+    }
+
+    public SymbolCompressedSharedStringsTable(OPCPackage pkg, boolean fullFormat) throws IOException {
+        this(fullFormat);
+        ArrayList<PackagePart> parts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+        if (!parts.isEmpty()) {
+            PackagePart sstPart = parts.get(0);
+            this.readFrom(sstPart.getInputStream());
+        }
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return log;
+    }
+
+    @Override
+    protected Iterator<Integer> keyIterator() {
+        ChunkedStringArray pending = untrained;
+        return symbolTable == null ? pending.indexIterator() : addresses.indexIterator();
+    }
+
+    @Override
+    protected String getEntry(int idx) {
+        // read untrained first: it is only cleared after symbolTable is set
+        ChunkedStringArray pending = untrained;
+        SymbolTable table = symbolTable;
+        if (table == null) {
+            return pending.get(idx);
+        }
+        long address = addresses.get(idx);
+        return address == ChunkedLongArray.ABSENT ? null : table.decode(arena.getBytes(address));
+    }
+
+    @Override
+    protected void putEntry(int idx, String entry) {
+        SymbolTable table = symbolTable;
+        if (table != null) {
+            addresses.set(idx, arena.appendBytes(table.encode(entry)));
+            return;
+        }
+        ChunkedStringArray pending = untrained;
+        pending.set(idx, entry);
+        untrainedBytes += entry.length();
+        if (pending.size() >= trainingEntries || untrainedBytes >= MAX_TRAINING_BYTES) {
+            train(pending);
+        }
+    }
+
+    @Override
+    protected int findIndex(String entry) {
+        return index.find(entry);
+    }
+
+    @Override
+    protected void putIndex(String entry, int idx) {
+        index.put(entry, idx);
+    }
+
+    @Override
+    protected void presize(int expectedUniqueCount) {
+        addresses.ensureCapacity(expectedUniqueCount);
+    }
+
+    @Override
+    protected long estimateHeapBytes() {
+        // until the symbol table is trained, the entries are held as Strings
+        long entryBytes = symbolTable == null ? super.estimateHeapBytes() : arena.getAllocatedBytes();
+        return entryBytes + 8L * addresses.length() + index.getAllocatedBytes();
+    }
+
+    /**
+     * @return whether the symbol table has been trained (and new entries are compressed)
+     */
+    public boolean isTrained() {
+        return symbolTable != null;
+    }
+
+    /**
+     * SymbolCompressedSharedStringsTable does not implement getSharedStringItems().
+     * It could be made to work, but it would be memory intensive and slow.
+     * Use <code>getItemAt</code> instead.
+     *
+     * @return throws UnsupportedOperationException
+     * @throws UnsupportedOperationException not supported
+     */
+    @Override
+    public List<RichTextString> getSharedStringItems() {
+        throw new UnsupportedOperationException("SymbolCompressedSharedStringsTable only supports streaming access of shared strings");
+    }
+
+    @Override
+    public void close() throws IOException {
+        untrained = new ChunkedStringArray();
+        addresses.clear();
+        arena.clear();
+        index.clear();
+    }
+
+    private void train(ChunkedStringArray pending) {
+        List<byte[]> samples = new ArrayList<>(pending.size());
+        Iterator<Integer> idIter = pending.indexIterator();
+        while (idIter.hasNext()) {
+            samples.add(pending.get(idIter.next()).getBytes(StandardCharsets.UTF_8));
+        }
+        SymbolTable table = SymbolTable.train(samples);
+        idIter = pending.indexIterator();
+        while (idIter.hasNext()) {
+            int idx = idIter.next();
+            addresses.set(idx, arena.appendBytes(table.encode(pending.get(idx))));
+        }
+        log.debug("trained a shared strings symbol table with {} symbols on {} entries", table.size(), samples.size());
+        symbolTable = table;
+        // readers that still hold the untrained entries can keep using them
+        untrained = null;
+    }
+}
@@ -0,0 +1,213 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Static table of up to 255 byte sequences (symbols) of 1 to 8 bytes that are used to compress short strings
+ * independently of each other, in the style of FSST (Fast Static Symbol Table). Each encoded byte is either the
+ * code of a symbol or {@link #ESCAPE} followed by a literal byte, so any single string can be decoded without
+ * touching the others.
+ * <p>
+ * The table is trained once (see {@link #train(List)}) and is immutable afterwards, so it is thread safe.
+ * </p>
+ */
+final class SymbolTable {
+    static final int MAX_SYMBOL_LENGTH = 8;
+    private static final int MAX_SYMBOLS = 255;
+    private static final int ESCAPE = 255;
+    private static final int TRAINING_ROUNDS = 5;
+    // training codes: 0-254 for symbols, 256 + b for the literal byte b
+    private static final int LITERAL_BASE = 256;
+    private static final int CODE_COUNT = LITERAL_BASE + 256;
+    private static final int[] NO_CODES = new int[0];
+
+    private final byte[][] symbols;
+    // codesByFirstByte[b] holds the codes of the symbols that start with b, longest first
+    private final int[][] codesByFirstByte;
+
+    private SymbolTable(byte[][] symbols) {
+        this.symbols = symbols;
+        List<List<Integer>> byFirst = new ArrayList<>(256);
+        for (int i = 0; i < 256; i++) {
+            byFirst.add(new ArrayList<>());
+        }
+        for (int code = 0; code < symbols.length; code++) {
+            byFirst.get(symbols[code][0] & 0xFF).add(code);
+        }
+        codesByFirstByte = new int[256][];
+        for (int i = 0; i < 256; i++) {
+            List<Integer> codes = byFirst.get(i);
+            if (codes.isEmpty()) {
+                codesByFirstByte[i] = NO_CODES;
+            } else {
+                codes.sort((a, b) -> symbols[b].length - symbols[a].length);
+                codesByFirstByte[i] = codes.stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+    }
+
+    /**
+     * Builds a symbol table that suits the sample strings. Each round encodes the samples with the current table
+     * and then keeps the symbols (and concatenations of adjacent symbols) that cover the most bytes.
+     *
+     * @param samples UTF-8 encoded sample strings
+     * @return the trained table
+     */
+    static SymbolTable train(List<byte[]> samples) {
+        SymbolTable table = new SymbolTable(new byte[0][]);
+        for (int round = 0; round < TRAINING_ROUNDS; round++) {
+            int[] singleCounts = new int[CODE_COUNT];
+            int[][] pairCounts = new int[CODE_COUNT][];
+            for (byte[] sample : samples) {
+                int prev = -1;
+                int pos = 0;
+                while (pos < sample.length) {
+                    int code = table.findLongestMatch(sample, pos);
+                    int length;
+                    if (code < 0) {
+                        code = LITERAL_BASE + (sample[pos] & 0xFF);
+                        length = 1;
+                    } else {
+                        length = table.symbols[code].length;
+                    }
+                    singleCounts[code]++;
+                    if (prev >= 0) {
+                        if (pairCounts[prev] == null) {
+                            pairCounts[prev] = new int[CODE_COUNT];
+                        }
+                        pairCounts[prev][code]++;
+                    }
+                    prev = code;
+                    pos += length;
+                }
+            }
+            table = new SymbolTable(pickSymbols(table, singleCounts, pairCounts));
+        }
+        return table;
+    }
+
+    /**
+     * @param utf8 the UTF-8 bytes of a string
+     * @return the encoded string: a varint with the UTF-8 length followed by the codes
+     */
+    byte[] encode(byte[] utf8) {
+        ByteBuffer header = ByteBuffer.allocate(5);
+        Utf8Arena.putVarInt(header, utf8.length);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(header.position() + utf8.length);
+        bos.write(header.array(), 0, header.position());
+        int pos = 0;
+        while (pos < utf8.length) {
+            int code = findLongestMatch(utf8, pos);
+            if (code < 0) {
+                bos.write(ESCAPE);
+                bos.write(utf8[pos]);
+                pos++;
+            } else {
+                bos.write(code);
+                pos += symbols[code].length;
+            }
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * @param value the string to encode
+     * @return the encoded string
+     */
+    byte[] encode(String value) {
+        return encode(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param encoded bytes returned by {@link #encode(byte[])}
+     * @return the decoded string
+     */
+    String decode(byte[] encoded) {
+        ByteBuffer buffer = ByteBuffer.wrap(encoded);
+        byte[] utf8 = new byte[Utf8Arena.readVarInt(buffer)];
+        int out = 0;
+        for (int pos = buffer.position(); pos < encoded.length; pos++) {
+            int code = encoded[pos] & 0xFF;
+            if (code == ESCAPE) {
+                utf8[out++] = encoded[++pos];
+            } else {
+                byte[] symbol = symbols[code];
+                System.arraycopy(symbol, 0, utf8, out, symbol.length);
+                out += symbol.length;
+            }
+        }
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the number of symbols in the table
+     */
+    int size() {
+        return symbols.length;
+    }
+
+    private int findLongestMatch(byte[] bytes, int pos) {
+        for (int code : codesByFirstByte[bytes[pos] & 0xFF]) {
+            byte[] symbol = symbols[code];
+            if (symbol.length <= bytes.length - pos && matches(symbol, bytes, pos)) {
+                return code;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(byte[] symbol, byte[] bytes, int pos) {
+        for (int i = 1; i < symbol.length; i++) {
+            if (symbol[i] != bytes[pos + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] symbolForCode(int code) {
+        return code >= LITERAL_BASE ? new byte[]{(byte) (code - LITERAL_BASE)} : symbols[code];
+    }
+
+    private static byte[][] pickSymbols(SymbolTable table, int[] singleCounts, int[][] pairCounts) {
+        // the gain of a candidate is the number of sample bytes that it would cover
+        Map<ByteBuffer, Long> gains = new HashMap<>();
+        for (int code = 0; code < CODE_COUNT; code++) {
+            if (singleCounts[code] == 0) {
+                continue;
+            }
+            byte[] symbol = table.symbolForCode(code);
+            gains.merge(ByteBuffer.wrap(symbol), (long) singleCounts[code] * symbol.length, Math::max);
+            if (pairCounts[code] == null) {
+                continue;
+            }
+            for (int next = 0; next < CODE_COUNT; next++) {
+                int count = pairCounts[code][next];
+                if (count == 0) {
+                    continue;
+                }
+                byte[] nextSymbol = table.symbolForCode(next);
+                if (symbol.length + nextSymbol.length <= MAX_SYMBOL_LENGTH) {
+                    byte[] joined = Arrays.copyOf(symbol, symbol.length + nextSymbol.length);
+                    System.arraycopy(nextSymbol, 0, joined, symbol.length, nextSymbol.length);
+                    gains.merge(ByteBuffer.wrap(joined), (long) count * joined.length, Math::max);
+                }
+            }
+        }
+        List<Map.Entry<ByteBuffer, Long>> candidates = new ArrayList<>(gains.entrySet());
+        candidates.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        int symbolCount = Math.min(MAX_SYMBOLS, candidates.size());
+        byte[][] picked = new byte[symbolCount][];
+        for (int i = 0; i < symbolCount; i++) {
+            picked[i] = candidates.get(i).getKey().array();
+        }
+        return picked;
+    }
+}
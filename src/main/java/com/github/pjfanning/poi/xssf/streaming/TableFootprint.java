@@ -0,0 +1,71 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+/**
+ * Estimated memory and disk footprint of a shared strings or comments table, as returned by
+ * {@link SharedStringsTableBase#estimateFootprint()} and {@link CommentsTableBase#estimateFootprint()}.
+ * The byte counts are estimates (eg object headers and map entries are not measured), meant for admission
+ * control and monitoring rather than accounting.
+ */
+public final class TableFootprint {
+    private final long heapBytes;
+    private final long offHeapBytes;
+    private final long tempFileBytes;
+    private final int entryCount;
+
+    TableFootprint(long heapBytes, long offHeapBytes, long tempFileBytes, int entryCount) {
+        this.heapBytes = heapBytes;
+        this.offHeapBytes = offHeapBytes;
+        this.tempFileBytes = tempFileBytes;
+        this.entryCount = entryCount;
+    }
+
+    /**
+     * @return the estimated number of bytes held on the Java heap
+     */
+    public long getHeapBytes() {
+        return heapBytes;
+    }
+
+    /**
+     * @return the estimated number of bytes held in direct (off-heap) buffers
+     */
+    public long getOffHeapBytes() {
+        return offHeapBytes;
+    }
+
+    /**
+     * @return the number of bytes in temp files
+     */
+    public long getTempFileBytes() {
+        return tempFileBytes;
+    }
+
+    /**
+     * @return the number of entries (unique strings or comments)
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return the total number of bytes (heap, off-heap and temp files)
+     */
+    public long getTotalBytes() {
+        return heapBytes + offHeapBytes + tempFileBytes;
+    }
+
+    /**
+     * @return the total number of bytes divided by the number of entries, or 0 if there are no entries
+     */
+    public double getAverageEntryBytes() {
+        return entryCount == 0 ? 0 : (double) getTotalBytes() / entryCount;
+    }
+
+    @Override
+    public String toString() {
+        return "TableFootprint{heapBytes=" + heapBytes +
+                ", offHeapBytes=" + offHeapBytes +
+                ", tempFileBytes=" + tempFileBytes +
+                ", entryCount=" + entryCount + "}";
+    }
+}
@@ -0,0 +1,13 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+/**
+ * An exception that is thrown when a shared strings or comments table would exceed one of its
+ * {@link TableLimits}. The table is left as it was before the entry that crossed the limit.
+ */
+public class TableLimitExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public TableLimitExceededException(String message) {
+        super(message);
+    }
+}
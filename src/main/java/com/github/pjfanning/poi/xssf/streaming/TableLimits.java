@@ -0,0 +1,194 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+/**
+ * Caps on the size of a shared strings or comments table, so that a hostile or broken file fails fast with a
+ * {@link TableLimitExceededException} instead of filling the heap or the temp dir. The limits are checked as each
+ * entry is read or added. Limits that are not set are not checked. Instances are immutable and can be shared
+ * between tables.
+ * <pre>
+ * TableLimits limits = TableLimits.builder()
+ *         .maxEntries(1_000_000)
+ *         .maxEntryLength(32_767)
+ *         .build();
+ * </pre>
+ *
+ * @see SharedStringsTableBase#configureLimits(TableLimits)
+ * @see CommentsTableBase#configureLimits(TableLimits)
+ */
+public final class TableLimits {
+
+    /**
+     * No limits (the default).
+     */
+    public static final TableLimits NONE = builder().build();
+
+    /**
+     * Builder for {@link TableLimits}.
+     */
+    public static final class Builder {
+        private int maxEntries = -1;
+        private long maxTotalChars = -1;
+        private int maxEntryLength = -1;
+        private long maxTempFileBytes = -1;
+
+        private Builder() {}
+
+        /**
+         * @param maxEntries the maximum number of entries (unique strings or comments)
+         * @return this builder
+         * @throws IllegalArgumentException if <code>maxEntries</code> is negative
+         */
+        public Builder maxEntries(int maxEntries) {
+            if (maxEntries < 0) {
+                throw new IllegalArgumentException("maxEntries must not be negative: " + maxEntries);
+            }
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * @param maxTotalChars the maximum number of chars in all the entries that are read or added
+         * @return this builder
+         * @throws IllegalArgumentException if <code>maxTotalChars</code> is negative
+         */
+        public Builder maxTotalChars(long maxTotalChars) {
+            if (maxTotalChars < 0) {
+                throw new IllegalArgumentException("maxTotalChars must not be negative: " + maxTotalChars);
+            }
+            this.maxTotalChars = maxTotalChars;
+            return this;
+        }
+
+        /**
+         * @param maxEntryLength the maximum number of chars in an entry, in the form that the table stores it
+         *                       (with full format, this is the XML of the rich text)
+         * @return this builder
+         * @throws IllegalArgumentException if <code>maxEntryLength</code> is negative
+         */
+        public Builder maxEntryLength(int maxEntryLength) {
+            if (maxEntryLength < 0) {
+                throw new IllegalArgumentException("maxEntryLength must not be negative: " + maxEntryLength);
+            }
+            this.maxEntryLength = maxEntryLength;
+            return this;
+        }
+
+        /**
+         * @param maxTempFileBytes the maximum size (in bytes) of the temp files of the table
+         * @return this builder
+         * @throws IllegalArgumentException if <code>maxTempFileBytes</code> is negative
+         */
+        public Builder maxTempFileBytes(long maxTempFileBytes) {
+            if (maxTempFileBytes < 0) {
+                throw new IllegalArgumentException("maxTempFileBytes must not be negative: " + maxTempFileBytes);
+            }
+            this.maxTempFileBytes = maxTempFileBytes;
+            return this;
+        }
+
+        /**
+         * @return the limits
+         */
+        public TableLimits build() {
+            return new TableLimits(this);
+        }
+    }
+
+    /**
+     * @return a new builder (with no limits)
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private final int maxEntries;
+    private final long maxTotalChars;
+    private final int maxEntryLength;
+    private final long maxTempFileBytes;
+
+    private TableLimits(Builder builder) {
+        this.maxEntries = builder.maxEntries;
+        this.maxTotalChars = builder.maxTotalChars;
+        this.maxEntryLength = builder.maxEntryLength;
+        this.maxTempFileBytes = builder.maxTempFileBytes;
+    }
+
+    /**
+     * @return the maximum number of entries or -1 if there is no limit
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @return the maximum number of chars in all the entries or -1 if there is no limit
+     */
+    public long getMaxTotalChars() {
+        return maxTotalChars;
+    }
+
+    /**
+     * @return the maximum number of chars in an entry or -1 if there is no limit
+     */
+    public int getMaxEntryLength() {
+        return maxEntryLength;
+    }
+
+    /**
+     * @return the maximum size of the temp files in bytes or -1 if there is no limit
+     */
+    public long getMaxTempFileBytes() {
+        return maxTempFileBytes;
+    }
+
+    /**
+     * Checks that an entry can be added.
+     *
+     * @param tableName the name of the table (for the exception message)
+     * @param entryLength the number of chars in the entry
+     * @param entries the number of entries, including the new one
+     * @param totalChars the number of chars in all the entries, including the new one
+     * @throws TableLimitExceededException if a limit would be exceeded
+     */
+    void checkEntry(String tableName, int entryLength, long entries, long totalChars) {
+        if (maxEntryLength >= 0 && entryLength > maxEntryLength) {
+            throw new TableLimitExceededException(tableName + " entry has " + entryLength +
+                    " chars, which is more than the limit of " + maxEntryLength);
+        }
+        if (maxEntries >= 0 && entries > maxEntries) {
+            throw new TableLimitExceededException(tableName + " has more than the limit of " + maxEntries +
+                    " entries");
+        }
+        if (maxTotalChars >= 0 && totalChars > maxTotalChars) {
+            throw new TableLimitExceededException(tableName + " entries have more than the limit of " +
+                    maxTotalChars + " chars");
+        }
+    }
+
+    /**
+     * @param tableName the name of the table (for the exception message)
+     * @param tempFileBytes the current size of the temp files of the table
+     * @throws TableLimitExceededException if the temp files are bigger than the limit
+     */
+    void checkTempFileBytes(String tableName, long tempFileBytes) {
+        if (maxTempFileBytes >= 0 && tempFileBytes > maxTempFileBytes) {
+            throw new TableLimitExceededException(tableName + " temp file has " + tempFileBytes +
+                    " bytes, which is more than the limit of " + maxTempFileBytes);
+        }
+    }
+
+    /**
+     * @return whether the temp file size is limited
+     */
+    boolean limitsTempFileBytes() {
+        return maxTempFileBytes >= 0;
+    }
+
+    @Override
+    public String toString() {
+        return "TableLimits{maxEntries=" + maxEntries +
+                ", maxTotalChars=" + maxTotalChars +
+                ", maxEntryLength=" + maxEntryLength +
+                ", maxTempFileBytes=" + maxTempFileBytes + "}";
+    }
+}
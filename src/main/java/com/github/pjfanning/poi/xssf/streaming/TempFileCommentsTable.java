@@ -2,18 +2,18 @@ package com.github.pjfanning.poi.xssf.streaming;
 
 import org.apache.poi.openxml4j.opc.OPCPackage;
 import org.apache.poi.openxml4j.opc.PackagePart;
-import org.apache.poi.util.TempFile;
 import org.apache.poi.xssf.usermodel.XSSFRelation;
 import org.h2.mvstore.MVMap;
 import org.h2.mvstore.MVStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.Base64;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
  * Table of comments.
@@ -21,12 +21,19 @@ import java.util.Iterator;
  * The comments table contains all the necessary information for displaying the string: the text, formatting
  * properties, and phonetic properties (for East Asian languages).
  * </p>
+ * <p>
+ * The temp file is only created when the table grows beyond
+ * {@link TempFileStoreOptions#getInMemoryEntries()} comments (or when {@link #readFrom(InputStream)} is called).
+ * Smaller tables are held in memory, so sheets with few comments do not pay for the temp file.
+ * A failure to create the temp file is then thrown as an {@link UncheckedIOException} by the call that needed it.
+ * With {@link TempFileStoreOptions.Builder#inMemoryEntries(int) inMemoryEntries(0)}, the temp file is created by
+ * the constructor, which throws an <code>IOException</code> if that fails.
+ * </p>
  */
 public class TempFileCommentsTable extends CommentsTableBase {
     private static Logger log = LoggerFactory.getLogger(TempFileCommentsTable.class);
 
-    private File tempFile;
-    private MVStore mvStore;
+    private final TempFileStore store;
     private MVMap<String, SerializableComment> mvComments;
     private MVMap<Integer, String> mvAuthors;
 
@@ -36,7 +43,9 @@ public class TempFileCommentsTable extends CommentsTableBase {
 
     /**
      * @param encryptTempFiles whether to encrypt the temp files
-     * @throws IOException if an error occurs while working with the temp file
+     * @throws IOException if {@link TempFileStoreOptions#getInMemoryEntries()} is 0 and the temp file cannot be
+     * created; otherwise the temp file is created when it is first needed, and a failure to create it is thrown as
+     * an {@link UncheckedIOException} at that point
      */
     public TempFileCommentsTable(boolean encryptTempFiles) throws IOException {
         this(encryptTempFiles, false);
@@ -45,36 +54,48 @@ public class TempFileCommentsTable extends CommentsTableBase {
     /**
      * @param encryptTempFiles whether to encrypt the temp files
      * @param fullFormat whether to store format information (which is more expensive)
-     * @throws IOException if an error occurs while working with the temp file
+     * @throws IOException if {@link TempFileStoreOptions#getInMemoryEntries()} is 0 and the temp file cannot be
+     * created; otherwise the temp file is created when it is first needed, and a failure to create it is thrown as
+     * an {@link UncheckedIOException} at that point
      */
     public TempFileCommentsTable(boolean encryptTempFiles, boolean fullFormat) throws IOException {
+        this(encryptTempFiles, fullFormat, TempFileStoreOptions.DEFAULT);
+    }
+
+    /**
+     * @param encryptTempFiles whether to encrypt the temp files
+     * @param fullFormat whether to store format information (which is more expensive)
+     * @param storeOptions tuning options for the MVStore that is opened on the temp file
+     * @throws IOException if {@link TempFileStoreOptions#getInMemoryEntries()} is 0 and the temp file cannot be
+     * created; otherwise the temp file is created when it is first needed, and a failure to create it is thrown as
+     * an {@link UncheckedIOException} at that point
+     */
+    public TempFileCommentsTable(boolean encryptTempFiles, boolean fullFormat,
+                                 TempFileStoreOptions storeOptions) throws IOException {
+        this(encryptTempFiles, fullFormat, storeOptions, null);
+    }
+
+    /**
+     * Creates a table that leases its store from a pool, instead of creating a temp file of its own. The store
+     * is returned to the pool when the table is closed.
+     *
+     * @param fullFormat whether to store format information (which is more expensive)
+     * @param storePool the pool to lease the store from (its options and encryption setting are used)
+     * @throws IOException if {@link TempFileStoreOptions#getInMemoryEntries()} is 0 and no store can be opened
+     */
+    public TempFileCommentsTable(boolean fullFormat, TempFileStorePool storePool) throws IOException {
+        this(storePool.isEncryptTempFiles(), fullFormat, storePool.getStoreOptions(), storePool);
+    }
+
+    private TempFileCommentsTable(boolean encryptTempFiles, boolean fullFormat,
+                                  TempFileStoreOptions storeOptions, TempFileStorePool storePool) throws IOException {
         super(fullFormat);
-        try {
-            tempFile = TempFile.createTempFile("poi-comments", ".tmp");
-            MVStore.Builder mvStoreBuilder = new MVStore.Builder();
-            if (encryptTempFiles) {
-                byte[] bytes = new byte[1024];
-                Constants.RANDOM.nextBytes(bytes);
-                mvStoreBuilder.encryptionKey(Base64.getEncoder().encodeToString(bytes).toCharArray());
-            }
-            mvStoreBuilder.fileName(tempFile.getAbsolutePath());
-            mvStore = mvStoreBuilder.open();
-            mvComments = mvStore.openMap("comments");
-            comments = mvComments;
-            mvAuthors = mvStore.openMap("authors");
-            authors = mvAuthors;
-        } catch (Error | IOException e) {
-            if (mvStore != null) mvStore.closeImmediately();
-            if (tempFile != null && !tempFile.delete()) {
-                log.debug("failed to delete temp file - probably already deleted");
-            }
-            throw e;
-        } catch (Exception e) {
-            if (mvStore != null) mvStore.closeImmediately();
-            if (tempFile != null && !tempFile.delete()) {
-                log.debug("failed to delete temp file - probably already deleted");
-            }
-            throw new IOException(e);
+        this.store = new TempFileStore("poi-comments", storeOptions, encryptTempFiles, storePool);
+        // the first comments are kept in memory, see openStore
+        comments = new ConcurrentSkipListMap<>();
+        authors = new ConcurrentSkipListMap<>();
+        if (storeOptions.getInMemoryEntries() == 0) {
+            openStore();
         }
     }
 
@@ -95,7 +116,19 @@ public class TempFileCommentsTable extends CommentsTableBase {
      */
     public TempFileCommentsTable(OPCPackage pkg, boolean encryptTempFiles,
                                  boolean fullFormat) throws IOException {
-        this(encryptTempFiles, fullFormat);
+        this(pkg, encryptTempFiles, fullFormat, TempFileStoreOptions.DEFAULT);
+    }
+
+    /**
+     * @param pkg the OPCPackage to load the comments from
+     * @param encryptTempFiles whether to encrypt the temp files
+     * @param fullFormat whether to store format information (which is more expensive)
+     * @param storeOptions tuning options for the MVStore that is opened on the temp file
+     * @throws IOException if an error occurs while working with the temp file
+     */
+    public TempFileCommentsTable(OPCPackage pkg, boolean encryptTempFiles, boolean fullFormat,
+                                 TempFileStoreOptions storeOptions) throws IOException {
+        this(encryptTempFiles, fullFormat, storeOptions);
         ArrayList<PackagePart> parts = pkg.getPartsByContentType(XSSFRelation.SHEET_COMMENTS.getContentType());
         if (!parts.isEmpty()) {
             PackagePart sstPart = parts.get(0);
@@ -103,6 +136,42 @@ public class TempFileCommentsTable extends CommentsTableBase {
         }
     }
 
+    /**
+     * Read this comments table from an XML file. With {@link TempFileStoreOptions.Builder#bulkLoad(boolean)}, the
+     * data is committed to the temp file once, at the end.
+     *
+     * @param is The input stream containing the XML document.
+     * @throws IOException if an error occurs while reading.
+     */
+    @Override
+    public void readFrom(InputStream is) throws IOException {
+        openStore();
+        int autoCommitDelay = store.beginBulkLoad();
+        boolean succeeded = false;
+        try {
+            super.readFrom(is);
+            succeeded = true;
+        } finally {
+            store.endBulkLoad(autoCommitDelay, succeeded);
+        }
+    }
+
+    @Override
+    protected long estimateHeapBytes() {
+        // until the store is opened, the comments are held in memory
+        return store.isOpen() ? store.estimateHeapBytes() : super.estimateHeapBytes();
+    }
+
+    @Override
+    protected long estimateOffHeapBytes() {
+        return store.estimateOffHeapBytes();
+    }
+
+    @Override
+    protected long estimateTempFileBytes() {
+        return store.estimateTempFileBytes();
+    }
+
     @Override
     protected Logger getLogger() {
         return log;
@@ -110,19 +179,67 @@ public class TempFileCommentsTable extends CommentsTableBase {
 
     @Override
     protected Iterator<Integer> authorsKeyIterator() {
-        return mvAuthors.keyIterator(null);
+        return mvAuthors == null ? authors.keySet().iterator() : mvAuthors.keyIterator(null);
     }
 
     @Override
     protected Iterator<String> commentsKeyIterator() {
-        return mvComments.keyIterator(null);
+        return mvComments == null ? comments.keySet().iterator() : mvComments.keyIterator(null);
     }
 
     @Override
-    public void close() {
-        if(mvStore != null) mvStore.closeImmediately();
-        if(tempFile != null && !tempFile.delete()) {
-            log.debug("failed to delete temp file - probably already deleted");
+    protected void storeComment(String ref, SerializableComment comment) {
+        if (!store.isOpen() && comments.size() >= store.getStoreOptions().getInMemoryEntries() && !comments.containsKey(ref)) {
+            try {
+                openStore();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to create temp file for comments", e);
+            }
         }
+        super.storeComment(ref, comment);
+    }
+
+    /**
+     * @return whether the temp file has been created and the store opened (see
+     * {@link TempFileStoreOptions.Builder#inMemoryEntries(int)})
+     */
+    public boolean isStoreOpen() {
+        return store.isOpen();
+    }
+
+    /**
+     * Creates the temp file and opens the store (or leases a store from the pool), and moves the comments and
+     * authors that are held in memory to the store.
+     */
+    private void openStore() throws IOException {
+        if (store.isOpen()) {
+            return;
+        }
+        MVStore mvStore = store.open();
+        try {
+            MVMap<String, SerializableComment> storeComments = mvStore.openMap("comments",
+                    new MVMap.Builder<String, SerializableComment>()
+                            .keyType(CompactStringDataType.INSTANCE));
+            storeComments.putAll(comments);
+            MVMap<Integer, String> storeAuthors = mvStore.openMap("authors", new MVMap.Builder<Integer, String>()
+                    .keyType(VarIntDataType.INSTANCE)
+                    .valueType(CompactStringDataType.INSTANCE));
+            storeAuthors.putAll(authors);
+            mvComments = storeComments;
+            comments = storeComments;
+            mvAuthors = storeAuthors;
+            authors = storeAuthors;
+        } catch (Error e) {
+            store.close();
+            throw e;
+        } catch (RuntimeException e) {
+            store.close();
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        store.close();
     }
 }
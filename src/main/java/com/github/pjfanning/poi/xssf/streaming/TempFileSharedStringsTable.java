@@ -3,17 +3,15 @@ package com.github.pjfanning.poi.xssf.streaming;
 import org.apache.poi.openxml4j.opc.OPCPackage;
 import org.apache.poi.openxml4j.opc.PackagePart;
 import org.apache.poi.ss.usermodel.RichTextString;
-import org.apache.poi.util.TempFile;
 import org.apache.poi.xssf.usermodel.XSSFRelation;
-import org.h2.mvstore.MVMap;
 import org.h2.mvstore.MVStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.Base64;
 import java.util.Iterator;
 import java.util.List;
 
@@ -37,12 +35,45 @@ import java.util.List;
  * The shared string table contains all the necessary information for displaying the string: the text, formatting
  * properties, and phonetic properties (for East Asian languages).
  * </p>
+ * <p>
+ * The temp file is only created when the table grows beyond
+ * {@link TempFileStoreOptions#getInMemoryEntries()} entries (or when {@link #readFrom(InputStream)} is called).
+ * Smaller tables are held in memory, so workbooks with few strings do not pay for the temp file.
+ * A failure to create the temp file is then thrown as an {@link UncheckedIOException} by the call that needed it.
+ * With {@link TempFileStoreOptions.Builder#inMemoryEntries(int) inMemoryEntries(0)}, the temp file is created by
+ * the constructor, which throws an <code>IOException</code> if that fails.
+ * </p>
  */
 public class TempFileSharedStringsTable extends SharedStringsTableBase {
     private static final Logger log = LoggerFactory.getLogger(TempFileSharedStringsTable.class);
-    private File tempFile;
-    private MVStore mvStore;
-    private MVMap<Integer, String> mvStrings;
+
+    /**
+     * A suggested maximum number of entries for the read cache (see {@link #configureReadCache(int, long)}).
+     */
+    public static final int DEFAULT_READ_CACHE_ENTRIES = 1024;
+
+    /**
+     * A suggested maximum estimated heap size (in bytes) for the read cache (see
+     * {@link #configureReadCache(int, long)}).
+     */
+    public static final long DEFAULT_READ_CACHE_BYTES = 1024L * 1024;
+
+    /**
+     * A suggested maximum number of values for the cache of frequently added values (see
+     * {@link #configureHotValueCache(int)}).
+     */
+    public static final int DEFAULT_HOT_VALUE_CACHE_ENTRIES = 256;
+
+    // the store lifecycle, the entries and the dedup index are kept in collaborators; this class adds the caches
+    private final TempFileStore store;
+    private final TempFileStrings entries;
+    private TempFileStringIndex index;
+    // the default index, until useFingerprintIndex replaces it
+    private MapStringIndex mapIndex;
+    // the caches are opt in, so that the table keeps a flat heap footprint by default
+    private volatile StringCache readCache;
+    private volatile SequentialReadAhead readAhead;
+    private volatile HotValueCache hotValues;
 
     public TempFileSharedStringsTable() throws IOException {
         this(false, false);
@@ -53,34 +84,68 @@ public class TempFileSharedStringsTable extends SharedStringsTableBase {
     }
 
     public TempFileSharedStringsTable(boolean encryptTempFiles, boolean fullFormat) throws IOException {
+        this(encryptTempFiles, fullFormat, false);
+    }
+
+    /**
+     * @param encryptTempFiles whether to encrypt the temp file
+     * @param fullFormat whether to store format information (which is more expensive)
+     * @param compressStrings whether to store the strings in pages compressed with {@link java.util.zip.Deflater}
+     *                        (uses less disk space but more CPU); the map that is used to find duplicate
+     *                        strings is not compressed
+     * @throws IOException if {@link TempFileStoreOptions#getInMemoryEntries()} is 0 and the temp file cannot be
+     * created; otherwise the temp file is created when it is first needed, and a failure to create it is thrown as
+     * an {@link UncheckedIOException} at that point
+     */
+    public TempFileSharedStringsTable(boolean encryptTempFiles, boolean fullFormat,
+                                      boolean compressStrings) throws IOException {
+        this(encryptTempFiles, fullFormat, compressStrings, TempFileStoreOptions.DEFAULT);
+    }
+
+    /**
+     * @param encryptTempFiles whether to encrypt the temp file
+     * @param fullFormat whether to store format information (which is more expensive)
+     * @param compressStrings whether to store the strings in pages compressed with {@link java.util.zip.Deflater}
+     *                        (uses less disk space but more CPU); the map that is used to find duplicate
+     *                        strings is not compressed
+     * @param storeOptions tuning options for the MVStore that is opened on the temp file
+     * @throws IOException if {@link TempFileStoreOptions#getInMemoryEntries()} is 0 and the temp file cannot be
+     * created; otherwise the temp file is created when it is first needed, and a failure to create it is thrown as
+     * an {@link UncheckedIOException} at that point
+     */
+    public TempFileSharedStringsTable(boolean encryptTempFiles, boolean fullFormat,
+                                      boolean compressStrings, TempFileStoreOptions storeOptions) throws IOException {
+        this(encryptTempFiles, fullFormat, compressStrings, storeOptions, null);
+    }
+
+    /**
+     * Creates a table that leases its store from a pool, instead of creating a temp file of its own. The store
+     * is returned to the pool when the table is closed.
+     *
+     * @param fullFormat whether to store format information (which is more expensive)
+     * @param compressStrings whether to store the strings in pages compressed with {@link java.util.zip.Deflater}
+     *                        (uses less disk space but more CPU); the map that is used to find duplicate
+     *                        strings is not compressed
+     * @param storePool the pool to lease the store from (its options and encryption setting are used)
+     * @throws IOException if {@link TempFileStoreOptions#getInMemoryEntries()} is 0 and no store can be opened
+     */
+    public TempFileSharedStringsTable(boolean fullFormat, boolean compressStrings,
+                                      TempFileStorePool storePool) throws IOException {
+        this(storePool.isEncryptTempFiles(), fullFormat, compressStrings, storePool.getStoreOptions(), storePool);
+    }
+
+    private TempFileSharedStringsTable(boolean encryptTempFiles, boolean fullFormat, boolean compressStrings,
+                                       TempFileStoreOptions storeOptions, TempFileStorePool storePool)
+            throws IOException {
         super(fullFormat);
-        try {
-            tempFile = TempFile.createTempFile("poi-shared-strings", ".tmp");
-            MVStore.Builder mvStoreBuilder = new MVStore.Builder();
-            if (encryptTempFiles) {
-                byte[] bytes = new byte[1024];
-                Constants.RANDOM.nextBytes(bytes);
-                mvStoreBuilder.encryptionKey(Base64.getEncoder().encodeToString(bytes).toCharArray());
-            }
-            mvStoreBuilder.fileName(tempFile.getAbsolutePath());
-            mvStore = mvStoreBuilder.open();
-            mvStrings = mvStore.openMap("strings");
-            strings = mvStrings;
-            stmap = mvStore.openMap("stmap");
-        } catch (Error | IOException e) {
-            if (mvStore != null) mvStore.closeImmediately();
-            if (tempFile != null && !tempFile.delete()) {
-                log.debug("failed to delete temp file - probably already deleted");
-            }
-            throw e;
-        } catch (Exception e) {
-            if (mvStore != null) mvStore.closeImmediately();
-            if (tempFile != null && !tempFile.delete()) {
-                log.debug("failed to delete temp file - probably already deleted");
-            }
-            throw new IOException(e);
+        this.store = new TempFileStore("poi-shared-strings", storeOptions, encryptTempFiles, storePool);
+        // the first entries are kept in memory, see openStore
+        this.entries = new TempFileStrings(compressStrings);
+        this.mapIndex = new MapStringIndex();
+        this.index = mapIndex;
+        if (storeOptions.getInMemoryEntries() == 0) {
+            openStore();
         }
-
     }
 
     public TempFileSharedStringsTable(OPCPackage pkg, boolean encryptTempFiles) throws IOException {
@@ -89,7 +154,34 @@ public class TempFileSharedStringsTable extends SharedStringsTableBase {
 
     public TempFileSharedStringsTable(OPCPackage pkg, boolean encryptTempFiles,
                                       boolean fullFormat) throws IOException {
-        this(encryptTempFiles, fullFormat);
+        this(pkg, encryptTempFiles, fullFormat, false);
+    }
+
+    /**
+     * @param pkg the package to read the shared strings from
+     * @param encryptTempFiles whether to encrypt the temp file
+     * @param fullFormat whether to store format information (which is more expensive)
+     * @param compressStrings whether to store the strings in pages compressed with {@link java.util.zip.Deflater}
+     *                        (uses less disk space but more CPU)
+     * @throws IOException if the temp file cannot be created or the shared strings cannot be read
+     */
+    public TempFileSharedStringsTable(OPCPackage pkg, boolean encryptTempFiles,
+                                      boolean fullFormat, boolean compressStrings) throws IOException {
+        this(pkg, encryptTempFiles, fullFormat, compressStrings, TempFileStoreOptions.DEFAULT);
+    }
+
+    /**
+     * @param pkg the package to read the shared strings from
+     * @param encryptTempFiles whether to encrypt the temp file
+     * @param fullFormat whether to store format information (which is more expensive)
+     * @param compressStrings whether to store the strings in pages compressed with {@link java.util.zip.Deflater}
+     *                        (uses less disk space but more CPU)
+     * @param storeOptions tuning options for the MVStore that is opened on the temp file
+     * @throws IOException if the temp file cannot be created or the shared strings cannot be read
+     */
+    public TempFileSharedStringsTable(OPCPackage pkg, boolean encryptTempFiles, boolean fullFormat,
+                                      boolean compressStrings, TempFileStoreOptions storeOptions) throws IOException {
+        this(encryptTempFiles, fullFormat, compressStrings, storeOptions);
         ArrayList<PackagePart> parts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
         if (!parts.isEmpty()) {
             PackagePart sstPart = parts.get(0);
@@ -97,6 +189,26 @@ public class TempFileSharedStringsTable extends SharedStringsTableBase {
         }
     }
 
+    /**
+     * Read this shared strings table from an XML file. With {@link TempFileStoreOptions.Builder#bulkLoad(boolean)}, the
+     * data is committed to the temp file once, at the end.
+     *
+     * @param is The input stream containing the XML document.
+     * @throws IOException if an error occurs while reading.
+     */
+    @Override
+    public void readFrom(InputStream is) throws IOException {
+        openStore();
+        int autoCommitDelay = store.beginBulkLoad();
+        boolean succeeded = false;
+        try {
+            super.readFrom(is);
+            succeeded = true;
+        } finally {
+            store.endBulkLoad(autoCommitDelay, succeeded);
+        }
+    }
+
     @Override
     protected Logger getLogger() {
         return log;
@@ -104,7 +216,292 @@ public class TempFileSharedStringsTable extends SharedStringsTableBase {
 
     @Override
     protected Iterator<Integer> keyIterator() {
-        return mvStrings.keyIterator(null);
+        return entries.indexIterator();
+    }
+
+    @Override
+    protected String getEntry(int idx) {
+        SequentialReadAhead ahead = readAhead;
+        if (ahead != null) {
+            ahead.onRead(idx);
+        }
+        StringCache cache = readCache;
+        if (cache != null) {
+            String cached = cache.get(idx);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        String entry = entries.get(idx);
+        if (cache != null && entry != null) {
+            cache.put(idx, entry);
+        }
+        return entry;
+    }
+
+    @Override
+    protected String getEntryForFreeze(int idx) {
+        // the entries are read once, in order, so the read cache and read ahead would only add work
+        return entries.get(idx);
+    }
+
+    @Override
+    protected void putEntry(int idx, String entry) {
+        if (!store.isOpen() && idx >= store.getStoreOptions().getInMemoryEntries()) {
+            try {
+                openStore();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to create temp file for shared strings", e);
+            }
+        }
+        entries.put(idx, entry);
+    }
+
+    @Override
+    protected int findIndex(String entry) {
+        HotValueCache hot = hotValues;
+        if (hot != null) {
+            int idx = hot.get(entry);
+            if (idx >= 0) {
+                return idx;
+            }
+        }
+        int idx = index.find(entry);
+        if (hot != null && idx >= 0) {
+            hot.record(entry, idx);
+        }
+        return idx;
+    }
+
+    @Override
+    protected void putIndex(String entry, int idx) {
+        HotValueCache hot = hotValues;
+        if (hot != null) {
+            hot.record(entry, idx);
+        }
+        index.put(entry, idx);
+    }
+
+    /**
+     * Builds the dedup index for the entries that <code>readFrom</code> loaded. Rather than adding the entries
+     * to the on-disk index in index order (which is random order for the index B-tree and causes constant page
+     * splits and rewrites), the entries are sorted and written in key order. Entries are sorted in memory in runs
+     * of about 16MB; if there is more than one run, the sorted runs are spilled to the temp file and merged.
+     */
+    @Override
+    protected void buildIndex() {
+        index.build(entries);
+    }
+
+    /**
+     * Replaces the on-disk dedup index (which stores every unique entry a second time, as a B-tree key) with an
+     * index of 64-bit fingerprints. Each unique entry takes 12 bytes (plus free slots) in a heap or direct buffer,
+     * the temp file only holds the entries once, and adding an entry does not update a B-tree. When an entry has
+     * the same fingerprint as a stored entry, the stored entry is read back to check that they are equal.
+     * Entries that are already in the on-disk index are moved to the fingerprint index. This replaces
+     * {@link #configureDeferredIndex(int)}.
+     *
+     * @param offHeap whether to keep the fingerprint index in a direct (off-heap) buffer
+     * @return this table
+     */
+    public TempFileSharedStringsTable useFingerprintIndex(boolean offHeap) {
+        if (mapIndex == null) {
+            return this;
+        }
+        FingerprintStringIndex fingerprints = new FingerprintStringIndex(entries::get, offHeap);
+        mapIndex.forEach(fingerprints::put);
+        mapIndex.clear();
+        mapIndex = null;
+        index = fingerprints;
+        return this;
+    }
+
+    @Override
+    protected long estimateHeapBytes() {
+        // until the store is opened, the entries are held in memory
+        long bytes = store.isOpen() ? store.estimateHeapBytes() : super.estimateHeapBytes();
+        StringCache cache = readCache;
+        if (cache != null) bytes += cache.getEstimatedBytes();
+        HotValueCache hot = hotValues;
+        if (hot != null) bytes += hot.size() * (long) HEAP_ENTRY_OVERHEAD;
+        return bytes + index.estimateHeapBytes() + entries.estimateBufferedBytes();
+    }
+
+    @Override
+    protected long estimateOffHeapBytes() {
+        return store.estimateOffHeapBytes() + index.estimateOffHeapBytes();
+    }
+
+    @Override
+    protected long estimateTempFileBytes() {
+        return store.estimateTempFileBytes();
+    }
+
+    /**
+     * Defers writing new entries to the on-disk dedup index. New entries are kept in an on-heap map (which is
+     * checked before the on-disk index) and are written to the on-disk index in key order, when the map has
+     * <code>maxPendingEntries</code> entries. This turns the random inserts of a bulk write into batches of
+     * sorted inserts, which rewrite far fewer B-tree pages. Changing the configuration writes the pending entries.
+     * This has no effect once {@link #useFingerprintIndex(boolean)} has been called.
+     *
+     * @param maxPendingEntries the maximum number of entries to hold on the heap, 0 disables deferral (the default)
+     * @return this table
+     */
+    public TempFileSharedStringsTable configureDeferredIndex(int maxPendingEntries) {
+        if (maxPendingEntries < 0) {
+            throw new IllegalArgumentException("maxPendingEntries must not be negative: " + maxPendingEntries);
+        }
+        if (mapIndex != null) {
+            mapIndex.configureDeferral(maxPendingEntries);
+        }
+        return this;
+    }
+
+    /**
+     * Configures the cache of frequently added values that is checked before the on-disk dedup index, so that
+     * adding the same few values over and over (eg the values of a low cardinality column) does not look each one
+     * up in the temp file. A value is cached the second time it is added, so unique values do not flush the
+     * cache, and values longer than 256 chars are not cached. The cache is disabled by default;
+     * {@link #DEFAULT_HOT_VALUE_CACHE_ENTRIES} is a reasonable size. Changing the configuration clears the cache and
+     * its counters.
+     *
+     * @param maxEntries the maximum number of values to cache, 0 disables the cache
+     * @return this table
+     */
+    public TempFileSharedStringsTable configureHotValueCache(int maxEntries) {
+        hotValues = maxEntries == 0 ? null : new HotValueCache(maxEntries);
+        return this;
+    }
+
+    /**
+     * @return the number of dedup lookups that were served from the cache of frequently added values
+     */
+    public long getHotValueCacheHits() {
+        HotValueCache hot = hotValues;
+        return hot == null ? 0 : hot.getHits();
+    }
+
+    /**
+     * @return the number of dedup lookups that were not served from the cache of frequently added values
+     */
+    public long getHotValueCacheMisses() {
+        HotValueCache hot = hotValues;
+        return hot == null ? 0 : hot.getMisses();
+    }
+
+    /**
+     * Configures the LRU cache of recently read entries that is checked before the temp file. Entries are
+     * added to the cache when they are looked up (eg using <code>getString</code> or <code>getItemAt</code>).
+     * The cache is disabled by default, since it holds entries on the heap and each lookup takes its lock;
+     * {@link #DEFAULT_READ_CACHE_ENTRIES} and {@link #DEFAULT_READ_CACHE_BYTES} are reasonable sizes. Changing the
+     * configuration clears the cache and its counters. Disabling the cache also disables
+     * {@link #configureReadAhead(int) read ahead}, which loads entries into it.
+     *
+     * @param maxEntries the maximum number of entries to cache, 0 disables the cache
+     * @param maxBytes the maximum estimated heap size (in bytes) of the cached entries
+     * @return this table
+     */
+    public TempFileSharedStringsTable configureReadCache(int maxEntries, long maxBytes) {
+        if (maxEntries == 0 && readAhead != null) {
+            configureReadAhead(0);
+        }
+        readCache = maxEntries == 0 ? null : new StringCache(maxEntries, maxBytes);
+        return this;
+    }
+
+    /**
+     * Enables loading entries into the read cache ahead of time. When the lookups form an ascending run (as they
+     * do when the rows of a sheet are processed in order), the next block of entries is loaded on a background
+     * thread, reading the temp file sequentially rather than an entry at a time. A block is never larger than
+     * half of the read cache. If the read cache is disabled, this enables it with
+     * {@link #DEFAULT_READ_CACHE_ENTRIES} and {@link #DEFAULT_READ_CACHE_BYTES}; call
+     * {@link #configureReadCache(int, long)} first to use other sizes.
+     *
+     * @param blockSize the number of entries to load ahead, 0 disables read ahead (the default)
+     * @return this table
+     * @see #warm(int, int)
+     */
+    public TempFileSharedStringsTable configureReadAhead(int blockSize) {
+        if (blockSize != 0 && readCache == null) {
+            configureReadCache(DEFAULT_READ_CACHE_ENTRIES, DEFAULT_READ_CACHE_BYTES);
+        }
+        SequentialReadAhead previous = readAhead;
+        readAhead = blockSize == 0 ? null : new SequentialReadAhead(blockSize, (from, to) -> {
+            StringCache cache = readCache;
+            if (cache != null) {
+                entries.loadRange(cache, from, Math.min(to, from + cache.getMaxEntries() / 2));
+            }
+        });
+        if (previous != null) {
+            previous.close();
+        }
+        return this;
+    }
+
+    /**
+     * Loads a range of entries into the read cache, in the calling thread. Use this when you know which entries
+     * are about to be looked up. At most as many entries as the read cache holds are loaded.
+     * This has no effect while the read cache is disabled, or once the table is frozen.
+     *
+     * @param fromIdx the first index to load
+     * @param toIdx the index after the last one to load
+     */
+    public void warm(int fromIdx, int toIdx) {
+        StringCache cache = readCache;
+        if (cache != null && fromIdx < toIdx && !isFrozen()) {
+            int from = Math.max(0, fromIdx);
+            entries.loadRange(cache, from, (int) Math.min(toIdx, (long) from + cache.getMaxEntries()));
+        }
+    }
+
+    /**
+     * @return the number of lookups that were served from the read cache
+     */
+    public long getReadCacheHits() {
+        StringCache cache = readCache;
+        return cache == null ? 0 : cache.getHits();
+    }
+
+    /**
+     * @return the number of lookups that were not served from the read cache
+     */
+    public long getReadCacheMisses() {
+        StringCache cache = readCache;
+        return cache == null ? 0 : cache.getMisses();
+    }
+
+    /**
+     * Creates the temp file and opens the store (or leases a store from the pool), and moves the entries and the
+     * index that are held in memory to the store.
+     */
+    private void openStore() throws IOException {
+        if (store.isOpen()) {
+            return;
+        }
+        try {
+            MVStore mvStore = store.open();
+            entries.moveTo(mvStore);
+            index.moveTo(mvStore);
+        } catch (Error e) {
+            store.close();
+            throw e;
+        } catch (RuntimeException e) {
+            store.close();
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * @return whether the temp file has been created and the store opened (see
+     * {@link TempFileStoreOptions.Builder#inMemoryEntries(int)})
+     */
+    public boolean isStoreOpen() {
+        return store.isOpen();
+    }
+
+    // visible for testing
+    TempFileStringIndex getIndex() {
+        return index;
     }
 
     /**
@@ -121,9 +518,14 @@ public class TempFileSharedStringsTable extends SharedStringsTableBase {
 
     @Override
     public void close() throws IOException {
-        if(mvStore != null) mvStore.closeImmediately();
-        if(tempFile != null && !tempFile.delete()) {
-            log.debug("failed to delete temp file - probably already deleted");
-        }
+        SequentialReadAhead ahead = readAhead;
+        if(ahead != null) ahead.close();
+        entries.close();
+        index.close();
+        store.close();
+        StringCache cache = readCache;
+        if(cache != null) cache.clear();
+        HotValueCache hot = hotValues;
+        if(hot != null) hot.clear();
     }
 }
@@ -0,0 +1,144 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.h2.mvstore.MVStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The MVStore of a temp file table. The store is opened on a new temp file, or leased from a
+ * {@link TempFileStorePool}, when {@link #open()} is first called. {@link #close()} closes the store and deletes
+ * the temp file, or returns the store to the pool.
+ * <p>
+ * This class is not thread safe. Opening and closing the store needs to be serialized by the caller.
+ * </p>
+ */
+final class TempFileStore {
+    private static final Logger log = LoggerFactory.getLogger(TempFileStore.class);
+
+    private final String prefix;
+    private final TempFileStoreOptions storeOptions;
+    private final boolean encryptTempFiles;
+    private final TempFileStorePool storePool;
+    private TempFileStorePool.PooledStore pooledStore;
+    private File tempFile;
+    private MVStore mvStore;
+
+    /**
+     * @param prefix the prefix of the temp file name
+     * @param storeOptions tuning options for the MVStore that is opened on the temp file
+     * @param encryptTempFiles whether to encrypt the temp file
+     * @param storePool the pool to lease the store from, or <code>null</code> to create a temp file
+     */
+    TempFileStore(String prefix, TempFileStoreOptions storeOptions, boolean encryptTempFiles,
+                  TempFileStorePool storePool) {
+        this.prefix = prefix;
+        this.storeOptions = storeOptions;
+        this.encryptTempFiles = encryptTempFiles;
+        this.storePool = storePool;
+    }
+
+    /**
+     * Creates the temp file and opens the store (or leases a store from the pool), unless that was done already.
+     *
+     * @return the store
+     * @throws IOException if the temp file cannot be created or the store cannot be opened
+     */
+    MVStore open() throws IOException {
+        if (mvStore != null) {
+            return mvStore;
+        }
+        try {
+            if (storePool == null) {
+                tempFile = storeOptions.createTempFile(prefix);
+                mvStore = storeOptions.open(tempFile, encryptTempFiles);
+            } else {
+                pooledStore = storePool.acquire();
+                mvStore = pooledStore.getStore();
+            }
+            return mvStore;
+        } catch (Error | IOException e) {
+            close();
+            throw e;
+        } catch (Exception e) {
+            close();
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * @return whether the store is open
+     */
+    boolean isOpen() {
+        return mvStore != null;
+    }
+
+    /**
+     * @return the store, or <code>null</code> if it is not open
+     */
+    MVStore getStore() {
+        return mvStore;
+    }
+
+    TempFileStoreOptions getStoreOptions() {
+        return storeOptions;
+    }
+
+    /**
+     * @return the auto commit delay to pass to {@link #endBulkLoad(int, boolean)}
+     * @see TempFileStoreOptions#beginBulkLoad(MVStore)
+     */
+    int beginBulkLoad() {
+        return storeOptions.beginBulkLoad(mvStore);
+    }
+
+    /**
+     * @param autoCommitDelay the value that {@link #beginBulkLoad()} returned
+     * @param succeeded whether the data was loaded
+     * @see TempFileStoreOptions#endBulkLoad(MVStore, int, boolean)
+     */
+    void endBulkLoad(int autoCommitDelay, boolean succeeded) {
+        storeOptions.endBulkLoad(mvStore, autoCommitDelay, succeeded);
+    }
+
+    /**
+     * @return the number of bytes used by the page cache of the store, or 0 if the store is not open
+     */
+    long estimateHeapBytes() {
+        return TempFileStoreOptions.cacheBytes(mvStore);
+    }
+
+    /**
+     * @return the size of the store, if it is kept in memory rather than in a temp file
+     */
+    long estimateOffHeapBytes() {
+        return storeOptions.getFileStoreType().isInMemory() ? TempFileStoreOptions.fileBytes(mvStore) : 0;
+    }
+
+    /**
+     * @return the size of the temp file, or 0 if the store is kept in memory or is not open
+     */
+    long estimateTempFileBytes() {
+        return storeOptions.getFileStoreType().isInMemory() ? 0 : TempFileStoreOptions.fileBytes(mvStore);
+    }
+
+    /**
+     * Closes the store and deletes the temp file, or returns the store to the pool. The store can be opened again
+     * afterwards.
+     */
+    void close() {
+        if (pooledStore != null) {
+            storePool.release(pooledStore);
+            pooledStore = null;
+        } else if (mvStore != null) {
+            mvStore.closeImmediately();
+        }
+        if (tempFile != null && !storeOptions.deleteTempFile(tempFile)) {
+            log.debug("failed to delete temp file - probably already deleted");
+        }
+        mvStore = null;
+        tempFile = null;
+    }
+}
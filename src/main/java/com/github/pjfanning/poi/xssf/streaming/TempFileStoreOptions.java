@@ -0,0 +1,478 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.apache.poi.util.TempFile;
+import org.h2.mvstore.FileStore;
+import org.h2.mvstore.MVStore;
+import org.h2.store.fs.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Base64;
+
+/**
+ * Tuning options for the H2 MVStore that backs {@link TempFileSharedStringsTable} and {@link TempFileCommentsTable}.
+ * Settings that are not set keep the H2 defaults. Instances are immutable and can be shared between tables.
+ * <p>
+ * By default, the store is not opened (and no temp file is created) until a table holds more than
+ * {@link Builder#inMemoryEntries(int)} entries, or reads a part with <code>readFrom</code>. A failure to create the
+ * temp file is then thrown as an {@link java.io.UncheckedIOException} by the call that needed the store. With
+ * <code>inMemoryEntries(0)</code>, the store is opened by the table constructors, which throw an
+ * <code>IOException</code> if it fails (the behavior of earlier versions).
+ * </p>
+ * <pre>
+ * TempFileStoreOptions options = TempFileStoreOptions.builder()
+ *         .cacheSize(4)
+ *         .compress()
+ *         .fileStoreType(TempFileStoreOptions.FileStoreType.NIO_MAPPED)
+ *         .build();
+ * </pre>
+ */
+public final class TempFileStoreOptions {
+
+    /**
+     * The options that are used when none are given (the H2 defaults).
+     */
+    public static final TempFileStoreOptions DEFAULT = builder().build();
+
+    /**
+     * The default number of entries that a table keeps in memory before it opens the store.
+     */
+    public static final int DEFAULT_IN_MEMORY_ENTRIES = 64;
+
+    /**
+     * The H2 file system that is used to access the temp file.
+     */
+    public enum FileStoreType {
+        /**
+         * The H2 default (<code>RandomAccessFile</code> based).
+         */
+        DEFAULT("", false),
+        /**
+         * <code>FileChannel</code> based (<code>nio:</code>).
+         */
+        NIO("nio:", false),
+        /**
+         * Memory mapped (<code>nioMapped:</code>). Avoids copying pages through the heap, but the mapped pages
+         * count against the virtual memory of the process.
+         */
+        NIO_MAPPED("nioMapped:", false),
+        /**
+         * In-memory file system that keeps the file in direct (off-heap) buffers, LZF compressed
+         * (<code>nioMemLZF:</code>). No temp file is created, so this works where the temp dir is read-only or
+         * too small, but the data counts against <code>-XX:MaxDirectMemorySize</code>. The data is released when
+         * the table is closed.
+         *
+         * @since v2.9.3
+         */
+        NIO_MEM_LZF("nioMemLZF:", true);
+
+        private final String prefix;
+        private final boolean inMemory;
+
+        FileStoreType(String prefix, boolean inMemory) {
+            this.prefix = prefix;
+            this.inMemory = inMemory;
+        }
+
+        String getPrefix() {
+            return prefix;
+        }
+
+        /**
+         * @return whether the store is kept in memory, rather than in a temp file
+         */
+        public boolean isInMemory() {
+            return inMemory;
+        }
+    }
+
+    /**
+     * Compression of the pages that MVStore writes to the temp file.
+     */
+    public enum Compression {
+        /**
+         * Pages are not compressed (the H2 default).
+         */
+        NONE,
+        /**
+         * Pages are compressed with LZF (fast).
+         */
+        FAST,
+        /**
+         * Pages are compressed with Deflate (smaller files, more CPU).
+         */
+        HIGH
+    }
+
+    /**
+     * Builder for {@link TempFileStoreOptions}.
+     */
+    public static final class Builder {
+        private int cacheSize = -1;
+        private int pageSplitSize = -1;
+        private Compression compression = Compression.NONE;
+        private int autoCommitBufferSize = -1;
+        private int autoCommitDelay = -1;
+        private FileStoreType fileStoreType = FileStoreType.DEFAULT;
+        private boolean bulkLoad;
+        private int inMemoryEntries = DEFAULT_IN_MEMORY_ENTRIES;
+
+        private Builder() {}
+
+        /**
+         * @param cacheSize the size of the MVStore page cache in MB (H2 default is 16)
+         * @return this builder
+         * @throws IllegalArgumentException if <code>cacheSize</code> is negative
+         */
+        public Builder cacheSize(int cacheSize) {
+            if (cacheSize < 0) {
+                throw new IllegalArgumentException("cacheSize must not be negative: " + cacheSize);
+            }
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        /**
+         * @param pageSplitSize the size (in bytes) at which MVStore splits pages (H2 default is 16KB when the
+         *                      cache is enabled)
+         * @return this builder
+         * @throws IllegalArgumentException if <code>pageSplitSize</code> is not positive
+         */
+        public Builder pageSplitSize(int pageSplitSize) {
+            if (pageSplitSize <= 0) {
+                throw new IllegalArgumentException("pageSplitSize must be positive: " + pageSplitSize);
+            }
+            this.pageSplitSize = pageSplitSize;
+            return this;
+        }
+
+        /**
+         * Compress the pages with LZF (fast).
+         *
+         * @return this builder
+         */
+        public Builder compress() {
+            this.compression = Compression.FAST;
+            return this;
+        }
+
+        /**
+         * Compress the pages with Deflate (smaller files, more CPU).
+         *
+         * @return this builder
+         */
+        public Builder compressHigh() {
+            this.compression = Compression.HIGH;
+            return this;
+        }
+
+        /**
+         * @param compression how to compress the pages
+         * @return this builder
+         */
+        public Builder compression(Compression compression) {
+            if (compression == null) {
+                throw new IllegalArgumentException("compression must not be null");
+            }
+            this.compression = compression;
+            return this;
+        }
+
+        /**
+         * @param autoCommitBufferSize the size (in KB) of the unsaved changes that triggers a background write
+         *                             (H2 default is 1024); 0 disables auto commit
+         * @return this builder
+         * @throws IllegalArgumentException if <code>autoCommitBufferSize</code> is negative
+         */
+        public Builder autoCommitBufferSize(int autoCommitBufferSize) {
+            if (autoCommitBufferSize < 0) {
+                throw new IllegalArgumentException("autoCommitBufferSize must not be negative: " + autoCommitBufferSize);
+            }
+            this.autoCommitBufferSize = autoCommitBufferSize;
+            return this;
+        }
+
+        /**
+         * @param autoCommitDelay the maximum delay (in milliseconds) before changes are written in the background
+         *                        (H2 default is 1000); 0 disables auto commit
+         * @return this builder
+         * @throws IllegalArgumentException if <code>autoCommitDelay</code> is negative
+         */
+        public Builder autoCommitDelay(int autoCommitDelay) {
+            if (autoCommitDelay < 0) {
+                throw new IllegalArgumentException("autoCommitDelay must not be negative: " + autoCommitDelay);
+            }
+            this.autoCommitDelay = autoCommitDelay;
+            return this;
+        }
+
+        /**
+         * @param fileStoreType the H2 file system that is used to access the temp file
+         * @return this builder
+         */
+        public Builder fileStoreType(FileStoreType fileStoreType) {
+            if (fileStoreType == null) {
+                throw new IllegalArgumentException("fileStoreType must not be null");
+            }
+            this.fileStoreType = fileStoreType;
+            return this;
+        }
+
+        /**
+         * Enables bulk loading. While <code>readFrom</code> fills a table, the background writer is stopped and
+         * the data is committed once at the end. MVStore still writes pages to the temp file when its unsaved
+         * changes exceed the auto commit buffer, so the heap use stays bounded. Old chunk versions are not
+         * retained, as the temp file is never reopened. Default is false.
+         *
+         * @param bulkLoad whether to bulk load the data that <code>readFrom</code> reads
+         * @return this builder
+         */
+        public Builder bulkLoad(boolean bulkLoad) {
+            this.bulkLoad = bulkLoad;
+            return this;
+        }
+
+        /**
+         * Tables keep their first entries in memory, and only create the temp file and open the store when they
+         * need to hold more entries (or when they read a part with <code>readFrom</code>). Small tables (eg the
+         * shared strings of a small report) then never touch the file system, and with encryption, no key is
+         * generated. Default is {@link #DEFAULT_IN_MEMORY_ENTRIES}.
+         *
+         * @param inMemoryEntries the number of entries to keep in memory before the store is opened; with 0, the
+         *                        store is opened by the table constructor, so that a failure to create the temp
+         *                        file is thrown as an <code>IOException</code> there
+         * @return this builder
+         * @throws IllegalArgumentException if <code>inMemoryEntries</code> is negative
+         */
+        public Builder inMemoryEntries(int inMemoryEntries) {
+            if (inMemoryEntries < 0) {
+                throw new IllegalArgumentException("inMemoryEntries must not be negative: " + inMemoryEntries);
+            }
+            this.inMemoryEntries = inMemoryEntries;
+            return this;
+        }
+
+        /**
+         * @return the options
+         */
+        public TempFileStoreOptions build() {
+            return new TempFileStoreOptions(this);
+        }
+    }
+
+    /**
+     * @return a new builder (with the H2 defaults)
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private final int cacheSize;
+    private final int pageSplitSize;
+    private final Compression compression;
+    private final int autoCommitBufferSize;
+    private final int autoCommitDelay;
+    private final FileStoreType fileStoreType;
+    private final boolean bulkLoad;
+    private final int inMemoryEntries;
+
+    private TempFileStoreOptions(Builder builder) {
+        this.cacheSize = builder.cacheSize;
+        this.pageSplitSize = builder.pageSplitSize;
+        this.compression = builder.compression;
+        this.autoCommitBufferSize = builder.autoCommitBufferSize;
+        this.autoCommitDelay = builder.autoCommitDelay;
+        this.fileStoreType = builder.fileStoreType;
+        this.bulkLoad = builder.bulkLoad;
+        this.inMemoryEntries = builder.inMemoryEntries;
+    }
+
+    /**
+     * @return the page cache size in MB or -1 for the H2 default
+     */
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * @return the page split size in bytes or -1 for the H2 default
+     */
+    public int getPageSplitSize() {
+        return pageSplitSize;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * @return the auto commit buffer size in KB or -1 for the H2 default
+     */
+    public int getAutoCommitBufferSize() {
+        return autoCommitBufferSize;
+    }
+
+    /**
+     * @return the auto commit delay in milliseconds or -1 for the H2 default
+     */
+    public int getAutoCommitDelay() {
+        return autoCommitDelay;
+    }
+
+    public FileStoreType getFileStoreType() {
+        return fileStoreType;
+    }
+
+    public boolean isBulkLoad() {
+        return bulkLoad;
+    }
+
+    /**
+     * @return the number of entries that a table keeps in memory before it opens the store
+     */
+    public int getInMemoryEntries() {
+        return inMemoryEntries;
+    }
+
+    /**
+     * Creates the temp file for a store. With an in-memory {@link FileStoreType}, nothing is created on disk and
+     * the returned file only provides a unique name for the in-memory file.
+     *
+     * @param prefix the prefix of the file name
+     * @return the temp file
+     * @throws IOException if the temp file cannot be created
+     */
+    File createTempFile(String prefix) throws IOException {
+        if (fileStoreType.isInMemory()) {
+            return new File(prefix + "-" + Long.toHexString(Constants.RANDOM.nextLong() & Long.MAX_VALUE) + ".tmp");
+        }
+        return TempFile.createTempFile(prefix, ".tmp");
+    }
+
+    /**
+     * Deletes a temp file that was created with {@link #createTempFile(String)}. The store must be closed.
+     *
+     * @param tempFile the temp file
+     * @return whether the file was deleted
+     */
+    boolean deleteTempFile(File tempFile) {
+        if (fileStoreType.isInMemory()) {
+            // in-memory files live until they are deleted, even after the store is closed
+            FileUtils.delete(fileStoreType.getPrefix() + tempFile.getAbsolutePath());
+            return true;
+        }
+        return tempFile.delete();
+    }
+
+    /**
+     * Opens an MVStore on the temp file with these options.
+     *
+     * @param tempFile the temp file
+     * @param encryptTempFiles whether to encrypt the temp file (with a random key)
+     * @return the store
+     */
+    MVStore open(File tempFile, boolean encryptTempFiles) {
+        MVStore.Builder mvStoreBuilder = new MVStore.Builder();
+        if (encryptTempFiles) {
+            byte[] bytes = new byte[1024];
+            Constants.RANDOM.nextBytes(bytes);
+            mvStoreBuilder.encryptionKey(Base64.getEncoder().encodeToString(bytes).toCharArray());
+        }
+        mvStoreBuilder.fileName(fileStoreType.getPrefix() + tempFile.getAbsolutePath());
+        if (cacheSize >= 0) {
+            mvStoreBuilder.cacheSize(cacheSize);
+        }
+        if (pageSplitSize > 0) {
+            mvStoreBuilder.pageSplitSize(pageSplitSize);
+        }
+        if (compression == Compression.FAST) {
+            mvStoreBuilder.compress();
+        } else if (compression == Compression.HIGH) {
+            mvStoreBuilder.compressHigh();
+        }
+        if (autoCommitBufferSize == 0 || autoCommitDelay == 0) {
+            mvStoreBuilder.autoCommitDisabled();
+        } else if (autoCommitBufferSize > 0) {
+            mvStoreBuilder.autoCommitBufferSize(autoCommitBufferSize);
+        }
+        MVStore mvStore = mvStoreBuilder.open();
+        if (autoCommitDelay > 0) {
+            mvStore.setAutoCommitDelay(autoCommitDelay);
+        }
+        if (bulkLoad) {
+            // the temp file is private and never reopened, so there is no need to keep old chunks around
+            mvStore.setRetentionTime(0);
+        }
+        return mvStore;
+    }
+
+    /**
+     * Stops the background writer of the store, if bulk loading is enabled.
+     *
+     * @param mvStore the store that is about to be loaded
+     * @return the auto commit delay to pass to {@link #endBulkLoad(MVStore, int, boolean)}
+     */
+    int beginBulkLoad(MVStore mvStore) {
+        int delay = mvStore.getAutoCommitDelay();
+        if (bulkLoad) {
+            mvStore.setAutoCommitDelay(0);
+        }
+        return delay;
+    }
+
+    /**
+     * Commits the loaded data (if the load succeeded) and restarts the background writer, if bulk loading is
+     * enabled.
+     *
+     * @param mvStore the store that was loaded
+     * @param autoCommitDelay the value that {@link #beginBulkLoad(MVStore)} returned
+     * @param succeeded whether the load succeeded
+     */
+    void endBulkLoad(MVStore mvStore, int autoCommitDelay, boolean succeeded) {
+        if (bulkLoad) {
+            try {
+                if (succeeded) {
+                    mvStore.commit();
+                }
+            } finally {
+                mvStore.setAutoCommitDelay(autoCommitDelay);
+            }
+        }
+    }
+
+    /**
+     * @param mvStore the store
+     * @return the number of bytes in the file of the store (which is in memory for the in-memory
+     * {@link FileStoreType}s), or 0 if the store is closed
+     */
+    static long fileBytes(MVStore mvStore) {
+        if (mvStore == null || mvStore.isClosed()) {
+            return 0;
+        }
+        FileStore<?> fileStore = mvStore.getFileStore();
+        return fileStore == null ? 0 : fileStore.size();
+    }
+
+    /**
+     * @param mvStore the store
+     * @return the number of bytes used by the page cache of the store, or 0 if the store is closed
+     */
+    static long cacheBytes(MVStore mvStore) {
+        if (mvStore == null || mvStore.isClosed()) {
+            return 0;
+        }
+        return (long) mvStore.getCacheSizeUsed() << 20;
+    }
+
+    @Override
+    public String toString() {
+        return "TempFileStoreOptions{cacheSize=" + cacheSize +
+                ", pageSplitSize=" + pageSplitSize +
+                ", compression=" + compression +
+                ", autoCommitBufferSize=" + autoCommitBufferSize +
+                ", autoCommitDelay=" + autoCommitDelay +
+                ", fileStoreType=" + fileStoreType +
+                ", bulkLoad=" + bulkLoad +
+                ", inMemoryEntries=" + inMemoryEntries + "}";
+    }
+}
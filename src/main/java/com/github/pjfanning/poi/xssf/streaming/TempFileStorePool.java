@@ -0,0 +1,293 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.h2.mvstore.MVStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * A pool of open MVStores that {@link TempFileSharedStringsTable} and {@link TempFileCommentsTable} can lease
+ * instead of creating a temp file and opening an MVStore of their own. When a table is closed, the maps it
+ * created are removed and the store is returned to the pool, so the next table does not pay for the file
+ * creation, the encryption key generation and the MVStore setup. This helps servers that create and close
+ * many workbooks.
+ * <p>
+ * All the stores of a pool use the same {@link TempFileStoreOptions} and encryption setting. A store is only
+ * used by one table at a time. Old chunks are not retained in pooled stores, so the space of the removed maps
+ * is reused by the next table. At most <code>maxIdleStores</code> stores are kept; stores that are released
+ * when the pool is full (or closed) are closed and their temp files deleted.
+ * </p>
+ * <p>
+ * When the temp files are encrypted, the key is generated when a store is opened and is kept for the life of
+ * the store, so all the tables that lease the same store have their data encrypted with the same key. The
+ * temp file of a store is not truncated when the maps of a table are removed, so it stays as big as the
+ * biggest table that used it. Stores whose temp file has grown above <code>maxIdleFileBytes</code> are closed
+ * and deleted when they are released, instead of being returned to the pool.
+ * </p>
+ * <p>
+ * This class is thread safe. Close the pool when it is no longer needed, to delete the temp files of the idle
+ * stores.
+ * </p>
+ */
+public final class TempFileStorePool implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(TempFileStorePool.class);
+
+    /**
+     * The default maximum number of idle stores that a pool keeps.
+     */
+    public static final int DEFAULT_MAX_IDLE_STORES = 8;
+
+    /**
+     * The default maximum size (in bytes) of the temp file of a store that is returned to the pool (64MB).
+     */
+    public static final long DEFAULT_MAX_IDLE_FILE_BYTES = 64L << 20;
+
+    private final TempFileStoreOptions storeOptions;
+    private final boolean encryptTempFiles;
+    private final int maxIdleStores;
+    private final long maxIdleFileBytes;
+    private final ArrayDeque<PooledStore> idleStores = new ArrayDeque<>();
+    private boolean closed;
+    private long createdCount;
+    private long reusedCount;
+
+    /**
+     * @param storeOptions tuning options for the MVStores that are opened on the temp files
+     * @param encryptTempFiles whether to encrypt the temp files
+     */
+    public TempFileStorePool(TempFileStoreOptions storeOptions, boolean encryptTempFiles) {
+        this(storeOptions, encryptTempFiles, DEFAULT_MAX_IDLE_STORES);
+    }
+
+    /**
+     * @param storeOptions tuning options for the MVStores that are opened on the temp files
+     * @param encryptTempFiles whether to encrypt the temp files
+     * @param maxIdleStores the maximum number of idle stores to keep
+     * @throws IllegalArgumentException if storeOptions is null or maxIdleStores is negative
+     */
+    public TempFileStorePool(TempFileStoreOptions storeOptions, boolean encryptTempFiles, int maxIdleStores) {
+        this(storeOptions, encryptTempFiles, maxIdleStores, DEFAULT_MAX_IDLE_FILE_BYTES);
+    }
+
+    /**
+     * @param storeOptions tuning options for the MVStores that are opened on the temp files
+     * @param encryptTempFiles whether to encrypt the temp files
+     * @param maxIdleStores the maximum number of idle stores to keep
+     * @param maxIdleFileBytes stores whose temp file is bigger than this (in bytes) are discarded when they are
+     *                         released, instead of being kept in the pool
+     * @throws IllegalArgumentException if storeOptions is null or maxIdleStores or maxIdleFileBytes is negative
+     */
+    public TempFileStorePool(TempFileStoreOptions storeOptions, boolean encryptTempFiles, int maxIdleStores,
+                             long maxIdleFileBytes) {
+        if (storeOptions == null) {
+            throw new IllegalArgumentException("storeOptions must not be null");
+        }
+        if (maxIdleStores < 0) {
+            throw new IllegalArgumentException("maxIdleStores must not be negative");
+        }
+        if (maxIdleFileBytes < 0) {
+            throw new IllegalArgumentException("maxIdleFileBytes must not be negative");
+        }
+        this.storeOptions = storeOptions;
+        this.encryptTempFiles = encryptTempFiles;
+        this.maxIdleStores = maxIdleStores;
+        this.maxIdleFileBytes = maxIdleFileBytes;
+    }
+
+    /**
+     * @return the options that the stores of this pool are opened with
+     */
+    public TempFileStoreOptions getStoreOptions() {
+        return storeOptions;
+    }
+
+    /**
+     * @return whether the temp files of this pool are encrypted
+     */
+    public boolean isEncryptTempFiles() {
+        return encryptTempFiles;
+    }
+
+    /**
+     * @return the maximum number of idle stores that this pool keeps
+     */
+    public int getMaxIdleStores() {
+        return maxIdleStores;
+    }
+
+    /**
+     * @return the maximum size (in bytes) of the temp file of a store that is returned to the pool
+     */
+    public long getMaxIdleFileBytes() {
+        return maxIdleFileBytes;
+    }
+
+    /**
+     * Opens stores until the pool holds <code>count</code> idle stores (or <code>maxIdleStores</code>, if that
+     * is smaller), so that the first tables do not wait for a store to be opened.
+     *
+     * @param count the number of idle stores to have
+     * @throws IOException if a temp file cannot be created
+     * @throws IllegalStateException if the pool is closed
+     */
+    public void prefill(int count) throws IOException {
+        int target = Math.min(count, maxIdleStores);
+        while (true) {
+            synchronized (this) {
+                if (closed) {
+                    throw new IllegalStateException("TempFileStorePool is closed");
+                }
+                if (idleStores.size() >= target) {
+                    return;
+                }
+            }
+            PooledStore store = openStore();
+            synchronized (this) {
+                if (!closed && idleStores.size() < target) {
+                    idleStores.push(store);
+                    store = null;
+                }
+            }
+            if (store != null) {
+                discard(store);
+            }
+        }
+    }
+
+    /**
+     * @return the number of idle stores in this pool
+     */
+    public synchronized int getIdleCount() {
+        return idleStores.size();
+    }
+
+    /**
+     * @return the number of stores that this pool has opened
+     */
+    public synchronized long getCreatedCount() {
+        return createdCount;
+    }
+
+    /**
+     * @return the number of times that an idle store was handed out again
+     */
+    public synchronized long getReusedCount() {
+        return reusedCount;
+    }
+
+    /**
+     * Closes the idle stores and deletes their temp files. Stores that are leased when the pool is closed are
+     * closed and deleted when they are released.
+     */
+    @Override
+    public void close() {
+        ArrayList<PooledStore> stores;
+        synchronized (this) {
+            closed = true;
+            stores = new ArrayList<>(idleStores);
+            idleStores.clear();
+        }
+        for (PooledStore store : stores) {
+            discard(store);
+        }
+    }
+
+    /**
+     * @return an idle store, or a newly opened one if there are no idle stores
+     * @throws IOException if a temp file cannot be created
+     * @throws IllegalStateException if the pool is closed
+     */
+    PooledStore acquire() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("TempFileStorePool is closed");
+            }
+            PooledStore store = idleStores.poll();
+            if (store != null) {
+                reusedCount++;
+                return store;
+            }
+        }
+        return openStore();
+    }
+
+    /**
+     * Removes the maps of the store and returns it to the pool. The store is discarded instead if the pool is
+     * full or closed, or if its temp file is bigger than <code>maxIdleFileBytes</code>. The store must not be
+     * used after this.
+     *
+     * @param store a store that was returned by {@link #acquire()}
+     */
+    void release(PooledStore store) {
+        boolean reusable = false;
+        MVStore mvStore = store.getStore();
+        if (!mvStore.isClosed()) {
+            try {
+                for (String mapName : new ArrayList<>(mvStore.getMapNames())) {
+                    mvStore.removeMap(mapName);
+                }
+                mvStore.commit();
+                // the file keeps the size of the biggest table that used it, so big stores are not kept
+                reusable = TempFileStoreOptions.fileBytes(mvStore) <= maxIdleFileBytes;
+            } catch (RuntimeException e) {
+                log.debug("failed to clear pooled store", e);
+            }
+        }
+        if (reusable) {
+            synchronized (this) {
+                if (!closed && idleStores.size() < maxIdleStores) {
+                    idleStores.push(store);
+                    return;
+                }
+            }
+        }
+        discard(store);
+    }
+
+    private PooledStore openStore() throws IOException {
+        File tempFile = storeOptions.createTempFile("poi-pooled-store");
+        try {
+            MVStore mvStore = storeOptions.open(tempFile, encryptTempFiles);
+            // the temp file is private and never reopened, so the space of removed maps can be reused at once
+            mvStore.setRetentionTime(0);
+            synchronized (this) {
+                createdCount++;
+            }
+            return new PooledStore(tempFile, mvStore);
+        } catch (RuntimeException | Error e) {
+            if (!storeOptions.deleteTempFile(tempFile)) {
+                log.debug("failed to delete temp file - probably already deleted");
+            }
+            throw e;
+        }
+    }
+
+    private void discard(PooledStore store) {
+        store.getStore().closeImmediately();
+        if (!storeOptions.deleteTempFile(store.getTempFile())) {
+            log.debug("failed to delete temp file - probably already deleted");
+        }
+    }
+
+    static final class PooledStore {
+        private final File tempFile;
+        private final MVStore store;
+
+        PooledStore(File tempFile, MVStore store) {
+            this.tempFile = tempFile;
+            this.store = store;
+        }
+
+        File getTempFile() {
+            return tempFile;
+        }
+
+        MVStore getStore() {
+            return store;
+        }
+    }
+}
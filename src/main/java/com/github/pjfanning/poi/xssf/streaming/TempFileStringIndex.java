@@ -0,0 +1,63 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.h2.mvstore.MVStore;
+
+/**
+ * The dedup index of a {@link TempFileSharedStringsTable}, which maps the stored form of each entry to its index.
+ * <p>
+ * Writers need to be serialized by the caller.
+ * </p>
+ *
+ * @see MapStringIndex
+ * @see FingerprintStringIndex
+ */
+interface TempFileStringIndex {
+    /**
+     * @param entry the stored form of an entry
+     * @return the index of the entry or -1 if the entry is not in the index
+     */
+    int find(String entry);
+
+    /**
+     * @param entry the stored form of an entry (which must already be stored, at the index)
+     * @param idx the index of the entry
+     */
+    void put(String entry, int idx);
+
+    /**
+     * Adds every stored entry to the index. Where an entry is stored more than once, the highest index wins.
+     *
+     * @param strings the stored entries
+     */
+    void build(TempFileStrings strings);
+
+    /**
+     * Called once the table has opened its store, so the index can move entries that it holds in memory to the
+     * store. Nothing is changed if this fails.
+     *
+     * @param mvStore the store
+     */
+    void moveTo(MVStore mvStore);
+
+    /**
+     * @return the estimated number of bytes that the index holds on the heap, on top of what is counted for the
+     * entries of the table
+     */
+    long estimateHeapBytes();
+
+    /**
+     * @return the estimated number of bytes that the index holds in direct (off-heap) buffers
+     */
+    long estimateOffHeapBytes();
+
+    /**
+     * Removes the entries from the index, eg when it is replaced by another index.
+     */
+    void clear();
+
+    /**
+     * Releases the memory of the index. This is called before the table closes its store; an index in the store
+     * is deleted along with it.
+     */
+    void close();
+}
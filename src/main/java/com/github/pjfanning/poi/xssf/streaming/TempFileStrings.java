@@ -0,0 +1,197 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.h2.mvstore.Cursor;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.type.ByteArrayDataType;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * The entries of a {@link TempFileSharedStringsTable}, by index. The entries are held in memory until
+ * {@link #moveTo(MVStore)} is called, and from then on in an MVMap of the store or, if the strings are
+ * compressed, in {@link CompressedStringPages} that are kept in the store.
+ * <p>
+ * Lookups are thread safe. Writers need to be serialized by the caller.
+ * </p>
+ */
+final class TempFileStrings {
+    private final boolean compressStrings;
+    private volatile Map<Integer, String> memory = new ConcurrentSkipListMap<>();
+    // at most one of these is set, once the entries have been moved to the store
+    private volatile MVMap<Integer, String> mvStrings;
+    private volatile CompressedStringPages pages;
+
+    /**
+     * @param compressStrings whether to keep the entries in compressed pages once they are moved to the store
+     */
+    TempFileStrings(boolean compressStrings) {
+        this.compressStrings = compressStrings;
+    }
+
+    /**
+     * @return whether the entries have been moved to a store
+     */
+    boolean isStored() {
+        return memory == null;
+    }
+
+    /**
+     * Moves the entries that are held in memory to the store. Nothing is changed if this fails.
+     *
+     * @param mvStore the store
+     */
+    void moveTo(MVStore mvStore) {
+        Map<Integer, String> buffered = memory;
+        if (buffered == null) {
+            return;
+        }
+        if (compressStrings) {
+            final MVMap<Integer, byte[]> mvPages = mvStore.openMap("pages", new MVMap.Builder<Integer, byte[]>()
+                    .keyType(VarIntDataType.INSTANCE)
+                    .valueType(ByteArrayDataType.INSTANCE));
+            CompressedStringPages storePages = new CompressedStringPages(new CompressedStringPages.PageStore() {
+                @Override
+                public void putPage(int pageNo, byte[] page) {
+                    mvPages.put(pageNo, page);
+                }
+
+                @Override
+                public byte[] getPage(int pageNo) {
+                    return mvPages.get(pageNo);
+                }
+
+                @Override
+                public void clear() {
+                    // the pages are deleted along with the temp file
+                }
+            });
+            for (Map.Entry<Integer, String> mapEntry : buffered.entrySet()) {
+                storePages.add(mapEntry.getKey(), mapEntry.getValue());
+            }
+            pages = storePages;
+        } else {
+            MVMap<Integer, String> storeStrings = mvStore.openMap("strings", new MVMap.Builder<Integer, String>()
+                    .keyType(VarIntDataType.INSTANCE)
+                    .valueType(CompactStringDataType.INSTANCE));
+            storeStrings.putAll(buffered);
+            mvStrings = storeStrings;
+        }
+        memory = null;
+    }
+
+    /**
+     * @param idx the index of the entry
+     * @return the entry or <code>null</code> if there is no entry for this index
+     */
+    String get(int idx) {
+        // the in-memory entries are left intact when they are moved, so readers that still see them get the same result
+        Map<Integer, String> buffered = memory;
+        if (buffered != null) {
+            return buffered.get(idx);
+        }
+        CompressedStringPages storePages = pages;
+        return storePages == null ? mvStrings.get(idx) : storePages.get(idx);
+    }
+
+    /**
+     * @param idx the index of the entry
+     * @param entry the entry
+     */
+    void put(int idx, String entry) {
+        if (pages != null) {
+            pages.add(idx, entry);
+        } else if (mvStrings != null) {
+            mvStrings.put(idx, entry);
+        } else {
+            memory.put(idx, entry);
+        }
+    }
+
+    /**
+     * @return the indexes of the entries, in ascending order
+     */
+    Iterator<Integer> indexIterator() {
+        if (pages != null) {
+            return pages.indexIterator();
+        }
+        return mvStrings == null ? memory.keySet().iterator() : mvStrings.keyIterator(null);
+    }
+
+    /**
+     * Passes every entry and its index to the action, in index order.
+     *
+     * @param action the action
+     */
+    void forEach(ObjIntConsumer<String> action) {
+        if (mvStrings != null) {
+            Cursor<Integer, String> cursor = mvStrings.cursor(null);
+            while (cursor.hasNext()) {
+                int idx = cursor.next();
+                action.accept(cursor.getValue(), idx);
+            }
+            return;
+        }
+        Iterator<Integer> idIter = indexIterator();
+        while (idIter.hasNext()) {
+            int idx = idIter.next();
+            String entry = get(idx);
+            if (entry != null) {
+                action.accept(entry, idx);
+            }
+        }
+    }
+
+    /**
+     * Adds a range of entries to the cache. Without an MVMap to read them in order, this stops at the first index
+     * that has no entry.
+     *
+     * @param cache the cache
+     * @param fromIdx the first index to load
+     * @param toIdx the index after the last one to load
+     */
+    void loadRange(StringCache cache, int fromIdx, int toIdx) {
+        MVMap<Integer, String> storeStrings = mvStrings;
+        if (storeStrings != null) {
+            // a cursor reads the B-tree leaf pages in order, instead of one lookup per entry
+            Cursor<Integer, String> cursor = storeStrings.cursor(fromIdx);
+            while (cursor.hasNext()) {
+                int idx = cursor.next();
+                if (idx >= toIdx) {
+                    break;
+                }
+                cache.put(idx, cursor.getValue());
+            }
+        } else {
+            for (int idx = fromIdx; idx < toIdx; idx++) {
+                String entry = get(idx);
+                if (entry == null) {
+                    break;
+                }
+                cache.put(idx, entry);
+            }
+        }
+    }
+
+    /**
+     * @return the estimated heap size (in bytes) of the pages that are being filled, once the entries are in the
+     * store (the entries that are held in memory are counted by the table)
+     */
+    long estimateBufferedBytes() {
+        CompressedStringPages storePages = pages;
+        return storePages == null ? 0 : storePages.getBufferedBytes();
+    }
+
+    /**
+     * Releases the cached pages and the compression resources. The MVMaps are deleted along with the store.
+     */
+    void close() {
+        CompressedStringPages storePages = pages;
+        if (storePages != null) {
+            storePages.close();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Append only store of UTF-8 encoded strings in {@link ByteBuffer} arenas, which are direct (off-heap) unless
+ * the heap is asked for. Each string is written as a varint byte length followed by the UTF-8 bytes.
+ * {@link #append(String)} returns an address (arena number in the high 32 bits, offset in the low 32 bits) that
+ * {@link #get(long)} decodes. Other byte encodings can be stored with {@link #appendBytes(byte[])}.
+ * <p>
+ * Appends are serialized on this instance. Reads are lock free; callers need to publish addresses safely
+ * (eg via {@link ChunkedLongArray}). The direct memory is released when the arenas are garbage collected
+ * after {@link #clear()}.
+ * </p>
+ */
+final class Utf8Arena {
+    private static final int MIN_ARENA_SIZE = 1 << 16;
+    private static final int MAX_ARENA_SIZE = 1 << 24;
+    private static final ByteBuffer[] EMPTY = new ByteBuffer[0];
+
+    private final boolean direct;
+    private volatile ByteBuffer[] arenas = EMPTY;
+    private ByteBuffer current;
+    private int nextArenaSize = MIN_ARENA_SIZE;
+
+    Utf8Arena() {
+        this(true);
+    }
+
+    /**
+     * @param direct whether to use direct (off-heap) buffers
+     */
+    Utf8Arena(boolean direct) {
+        this.direct = direct;
+    }
+
+    /**
+     * @param value the string to store
+     * @return the address of the stored string
+     */
+    long append(String value) {
+        return appendBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param bytes the bytes to store
+     * @return the address of the stored bytes
+     */
+    synchronized long appendBytes(byte[] bytes) {
+        int needed = varIntLength(bytes.length) + bytes.length;
+        if (current == null || current.remaining() < needed) {
+            newArena(needed);
+        }
+        long address = ((long) (arenas.length - 1) << 32) | current.position();
+        putVarInt(current, bytes.length);
+        current.put(bytes);
+        return address;
+    }
+
+    /**
+     * @param address an address returned by {@link #append(String)}
+     * @return the decoded string
+     */
+    String get(long address) {
+        return new String(getBytes(address), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param address an address returned by {@link #appendBytes(byte[])}
+     * @return the stored bytes
+     */
+    byte[] getBytes(long address) {
+        ByteBuffer buffer = arenas[(int) (address >>> 32)].duplicate();
+        buffer.position((int) address);
+        int length = readVarInt(buffer);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * @return the capacity (in bytes) of the arenas
+     */
+    long getAllocatedBytes() {
+        long bytes = 0;
+        for (ByteBuffer arena : arenas) {
+            bytes += arena.capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return whether the arenas are direct (off-heap) buffers
+     */
+    boolean isDirect() {
+        return direct;
+    }
+
+    synchronized void clear() {
+        arenas = EMPTY;
+        current = null;
+        nextArenaSize = MIN_ARENA_SIZE;
+    }
+
+    private void newArena(int needed) {
+        int size = Math.max(needed, nextArenaSize);
+        nextArenaSize = Math.min(nextArenaSize << 1, MAX_ARENA_SIZE);
+        current = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        ByteBuffer[] grown = new ByteBuffer[arenas.length + 1];
+        System.arraycopy(arenas, 0, grown, 0, arenas.length);
+        grown[arenas.length] = current;
+        arenas = grown;
+    }
+
+    static int varIntLength(int value) {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    static void putVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.h2.mvstore.DataUtils;
+import org.h2.mvstore.WriteBuffer;
+import org.h2.mvstore.type.BasicDataType;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MVStore data type for the non-negative <code>Integer</code> indexes that key the temp file maps. Each value is
+ * written as a varint (1 byte for indexes below 128, 3 bytes for indexes below 2M), without the type tag that
+ * H2's generic <code>ObjectDataType</code> adds.
+ */
+final class VarIntDataType extends BasicDataType<Integer> {
+    static final VarIntDataType INSTANCE = new VarIntDataType();
+
+    private VarIntDataType() {}
+
+    @Override
+    public int getMemory(Integer obj) {
+        // a boxed Integer
+        return 16;
+    }
+
+    @Override
+    public void write(WriteBuffer buff, Integer obj) {
+        buff.putVarInt(obj);
+    }
+
+    @Override
+    public Integer read(ByteBuffer buff) {
+        return DataUtils.readVarInt(buff);
+    }
+
+    @Override
+    public int compare(Integer a, Integer b) {
+        return Integer.compare(a, b);
+    }
+
+    @Override
+    public Integer[] createStorage(int size) {
+        return new Integer[size];
+    }
+}
@@ -0,0 +1,409 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.util.TempFile;
+import org.apache.poi.xssf.model.SharedStringsTable;
+import org.apache.poi.xssf.usermodel.XSSFFont;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+import static com.github.pjfanning.poi.xssf.streaming.TestIOUtils.getResourceStream;
+import static com.github.pjfanning.poi.xssf.streaming.TestTempFileSharedStringsTable.MINIMAL_XML;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The tests that the off-heap and memory-mapped {@link SharedStringsTableBase} implementations share. Subclasses
+ * create the table under test and add the tests that are specific to its storage.
+ */
+public abstract class SharedStringsTableTestBase {
+    /**
+     * @param fullFormat whether the table stores format information
+     * @return a new, empty table
+     * @throws IOException if the table cannot be created
+     */
+    protected abstract SharedStringsTableBase newTable(boolean fullFormat) throws IOException;
+
+    @Test
+    public void testWriteOut() throws Exception {
+        testWriteOut(false);
+    }
+
+    @Test
+    public void testWriteOutFullFormat() throws Exception {
+        testWriteOut(true);
+    }
+
+    @Test
+    public void testReadXML() throws Exception {
+        testReadXML(false);
+    }
+
+    @Test
+    public void testReadXMLFullFormat() throws Exception {
+        testReadXML(true);
+    }
+
+    @Test
+    public void testReadStyledXML() throws Exception {
+        testReadStyledXML(false);
+    }
+
+    @Test
+    public void testReadStyledXMLFullFormat() throws Exception {
+        testReadStyledXML(true);
+    }
+
+    @Test
+    public void testReadOOXMLStrict() throws Exception {
+        testReadOOXMLStrict(false);
+    }
+
+    @Test
+    public void testReadOOXMLStrictFullFormat() throws Exception {
+        testReadOOXMLStrict(true);
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testReadMissingEntry() throws Exception {
+        try (SharedStringsTableBase sst = newTable(false)) {
+            RichTextString rts = sst.getItemAt(0);
+        }
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testGetStringMissingEntry() throws Exception {
+        try (SharedStringsTableBase sst = newTable(false)) {
+            String str = sst.getString(0);
+        }
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testReadMissingEntryFullFormat() throws Exception {
+        try (SharedStringsTableBase sst = newTable(true)) {
+            RichTextString rts = sst.getItemAt(0);
+        }
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testGetStringMissingEntryFullFormat() throws Exception {
+        try (SharedStringsTableBase sst = newTable(true)) {
+            String str = sst.getString(0);
+        }
+    }
+
+    @Test
+    public void testAddAfterRead() throws Exception {
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             SharedStringsTableBase sst = newTable(false)) {
+            sst.readFrom(is);
+            assertEquals(0, sst.addSharedStringItem(new XSSFRichTextString("City")));
+            assertEquals(36, sst.addSharedStringItem(new XSSFRichTextString("Sum of Population")));
+            assertEquals(38, sst.addSharedStringItem(new XSSFRichTextString("New City")));
+            assertEquals(38, sst.addSharedStringItem(new XSSFRichTextString("New City")));
+            assertEquals(39, sst.getUniqueCount());
+            assertEquals(64, sst.getCount());
+        }
+    }
+
+    @Test
+    public void testDeclaredUniqueCountOverLimit() throws Exception {
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             SharedStringsTableBase sst = newTable(false)) {
+            sst.configureLimits(TableLimits.builder().maxEntries(10).build());
+            // the part declares uniqueCount=38, so no entries are read
+            assertThrows(TableLimitExceededException.class, () -> sst.readFrom(is));
+            assertEquals(0, sst.getUniqueCount());
+        }
+    }
+
+    @Test
+    public void testLimits() throws Exception {
+        try (SharedStringsTableBase sst = newTable(false)) {
+            sst.configureLimits(TableLimits.builder().maxEntries(3).maxEntryLength(5).maxTotalChars(12).build());
+            assertEquals(0, sst.addSharedStringItem(new XSSFRichTextString("abcd")));
+            assertThrows(TableLimitExceededException.class,
+                    () -> sst.addSharedStringItem(new XSSFRichTextString("abcdef")));
+            assertEquals(1, sst.addSharedStringItem(new XSSFRichTextString("efgh")));
+            // duplicates do not count against the limits
+            assertEquals(0, sst.addSharedStringItem(new XSSFRichTextString("abcd")));
+            assertThrows(TableLimitExceededException.class,
+                    () -> sst.addSharedStringItem(new XSSFRichTextString("ijklm")));
+            assertEquals(2, sst.addSharedStringItem(new XSSFRichTextString("ijkl")));
+            assertThrows(TableLimitExceededException.class,
+                    () -> sst.addSharedStringItem(new XSSFRichTextString("")));
+            assertEquals(3, sst.getUniqueCount());
+            assertEquals("ijkl", sst.getString(2));
+        }
+    }
+
+    @Test
+    public void testDedupWindow() throws Exception {
+        try (SharedStringsTableBase sst = newTable(false)) {
+            sst.configureDedupWindow(2);
+            assertEquals(0, sst.addSharedStringItem(new XSSFRichTextString("a")));
+            assertEquals(1, sst.addSharedStringItem(new XSSFRichTextString("b")));
+            assertEquals(0, sst.addSharedStringItem(new XSSFRichTextString("a")));
+            // "b" is the least recently used value, so it drops out of the window
+            assertEquals(2, sst.addSharedStringItem(new XSSFRichTextString("c")));
+            assertEquals(3, sst.addSharedStringItem(new XSSFRichTextString("b")));
+            assertEquals(2, sst.addSharedStringItem(new XSSFRichTextString("c")));
+            assertEquals(4, sst.getUniqueCount());
+            assertEquals(6, sst.getCount());
+            assertEquals("b", sst.getString(3));
+            assertThrows(IllegalArgumentException.class, () -> sst.configureDedupWindow(-2));
+        }
+    }
+
+    @Test
+    public void testFreeze() throws Exception {
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             SharedStringsTableBase sst = newTable(false)) {
+            sst.readFrom(is);
+            assertFalse(sst.isFrozen());
+            sst.freeze();
+            assertTrue(sst.isFrozen());
+            assertEquals(38, sst.getUniqueCount());
+            assertEquals("City", sst.getString(0));
+            assertEquals("City", sst.getItemAt(0).getString());
+            assertThrows(NoSuchElementException.class, () -> sst.getString(38));
+            assertThrows(IllegalStateException.class,
+                    () -> sst.addSharedStringItem(new XSSFRichTextString("New City")));
+        }
+    }
+
+    @Test
+    public void testFreezeBigUniqueCount() throws Exception {
+        for (String uniqueCount : new String[]{"2000000000", Integer.toString(Integer.MAX_VALUE)}) {
+            try (SharedStringsTableBase sst = newTable(false)) {
+                sst.readFrom(new ByteArrayInputStream(
+                        MINIMAL_XML.replace("49", uniqueCount).getBytes(StandardCharsets.UTF_8)));
+                sst.freeze();
+                // the snapshot is sized to the entries that were read, not the declared count
+                assertTrue(sst.estimateFootprint().getHeapBytes() < 1024);
+                assertEquals(Integer.parseInt(uniqueCount), sst.getUniqueCount());
+                assertEquals("bla", sst.getString(0));
+                assertThrows(NoSuchElementException.class, () -> sst.getString(1));
+                assertThrows(NoSuchElementException.class, () -> sst.getString(Integer.MAX_VALUE - 1));
+            }
+        }
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        testWrite(10, false);
+    }
+
+    @Test
+    public void testWriteFullFormat() throws Exception {
+        testWrite(10, true);
+    }
+
+    @Test
+    public void testMinimalTable() throws IOException {
+        try (SharedStringsTableBase tbl = newTable(false)) {
+            tbl.readFrom(new ByteArrayInputStream(MINIMAL_XML.getBytes(StandardCharsets.UTF_8)));
+            assertEquals(49, tbl.getUniqueCount());
+            assertEquals(55, tbl.getCount());
+            assertEquals("bla", tbl.getItemAt(0).getString());
+            assertThrows(NoSuchElementException.class,
+                    () -> tbl.getItemAt(1).getString());
+        }
+    }
+
+    @Test
+    public void testBigUniqueCount() throws IOException, SAXException {
+        try (SharedStringsTableBase tbl = newTable(false)) {
+            tbl.readFrom(new ByteArrayInputStream(
+                    MINIMAL_XML.replace("49", Integer.toString(Integer.MAX_VALUE))
+                            .getBytes(StandardCharsets.UTF_8)));
+            assertNotNull(tbl);
+            assertEquals(Integer.MAX_VALUE, tbl.getUniqueCount());
+            assertEquals(55, tbl.getCount());
+            assertEquals("bla", tbl.getItemAt(0).getString());
+            assertThrows(NoSuchElementException.class,
+                    () -> tbl.getItemAt(1).getString());
+        }
+    }
+
+    @Test
+    public void testHugeUniqueCount() throws IOException, SAXException {
+        try (SharedStringsTableBase tbl = newTable(false)) {
+            tbl.readFrom(new ByteArrayInputStream(
+                    MINIMAL_XML.replace("49", "99999999999999999")
+                            .getBytes(StandardCharsets.UTF_8)));
+            assertNotNull(tbl);
+            assertEquals(1, tbl.getUniqueCount());
+            assertEquals(55, tbl.getCount());
+            assertEquals("bla", tbl.getItemAt(0).getString());
+            assertThrows(NoSuchElementException.class,
+                    () -> tbl.getItemAt(1).getString());
+        }
+    }
+
+    @Test
+    public void stressTest() throws Exception {
+        final int limit = 100;
+        File tempFile = TempFile.createTempFile("shared-string-stress", ".tmp");
+        try (SharedStringsTableBase sst = newTable(true)) {
+            for (int i = 0; i < limit; i++) {
+                sst.addSharedStringItem(new XSSFRichTextString(UUID.randomUUID().toString()));
+            }
+            try (FileOutputStream fos = new FileOutputStream(tempFile)) {
+                sst.writeTo(fos);
+            }
+            try (SharedStringsTableBase sst2 = newTable(true)) {
+                try (FileInputStream fis = new FileInputStream(tempFile)){
+                    sst2.readFrom(fis);
+                }
+                assertEquals(limit, sst2.getUniqueCount());
+                assertEquals(limit, sst2.getCount());
+            }
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    @Test
+    public void testWriteOutKeepsIndexOrder() throws Exception {
+        final int limit = ChunkedStringArray.CHUNK_SIZE * 2 + 10;
+        try (
+                UnsynchronizedByteArrayOutputStream bos = UnsynchronizedByteArrayOutputStream.builder().get();
+                SharedStringsTableBase sst = newTable(false)
+        ) {
+            for (int i = 0; i < limit; i++) {
+                assertEquals(i, sst.addSharedStringItem(new XSSFRichTextString("value" + i)));
+            }
+            sst.writeTo(bos);
+            try (SharedStringsTable sst2 = new SharedStringsTable()) {
+                sst2.readFrom(bos.toInputStream());
+                assertEquals(limit, sst2.getUniqueCount());
+                for (int i = 0; i < limit; i++) {
+                    assertEquals("value" + i, sst2.getItemAt(i).getString());
+                }
+            }
+        }
+    }
+
+    private void testWrite(int size, boolean fullFormat) throws Exception {
+        java.util.Random rnd = new java.util.Random();
+        byte[] bytes = new byte[1028];
+        try (
+                UnsynchronizedByteArrayOutputStream bos = UnsynchronizedByteArrayOutputStream.builder().get();
+                SharedStringsTableBase sst = newTable(fullFormat)
+        ) {
+            for (int i = 0; i < size; i++) {
+                rnd.nextBytes(bytes);
+                String rndString = java.util.Base64.getEncoder().encodeToString(bytes);
+                sst.addSharedStringItem(new XSSFRichTextString(rndString));
+            }
+            sst.writeTo(bos);
+            String out = bos.toString(StandardCharsets.UTF_8);
+            assertFalse("sst output should not contain xml-fragment", out.contains("xml-fragment"));
+            try(SharedStringsTableBase sst2 = newTable(fullFormat)) {
+                sst2.readFrom(bos.toInputStream());
+                assertEquals(size, sst2.getCount());
+            }
+        }
+    }
+
+    private void testReadOOXMLStrict(boolean fullFormat) throws Exception {
+        try (InputStream is = getResourceStream("strictSharedStrings.xml");
+             SharedStringsTableBase sst = newTable(fullFormat)) {
+            sst.readFrom(is);
+            assertEquals(15, sst.getUniqueCount());
+            assertEquals(19, sst.getCount());
+            assertEquals("Lorem", sst.getItemAt(0).getString());
+            assertEquals("Lorem", sst.getString(0));
+            assertEquals("The quick brown fox jumps over the lazy dog",
+                    sst.getItemAt(14).getString());
+            assertEquals("The quick brown fox jumps over the lazy dog",
+                    sst.getString(14));
+            int expectedFormattingRuns = fullFormat ? 11: 0;
+            assertEquals(expectedFormattingRuns, sst.getItemAt(14).numFormattingRuns());
+        }
+    }
+
+    private void testReadStyledXML(boolean fullFormat) throws Exception {
+        try (InputStream is = getResourceStream("styledSharedStrings.xml");
+             SharedStringsTableBase sst = newTable(fullFormat)) {
+            sst.readFrom(is);
+            assertEquals(1, sst.getCount());
+            assertEquals(1, sst.getUniqueCount());
+            assertEquals("shared styled string", sst.getItemAt(0).getString());
+            assertEquals("shared styled string", sst.getString(0));
+        }
+    }
+
+    private void testReadXML(boolean fullFormat) throws Exception {
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             SharedStringsTableBase sst = newTable(fullFormat)) {
+            sst.readFrom(is);
+            assertEquals(60, sst.getCount());
+            assertEquals(38, sst.getUniqueCount());
+            assertEquals("City", sst.getItemAt(0).getString());
+            assertEquals("City", sst.getString(0));
+        }
+    }
+
+    private void testWriteOut(boolean fullFormat) throws Exception {
+        try (SharedStringsTableBase sst = newTable(fullFormat)) {
+            sst.addSharedStringItem(new XSSFRichTextString("First string"));
+            sst.addSharedStringItem(new XSSFRichTextString("First string"));
+            sst.addSharedStringItem(new XSSFRichTextString("First string"));
+            sst.addSharedStringItem(new XSSFRichTextString("Second string"));
+            sst.addSharedStringItem(new XSSFRichTextString("Second string"));
+            sst.addSharedStringItem(new XSSFRichTextString("Second string"));
+            XSSFRichTextString rts = new XSSFRichTextString("Second string");
+            XSSFFont font = new XSSFFont();
+            font.setFontName("Arial");
+            font.setBold(true);
+            rts.applyFont(font);
+            sst.addSharedStringItem(rts);
+            int expectedUniqueCount = fullFormat ? 3 : 2;
+            assertEquals(expectedUniqueCount, sst.getUniqueCount());
+            assertEquals(7, sst.getCount());
+            try (UnsynchronizedByteArrayOutputStream bos = UnsynchronizedByteArrayOutputStream.builder().get()) {
+                sst.writeTo(bos);
+                try (SharedStringsTableBase sst2 = newTable(true)) {
+                    sst2.readFrom(bos.toInputStream());
+                    assertEquals(expectedUniqueCount, sst2.getUniqueCount());
+                    assertEquals(7, sst2.getCount());
+                    assertEquals("First string", sst2.getItemAt(0).getString());
+                    assertEquals("First string", sst2.getString(0));
+                    assertEquals("Second string", sst2.getItemAt(1).getString());
+                    assertEquals("Second string", sst2.getString(1));
+                    if (fullFormat) {
+                        assertEquals("Second string", sst2.getItemAt(2).getString());
+                        assertEquals("Second string", sst2.getString(2));
+                    }
+                }
+                try (SharedStringsTable sst3 = new SharedStringsTable()) {
+                    sst3.readFrom(bos.toInputStream());
+                    assertEquals(expectedUniqueCount, sst3.getUniqueCount());
+                    assertEquals(7, sst3.getCount());
+                    assertEquals("First string", sst3.getItemAt(0).getString());
+                    assertEquals("Second string", sst3.getItemAt(1).getString());
+                    if (fullFormat) {
+                        assertEquals("Second string", sst3.getItemAt(2).getString());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class TestCanonicalStrings {
+    @Test
+    public void testSameInstance() {
+        CanonicalStrings pool = new CanonicalStrings(16);
+        String first = new String("value");
+        assertNull(pool.get(3));
+        assertSame(first, pool.put(3, first));
+        assertSame(first, pool.get(3));
+        // a second copy of the text is swapped for the pooled instance
+        assertSame(first, pool.put(3, new String("value")));
+    }
+
+    @Test
+    public void testSlotEviction() {
+        CanonicalStrings pool = new CanonicalStrings(16);
+        assertEquals(16, pool.capacity());
+        String first = new String("first");
+        String second = new String("second");
+        pool.put(1, first);
+        // 17 maps to the same slot as 1
+        pool.put(17, second);
+        assertNull(pool.get(1));
+        assertSame(second, pool.get(17));
+    }
+
+    @Test
+    public void testCapacityRoundsUp() {
+        assertEquals(2, new CanonicalStrings(1).capacity());
+        assertEquals(1024, new CanonicalStrings(1000).capacity());
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+public class TestChunkedStringArray {
+    @Test
+    public void testAppend() {
+        ChunkedStringArray array = new ChunkedStringArray();
+        final int limit = ChunkedStringArray.CHUNK_SIZE * 3 + 1;
+        for (int i = 0; i < limit; i++) {
+            array.set(i, Integer.toString(i));
+        }
+        assertEquals(limit, array.size());
+        assertEquals(limit, array.length());
+        for (int i = 0; i < limit; i++) {
+            assertEquals(Integer.toString(i), array.get(i));
+        }
+        assertNull(array.get(limit));
+        assertNull(array.get(-1));
+    }
+
+    @Test
+    public void testSparseIndexes() {
+        ChunkedStringArray array = new ChunkedStringArray(10);
+        array.set(0, "a");
+        array.set(ChunkedStringArray.CHUNK_SIZE * 5 + 3, "b");
+        array.set(7, "c");
+        assertEquals(3, array.size());
+        assertNull(array.get(1));
+        assertNull(array.get(ChunkedStringArray.CHUNK_SIZE * 2));
+        List<Integer> indexes = new ArrayList<>();
+        Iterator<Integer> iter = array.indexIterator();
+        while (iter.hasNext()) {
+            indexes.add(iter.next());
+        }
+        assertEquals(Arrays.asList(0, 7, ChunkedStringArray.CHUNK_SIZE * 5 + 3), indexes);
+    }
+
+    @Test
+    public void testUntrustedPresize() {
+        ChunkedStringArray array = new ChunkedStringArray(Integer.MAX_VALUE);
+        array.set(0, "a");
+        assertEquals("a", array.get(0));
+        assertEquals(1, array.size());
+    }
+
+    @Test
+    public void testClear() {
+        ChunkedStringArray array = new ChunkedStringArray();
+        array.set(0, "a");
+        array.clear();
+        assertNull(array.get(0));
+        assertEquals(0, array.size());
+        assertFalse(array.indexIterator().hasNext());
+        assertThrows(IllegalArgumentException.class, () -> array.set(-1, "b"));
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.h2.mvstore.WriteBuffer;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestCompactStringDataType {
+    @Test
+    public void testRoundTrip() {
+        String[] values = {"", "City", "café", "日本語", "mixed é and €", "😀"};
+        WriteBuffer buff = new WriteBuffer();
+        for (String value : values) {
+            CompactStringDataType.INSTANCE.write(buff, value);
+        }
+        ByteBuffer read = buff.getBuffer();
+        read.flip();
+        for (String value : values) {
+            assertEquals(value, CompactStringDataType.INSTANCE.read(read));
+        }
+        assertEquals(0, read.remaining());
+    }
+
+    @Test
+    public void testLatin1IsOneBytePerChar() {
+        WriteBuffer buff = new WriteBuffer();
+        CompactStringDataType.INSTANCE.write(buff, "café");
+        // 1 byte header + 4 bytes
+        assertEquals(5, buff.getBuffer().position());
+    }
+
+    @Test
+    public void testReadFromDirectBuffer() {
+        WriteBuffer buff = new WriteBuffer();
+        CompactStringDataType.INSTANCE.write(buff, "日本");
+        ByteBuffer heap = buff.getBuffer();
+        heap.flip();
+        ByteBuffer direct = ByteBuffer.allocateDirect(heap.remaining());
+        direct.put(heap);
+        direct.flip();
+        assertEquals("日本", CompactStringDataType.INSTANCE.read(direct));
+    }
+
+    @Test
+    public void testCompare() {
+        assertTrue(CompactStringDataType.INSTANCE.compare("a", "b") < 0);
+        assertTrue(CompactStringDataType.INSTANCE.compare("b", "a") > 0);
+        assertEquals(0, CompactStringDataType.INSTANCE.compare("é", "é"));
+    }
+}
@@ -0,0 +1,137 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class TestCompressedStringPages {
+    @Test
+    public void testAddAndGet() {
+        CompressedStringPages pages = new CompressedStringPages(new CompressedStringPages.HeapPageStore());
+        try {
+            pages.add(0, "hello");
+            pages.add(1, "");
+            pages.add(2, "沖縄");
+            assertEquals("hello", pages.get(0));
+            assertEquals("", pages.get(1));
+            assertEquals("沖縄", pages.get(2));
+            assertNull(pages.get(3));
+            assertNull(pages.get(-1));
+            assertEquals(3, pages.size());
+        } finally {
+            pages.close();
+        }
+    }
+
+    @Test
+    public void testManyPages() {
+        // small pages and a small cache, so that most reads need a page to be decompressed
+        CompressedStringPages.HeapPageStore store = new CompressedStringPages.HeapPageStore();
+        CompressedStringPages pages = new CompressedStringPages(store, 256, 2);
+        try {
+            List<String> values = new ArrayList<>();
+            for (int i = 0; i < 5000; i++) {
+                char[] chars = new char[i % 13 == 0 ? 1000 : i % 50];
+                Arrays.fill(chars, (char) ('a' + i % 26));
+                String value = new String(chars) + i;
+                values.add(value);
+                pages.add(i, value);
+                if (i % 7 == 0) {
+                    int j = i / 2;
+                    assertEquals(values.get(j), pages.get(j));
+                }
+            }
+            for (int i = values.size() - 1; i >= 0; i--) {
+                assertEquals(values.get(i), pages.get(i));
+            }
+            Iterator<Integer> iter = pages.indexIterator();
+            for (int i = 0; i < values.size(); i++) {
+                assertTrue(iter.hasNext());
+                assertEquals(i, iter.next().intValue());
+            }
+            assertFalse(iter.hasNext());
+        } finally {
+            pages.close();
+        }
+    }
+
+    @Test
+    public void testReplace() {
+        CompressedStringPages pages = new CompressedStringPages(new CompressedStringPages.HeapPageStore(), 64, 2);
+        try {
+            for (int i = 0; i < 20; i++) {
+                pages.add(i, "value" + i);
+            }
+            pages.add(30, "value30");
+            pages.add(31, "value31");
+            // in a sealed page, in the open page and in the gap between them
+            pages.add(1, "replaced1");
+            pages.add(31, "replaced31");
+            pages.add(25, "added25");
+            pages.add(1, "again1");
+            assertEquals(32, pages.size());
+            assertEquals("value0", pages.get(0));
+            assertEquals("again1", pages.get(1));
+            assertEquals("value19", pages.get(19));
+            assertEquals("added25", pages.get(25));
+            assertNull(pages.get(24));
+            assertEquals("value30", pages.get(30));
+            assertEquals("replaced31", pages.get(31));
+            List<Integer> iterated = new ArrayList<>();
+            Iterator<Integer> iter = pages.indexIterator();
+            while (iter.hasNext()) {
+                iterated.add(iter.next());
+            }
+            assertEquals(23, iterated.size());
+            assertEquals(Integer.valueOf(25), iterated.get(20));
+            assertEquals(Integer.valueOf(30), iterated.get(21));
+            assertEquals(Integer.valueOf(31), iterated.get(22));
+            assertThrows(IllegalArgumentException.class, () -> pages.add(-1, "negative"));
+        } finally {
+            pages.close();
+        }
+    }
+
+    @Test
+    public void testGaps() {
+        CompressedStringPages pages = new CompressedStringPages(new CompressedStringPages.HeapPageStore(), 64, 2);
+        try {
+            List<Integer> indexes = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                indexes.add(i);
+            }
+            for (int i = 100; i < 120; i++) {
+                indexes.add(i);
+            }
+            indexes.add(Integer.MAX_VALUE - 1);
+            for (int idx : indexes) {
+                pages.add(idx, "value" + idx);
+            }
+            assertEquals(Integer.MAX_VALUE, pages.size());
+            for (int idx : indexes) {
+                assertEquals("value" + idx, pages.get(idx));
+            }
+            assertNull(pages.get(20));
+            assertNull(pages.get(99));
+            assertNull(pages.get(120));
+            assertNull(pages.get(Integer.MAX_VALUE - 2));
+            List<Integer> iterated = new ArrayList<>();
+            Iterator<Integer> iter = pages.indexIterator();
+            while (iter.hasNext()) {
+                iterated.add(iter.next());
+            }
+            assertEquals(indexes, iterated);
+        } finally {
+            pages.close();
+        }
+    }
+}
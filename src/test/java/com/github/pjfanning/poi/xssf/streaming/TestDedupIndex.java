@@ -0,0 +1,53 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestDedupIndex {
+    @Test
+    public void testFindAndGrow() {
+        ChunkedStringArray entries = new ChunkedStringArray();
+        DedupIndex index = new DedupIndex(entries::get);
+        final int limit = 10000;
+        for (int i = 0; i < limit; i++) {
+            String entry = "entry" + i;
+            assertEquals(-1, index.find(entry));
+            entries.set(i, entry);
+            index.put(entry, i);
+        }
+        assertEquals(limit, index.size());
+        for (int i = 0; i < limit; i++) {
+            assertEquals(i, index.find("entry" + i));
+        }
+        assertEquals(-1, index.find("entry" + limit));
+    }
+
+    @Test
+    public void testPutReplacesIndex() {
+        ChunkedStringArray entries = new ChunkedStringArray();
+        DedupIndex index = new DedupIndex(entries::get);
+        entries.set(0, "a");
+        index.put("a", 0);
+        entries.set(1, "a");
+        index.put("a", 1);
+        assertEquals(1, index.size());
+        assertEquals(1, index.find("a"));
+    }
+
+    @Test
+    public void testCollidingHashes() {
+        // "Aa" and "BB" have the same String hashCode
+        ChunkedStringArray entries = new ChunkedStringArray();
+        DedupIndex index = new DedupIndex(entries::get);
+        entries.set(0, "Aa");
+        index.put("Aa", 0);
+        entries.set(1, "BB");
+        index.put("BB", 1);
+        assertEquals(0, index.find("Aa"));
+        assertEquals(1, index.find("BB"));
+        index.clear();
+        assertEquals(-1, index.find("Aa"));
+        assertEquals(0, index.size());
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class TestFingerprintIndex {
+    @Test
+    public void testPutAndFind() {
+        testPutAndFind(false);
+    }
+
+    @Test
+    public void testPutAndFindOffHeap() {
+        testPutAndFind(true);
+    }
+
+    @Test
+    public void testReplace() {
+        List<String> store = new ArrayList<>();
+        FingerprintIndex index = new FingerprintIndex(store::get, false);
+        store.add("dup");
+        index.put("dup", 0);
+        store.add("dup");
+        index.put("dup", 1);
+        assertEquals(1, index.size());
+        assertEquals(1, index.find("dup"));
+    }
+
+    @Test
+    public void testFingerprintCollisionIsVerified() {
+        // the resolver returns a different string, as if another entry had the same fingerprint
+        FingerprintIndex index = new FingerprintIndex(idx -> "other", false);
+        index.put("value", 0);
+        assertEquals(-1, index.find("value"));
+    }
+
+    @Test
+    public void testFingerprint() {
+        assertEquals(FingerprintIndex.fingerprint("value"), FingerprintIndex.fingerprint(new String("value")));
+        assertNotEquals(FingerprintIndex.fingerprint("ab"), FingerprintIndex.fingerprint("ba"));
+        assertNotEquals(FingerprintIndex.fingerprint(""), FingerprintIndex.fingerprint("\u0000"));
+        assertNotEquals(FingerprintIndex.fingerprint("abcd"), FingerprintIndex.fingerprint("abcde"));
+    }
+
+    private void testPutAndFind(boolean direct) {
+        List<String> store = new ArrayList<>();
+        FingerprintIndex index = new FingerprintIndex(store::get, direct);
+        for (int i = 0; i < 10_000; i++) {
+            store.add("value" + i);
+            index.put("value" + i, i);
+        }
+        assertEquals(10_000, index.size());
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i, index.find("value" + i));
+        }
+        assertEquals(-1, index.find("missing"));
+        index.clear();
+        assertEquals(0, index.size());
+        assertEquals(-1, index.find("value1"));
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+public class TestFrozenStrings {
+    @Test
+    public void testGet() {
+        FrozenStrings.Builder builder = new FrozenStrings.Builder();
+        for (int i = 0; i < 1000; i++) {
+            builder.add(i, i % 10 == 0 ? "" : "value " + i + " é 日本");
+        }
+        FrozenStrings frozen = builder.build();
+        assertEquals(1000, frozen.size());
+        assertEquals("", frozen.get(0));
+        assertEquals("value 999 é 日本", frozen.get(999));
+        assertNull(frozen.get(1000));
+        assertNull(frozen.get(-1));
+    }
+
+    @Test
+    public void testMissingEntries() {
+        FrozenStrings.Builder builder = new FrozenStrings.Builder();
+        builder.add(0, "a");
+        builder.add(3, "d");
+        FrozenStrings frozen = builder.build();
+        assertEquals(4, frozen.size());
+        assertEquals("a", frozen.get(0));
+        assertNull(frozen.get(1));
+        assertNull(frozen.get(2));
+        assertEquals("d", frozen.get(3));
+        assertNull(frozen.get(5));
+        List<Integer> indexes = new ArrayList<>();
+        Iterator<Integer> iter = frozen.indexIterator();
+        while (iter.hasNext()) {
+            indexes.add(iter.next());
+        }
+        assertEquals(2, indexes.size());
+        assertEquals(0, (int) indexes.get(0));
+        assertEquals(3, (int) indexes.get(1));
+    }
+
+    @Test
+    public void testOutOfOrder() {
+        FrozenStrings.Builder builder = new FrozenStrings.Builder();
+        builder.add(2, "c");
+        assertThrows(IllegalArgumentException.class, () -> builder.add(1, "b"));
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestHotValueCache {
+    @Test
+    public void testCachedOnSecondSighting() {
+        HotValueCache cache = new HotValueCache(4);
+        cache.record("open", 0);
+        assertEquals(-1, cache.get("open"));
+        cache.record("open", 0);
+        assertEquals(0, cache.get("open"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        HotValueCache cache = new HotValueCache(2);
+        for (String value : new String[]{"a", "b", "c"}) {
+            cache.record(value, value.charAt(0));
+            cache.record(value, value.charAt(0));
+        }
+        assertEquals(2, cache.size());
+        assertEquals(-1, cache.get("a"));
+        assertEquals('c', cache.get("c"));
+    }
+
+    @Test
+    public void testLongValuesAreNotCached() {
+        HotValueCache cache = new HotValueCache(4);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i <= HotValueCache.MAX_VALUE_LENGTH; i++) {
+            sb.append('x');
+        }
+        String value = sb.toString();
+        cache.record(value, 1);
+        cache.record(value, 1);
+        assertEquals(-1, cache.get(value));
+    }
+
+    @Test
+    public void testClear() {
+        HotValueCache cache = new HotValueCache(4);
+        cache.record("open", 0);
+        cache.record("open", 0);
+        cache.clear();
+        assertEquals(0, cache.size());
+        cache.record("open", 0);
+        assertEquals(-1, cache.get("open"));
+    }
+}
@@ -0,0 +1,173 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
+import org.apache.poi.xssf.model.SharedStringsTable;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+import static com.github.pjfanning.poi.xssf.streaming.TestIOUtils.getResourceStream;
+import static com.github.pjfanning.poi.xssf.streaming.TestTempFileSharedStringsTable.MINIMAL_XML;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class TestHybridSharedStringsTable {
+    @Test
+    public void testStaysOnHeap() throws Exception {
+        try (HybridSharedStringsTable sst = new HybridSharedStringsTable()) {
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i, sst.addSharedStringItem(new XSSFRichTextString("value" + i)));
+            }
+            assertFalse(sst.isSpilled());
+            assertEquals(5, sst.addSharedStringItem(new XSSFRichTextString("value5")));
+            assertEquals("value99", sst.getString(99));
+        }
+    }
+
+    @Test
+    public void testSpillOnEntryCount() throws Exception {
+        testSpill(new HybridSharedStringsTable(10, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testSpillOnBytes() throws Exception {
+        testSpill(new HybridSharedStringsTable(Integer.MAX_VALUE, 1024));
+    }
+
+    @Test
+    public void testSpillFullFormat() throws Exception {
+        testSpill(new HybridSharedStringsTable(10, Long.MAX_VALUE, false, true));
+    }
+
+    @Test
+    public void testReadXMLSpilled() throws Exception {
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             HybridSharedStringsTable sst = new HybridSharedStringsTable(10, Long.MAX_VALUE)) {
+            sst.readFrom(is);
+            assertTrue(sst.isSpilled());
+            assertEquals(60, sst.getCount());
+            assertEquals(38, sst.getUniqueCount());
+            assertEquals("City", sst.getString(0));
+            assertEquals(36, sst.addSharedStringItem(new XSSFRichTextString("Sum of Population")));
+            assertEquals(38, sst.addSharedStringItem(new XSSFRichTextString("New City")));
+        }
+    }
+
+    @Test
+    public void testReadXMLAndSpillOnAdd() throws Exception {
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             HybridSharedStringsTable sst = new HybridSharedStringsTable(38, Long.MAX_VALUE)) {
+            sst.readFrom(is);
+            assertFalse(sst.isSpilled());
+            assertEquals(0, sst.addSharedStringItem(new XSSFRichTextString("City")));
+            assertEquals(38, sst.addSharedStringItem(new XSSFRichTextString("New City")));
+            assertTrue(sst.isSpilled());
+            // the dedup index is moved to the temp file along with the entries
+            assertEquals(36, sst.addSharedStringItem(new XSSFRichTextString("Sum of Population")));
+            assertEquals(38, sst.addSharedStringItem(new XSSFRichTextString("New City")));
+            assertEquals("City", sst.getString(0));
+            assertEquals("New City", sst.getString(38));
+        }
+    }
+
+    @Test
+    public void testUniqueCountTriggersSpill() throws Exception {
+        try (HybridSharedStringsTable sst = new HybridSharedStringsTable(10, Long.MAX_VALUE)) {
+            sst.readFrom(new ByteArrayInputStream(MINIMAL_XML.getBytes(StandardCharsets.UTF_8)));
+            assertTrue(sst.isSpilled());
+            assertEquals("bla", sst.getString(0));
+            assertThrows(NoSuchElementException.class, () -> sst.getString(1));
+        }
+    }
+
+    @Test
+    public void testUniqueCountSpillFailurePropagates() throws Exception {
+        TempFileStoreOptions options = TempFileStoreOptions.builder().inMemoryEntries(0).build();
+        TempFileStorePool pool = new TempFileStorePool(options, false);
+        pool.close();
+        try (HybridSharedStringsTable sst = new HybridSharedStringsTable(10, Long.MAX_VALUE, false, pool)) {
+            sst.addSharedStringItem(new XSSFRichTextString("value"));
+            // the spill has to copy the entry to a store, which the closed pool cannot provide
+            assertThrows(UncheckedIOException.class,
+                    () -> sst.readFrom(new ByteArrayInputStream(MINIMAL_XML.getBytes(StandardCharsets.UTF_8))));
+            assertFalse(sst.isSpilled());
+        }
+    }
+
+    @Test
+    public void testEstimateFootprint() throws Exception {
+        try (HybridSharedStringsTable sst = new HybridSharedStringsTable()) {
+            for (int i = 0; i < 100; i++) {
+                sst.addSharedStringItem(new XSSFRichTextString("value" + i));
+            }
+            long heapBytes = sst.estimateFootprint().getHeapBytes();
+            // 100 entries of about 7 chars, plus the dedup index
+            assertTrue(heapBytes > 100 * (SharedStringsTableBase.HEAP_ENTRY_OVERHEAD + 14));
+            assertTrue(heapBytes < 100 * (SharedStringsTableBase.HEAP_ENTRY_OVERHEAD + 14) + 4096);
+        }
+    }
+
+    @Test
+    public void testSpillWithStoreOptions() throws Exception {
+        TempFileStoreOptions options = TempFileStoreOptions.builder().inMemoryEntries(1000).build();
+        try (HybridSharedStringsTable sst = new HybridSharedStringsTable(10, Long.MAX_VALUE, false, false, options)) {
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i, sst.addSharedStringItem(new XSSFRichTextString("value" + i)));
+            }
+            assertTrue(sst.isSpilled());
+            // the options apply to the spilled table, which has not needed its temp file yet
+            assertFalse(((TempFileSharedStringsTable) sst.getStore()).isStoreOpen());
+            assertEquals("value42", sst.getString(42));
+        }
+    }
+
+    @Test
+    public void testSpillWithStorePool() throws Exception {
+        TempFileStoreOptions options = TempFileStoreOptions.builder().inMemoryEntries(0).build();
+        try (TempFileStorePool pool = new TempFileStorePool(options, false)) {
+            try (HybridSharedStringsTable sst = new HybridSharedStringsTable(10, Long.MAX_VALUE, false, pool)) {
+                for (int i = 0; i < 100; i++) {
+                    assertEquals(i, sst.addSharedStringItem(new XSSFRichTextString("value" + i)));
+                }
+                assertTrue(sst.isSpilled());
+                assertEquals(1, pool.getCreatedCount());
+                assertEquals("value42", sst.getString(42));
+            }
+            assertEquals(1, pool.getIdleCount());
+        }
+    }
+
+    private void testSpill(HybridSharedStringsTable table) throws Exception {
+        final int limit = 100;
+        try (
+                UnsynchronizedByteArrayOutputStream bos = UnsynchronizedByteArrayOutputStream.builder().get();
+                HybridSharedStringsTable sst = table
+        ) {
+            for (int i = 0; i < limit; i++) {
+                assertEquals(i, sst.addSharedStringItem(new XSSFRichTextString("value" + i)));
+            }
+            assertTrue(sst.isSpilled());
+            for (int i = 0; i < limit; i++) {
+                assertEquals(i, sst.addSharedStringItem(new XSSFRichTextString("value" + i)));
+                assertEquals("value" + i, sst.getString(i));
+            }
+            assertEquals(limit, sst.getUniqueCount());
+            assertEquals(limit * 2, sst.getCount());
+            sst.writeTo(bos);
+            try (SharedStringsTable sst2 = new SharedStringsTable()) {
+                sst2.readFrom(bos.toInputStream());
+                assertEquals(limit, sst2.getUniqueCount());
+                for (int i = 0; i < limit; i++) {
+                    assertEquals("value" + i, sst2.getItemAt(i).getString());
+                }
+            }
+        }
+    }
+}
@@ -57,4 +57,16 @@ public class TestJapaneseSharedStrings {
             assertEquals("売上", sst.getItemAt(0).getString());
         }
     }
+
+    @Test
+    public void testOffHeapSharedStringsTable() throws Exception {
+        try (
+                InputStream stream = TestIOUtils.getResourceStream("jaSharedStrings.xml");
+                OffHeapSharedStringsTable sst = new OffHeapSharedStringsTable()
+        ) {
+            sst.readFrom(stream);
+            assertEquals("売上", sst.getItemAt(0).getString());
+            assertEquals("売上", sst.getString(0));
+        }
+    }
 }
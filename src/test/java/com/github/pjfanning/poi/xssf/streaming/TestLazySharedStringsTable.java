@@ -0,0 +1,203 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
+import org.apache.poi.xssf.model.SharedStringsTable;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+import static com.github.pjfanning.poi.xssf.streaming.TestIOUtils.getResourceStream;
+import static com.github.pjfanning.poi.xssf.streaming.TestTempFileSharedStringsTable.MINIMAL_XML;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class TestLazySharedStringsTable {
+    @Test
+    public void testReadXML() throws Exception {
+        testReadXML(false);
+    }
+
+    @Test
+    public void testTempFileLimit() throws Exception {
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             LazySharedStringsTable sst = new LazySharedStringsTable()) {
+            sst.configureLimits(TableLimits.builder().maxTempFileBytes(256).build());
+            assertThrows(TableLimitExceededException.class, () -> sst.readFrom(is));
+        }
+    }
+
+    @Test
+    public void testUniqueCountLimit() throws Exception {
+        ByteArrayInputStream is = new ByteArrayInputStream(manyItemsXml(10000, true).getBytes(StandardCharsets.UTF_8));
+        try (LazySharedStringsTable sst = new LazySharedStringsTable()) {
+            sst.configureLimits(TableLimits.builder().maxEntries(10).build());
+            assertThrows(TableLimitExceededException.class, () -> sst.readFrom(is));
+            // the declared uniqueCount is rejected before the items are read
+            assertTrue(is.available() > 0);
+        }
+    }
+
+    @Test
+    public void testEntryLimitWhileScanning() throws Exception {
+        ByteArrayInputStream is = new ByteArrayInputStream(manyItemsXml(10000, false).getBytes(StandardCharsets.UTF_8));
+        try (LazySharedStringsTable sst = new LazySharedStringsTable()) {
+            sst.configureLimits(TableLimits.builder().maxEntries(10).build());
+            assertThrows(TableLimitExceededException.class, () -> sst.readFrom(is));
+            assertTrue(is.available() > 0);
+        }
+    }
+
+    @Test
+    public void testReadXMLFullFormat() throws Exception {
+        testReadXML(true);
+    }
+
+    @Test
+    public void testReadOOXMLStrict() throws Exception {
+        testReadOOXMLStrict(false);
+    }
+
+    @Test
+    public void testReadOOXMLStrictFullFormat() throws Exception {
+        testReadOOXMLStrict(true);
+    }
+
+    @Test
+    public void testReadXMLWithPhoneticHints() throws Exception {
+        try (InputStream is = getResourceStream("sharedStrings-with-phonetic-hints.xml");
+             LazySharedStringsTable sst = new LazySharedStringsTable()) {
+            sst.readFrom(is);
+            assertEquals(3, sst.getUniqueCount());
+            assertEquals(3, sst.getCount());
+            assertEquals("Country", sst.getString(0));
+            assertEquals("City", sst.getString(1));
+            assertEquals("沖縄", sst.getString(2));
+        }
+    }
+
+    @Test
+    public void testPrefixesCommentsAndCData() throws Exception {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><!-- <si> -->" +
+                "<x:sst xmlns:x=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" count='5' uniqueCount=\"3\">" +
+                "<x:si><x:t>a &lt;si&gt; b</x:t></x:si>\n" +
+                "<x:si/>" +
+                "<x:si><x:t><![CDATA[<si>]]]]></x:t></x:si>" +
+                "</x:sst>";
+        try (LazySharedStringsTable sst = new LazySharedStringsTable()) {
+            sst.readFrom(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+            assertEquals(5, sst.getCount());
+            assertEquals(3, sst.getUniqueCount());
+            assertEquals("a <si> b", sst.getString(0));
+            assertEquals("", sst.getString(1));
+            assertEquals("<si>]]", sst.getString(2));
+            assertThrows(NoSuchElementException.class, () -> sst.getString(3));
+        }
+    }
+
+    @Test
+    public void testDoctypeRejected() throws Exception {
+        String xml = "<?xml version=\"1.0\"?><!DOCTYPE sst [<!ENTITY a \"b\">]><sst><si><t>&a;</t></si></sst>";
+        try (LazySharedStringsTable sst = new LazySharedStringsTable()) {
+            assertThrows(IOException.class,
+                    () -> sst.readFrom(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))));
+        }
+    }
+
+    @Test
+    public void testMinimalTable() throws IOException {
+        try (LazySharedStringsTable tbl = new LazySharedStringsTable()) {
+            tbl.readFrom(new ByteArrayInputStream(MINIMAL_XML.getBytes(StandardCharsets.UTF_8)));
+            assertEquals(49, tbl.getUniqueCount());
+            assertEquals(55, tbl.getCount());
+            assertEquals("bla", tbl.getItemAt(0).getString());
+            assertThrows(NoSuchElementException.class,
+                    () -> tbl.getItemAt(1).getString());
+        }
+    }
+
+    @Test
+    public void testHugeUniqueCount() throws IOException {
+        try (LazySharedStringsTable tbl = new LazySharedStringsTable()) {
+            tbl.readFrom(new ByteArrayInputStream(
+                    MINIMAL_XML.replace("49", "99999999999999999")
+                            .getBytes(StandardCharsets.UTF_8)));
+            assertEquals(1, tbl.getUniqueCount());
+            assertEquals(55, tbl.getCount());
+            assertEquals("bla", tbl.getItemAt(0).getString());
+        }
+    }
+
+    @Test
+    public void testReadOnly() throws Exception {
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             LazySharedStringsTable sst = new LazySharedStringsTable()) {
+            sst.readFrom(is);
+            assertThrows(UnsupportedOperationException.class,
+                    () -> sst.addSharedStringItem(new XSSFRichTextString("City")));
+        }
+    }
+
+    @Test
+    public void testWriteOut() throws Exception {
+        try (
+                InputStream is = getResourceStream("sharedStrings.xml");
+                UnsynchronizedByteArrayOutputStream bos = UnsynchronizedByteArrayOutputStream.builder().get();
+                LazySharedStringsTable sst = new LazySharedStringsTable(true)
+        ) {
+            sst.readFrom(is);
+            sst.writeTo(bos);
+            try (SharedStringsTable sst2 = new SharedStringsTable()) {
+                sst2.readFrom(bos.toInputStream());
+                assertEquals(38, sst2.getUniqueCount());
+                assertEquals(60, sst2.getCount());
+                for (int i = 0; i < 38; i++) {
+                    assertEquals(sst.getString(i), sst2.getItemAt(i).getString());
+                }
+            }
+        }
+    }
+
+    private void testReadOOXMLStrict(boolean fullFormat) throws Exception {
+        try (InputStream is = getResourceStream("strictSharedStrings.xml");
+             LazySharedStringsTable sst = new LazySharedStringsTable(fullFormat)) {
+            sst.readFrom(is);
+            assertEquals(15, sst.getUniqueCount());
+            assertEquals(19, sst.getCount());
+            assertEquals("Lorem", sst.getString(0));
+            assertEquals("The quick brown fox jumps over the lazy dog", sst.getString(14));
+            int expectedFormattingRuns = fullFormat ? 11: 0;
+            assertEquals(expectedFormattingRuns, sst.getItemAt(14).numFormattingRuns());
+        }
+    }
+
+    private void testReadXML(boolean fullFormat) throws Exception {
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             LazySharedStringsTable sst = new LazySharedStringsTable(fullFormat)) {
+            sst.readFrom(is);
+            assertEquals(60, sst.getCount());
+            assertEquals(38, sst.getUniqueCount());
+            assertEquals("City", sst.getItemAt(0).getString());
+            assertEquals("City", sst.getString(0));
+            assertEquals("Sum of Population", sst.getString(36));
+        }
+    }
+
+    private static String manyItemsXml(int items, boolean declareUniqueCount) {
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
+        sb.append("<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"");
+        if (declareUniqueCount) {
+            sb.append(" uniqueCount=\"").append(items).append('"');
+        }
+        sb.append('>');
+        for (int i = 0; i < items; i++) {
+            sb.append("<si><t>value").append(i).append("</t></si>");
+        }
+        return sb.append("</sst>").toString();
+    }
+}
@@ -42,6 +42,102 @@ public class TestMapBackedCommentsTable {
         testReadXML(true);
     }
 
+    @Test
+    public void testLimits() throws Exception {
+        try (
+                InputStream is = getResourceStream("comments1.xml");
+                MapBackedCommentsTable ct = new MapBackedCommentsTable()
+        ) {
+            ct.configureLimits(TableLimits.builder().maxEntries(2).build());
+            Assert.assertThrows(TableLimitExceededException.class, () -> ct.readFrom(is));
+            assertEquals(2, ct.getNumberOfComments());
+        }
+    }
+
+    @Test
+    public void testUpdatesDoNotGrowStoredChars() throws Exception {
+        try (
+                SXSSFWorkbook workbook = new SXSSFWorkbook();
+                MapBackedCommentsTable commentsTable = new MapBackedCommentsTable()
+        ) {
+            commentsTable.setSheet(workbook.createSheet());
+            XSSFComment comment = commentsTable.createNewComment(newAnchor(workbook, 0));
+            comment.setString("text");
+            comment.setAuthor("author");
+            long storedChars = commentsTable.getStoredChars();
+            for (int i = 0; i < 10; i++) {
+                comment.setString("text");
+                comment.setAuthor("author");
+            }
+            assertEquals(storedChars, commentsTable.getStoredChars());
+            // moving the comment replaces the old entry
+            comment.setAddress(1, 0);
+            assertEquals(1, commentsTable.getNumberOfComments());
+            assertEquals(storedChars, commentsTable.getStoredChars());
+            assertTrue(commentsTable.removeComment(new CellAddress(1, 0)));
+            assertEquals(0, commentsTable.getStoredChars());
+        }
+    }
+
+    @Test
+    public void testEstimateFootprint() throws Exception {
+        try (
+                SXSSFWorkbook workbook = new SXSSFWorkbook();
+                MapBackedCommentsTable commentsTable = new MapBackedCommentsTable()
+        ) {
+            commentsTable.setSheet(workbook.createSheet());
+            long empty = commentsTable.estimateFootprint().getHeapBytes();
+            XSSFComment comment = commentsTable.createNewComment(newAnchor(workbook, 0));
+            comment.setString("text");
+            comment.setAuthor("author");
+            long oneComment = commentsTable.estimateFootprint().getHeapBytes();
+            assertTrue(oneComment > empty + 2 * commentsTable.getStoredChars());
+            // updates do not grow the estimate
+            for (int i = 0; i < 10; i++) {
+                comment.setString("text");
+            }
+            assertEquals(oneComment, commentsTable.estimateFootprint().getHeapBytes());
+            assertTrue(commentsTable.removeComment(new CellAddress(0, 0)));
+            // the author is still there
+            long authorsOnly = commentsTable.estimateFootprint().getHeapBytes();
+            assertTrue(authorsOnly > empty);
+            assertTrue(authorsOnly < oneComment);
+        }
+    }
+
+    @Test
+    public void testLimitsOnUpdate() throws Exception {
+        try (
+                SXSSFWorkbook workbook = new SXSSFWorkbook();
+                MapBackedCommentsTable commentsTable = new MapBackedCommentsTable()
+        ) {
+            commentsTable.setSheet(workbook.createSheet());
+            XSSFComment comment = commentsTable.createNewComment(newAnchor(workbook, 0));
+            comment.setString("text");
+            commentsTable.configureLimits(TableLimits.builder().maxTotalChars(20).maxEntryLength(10).build());
+            // updating the comment many times stays within the limit
+            for (int i = 0; i < 10; i++) {
+                comment.setString("text" + i);
+            }
+            Assert.assertThrows(TableLimitExceededException.class, () -> comment.setString("a much longer text"));
+            assertEquals("text9", commentsTable.findCellComment(new CellAddress("A1")).getString().getString());
+            // a replace that fails leaves the comment at its old address
+            commentsTable.configureLimits(TableLimits.builder().maxEntryLength(2).build());
+            Assert.assertThrows(TableLimitExceededException.class, () -> comment.setAddress(1, 0));
+            assertEquals(1, commentsTable.getNumberOfComments());
+            assertEquals("text9", commentsTable.findCellComment(new CellAddress("A1")).getString().getString());
+        }
+    }
+
+    private static ClientAnchor newAnchor(SXSSFWorkbook workbook, int row) {
+        ClientAnchor anchor = workbook.getCreationHelper().createClientAnchor();
+        anchor.setCol1(0);
+        anchor.setCol2(1);
+        anchor.setRow1(row);
+        anchor.setRow2(row);
+        return anchor;
+    }
+
     @Test
     public void testWriteEmpty() throws Exception {
         try (
@@ -16,6 +16,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.UUID;
 
@@ -25,6 +27,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 
 public class TestMapBackedSharedStringsTable {
     @Test
@@ -95,6 +98,204 @@ public class TestMapBackedSharedStringsTable {
         }
     }
 
+    @Test
+    public void testAddAfterRead() throws Exception {
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             MapBackedSharedStringsTable sst = new MapBackedSharedStringsTable()) {
+            sst.readFrom(is);
+            assertEquals(0, sst.addSharedStringItem(new XSSFRichTextString("City")));
+            assertEquals(36, sst.addSharedStringItem(new XSSFRichTextString("Sum of Population")));
+            assertEquals(38, sst.addSharedStringItem(new XSSFRichTextString("New City")));
+            assertEquals(38, sst.addSharedStringItem(new XSSFRichTextString("New City")));
+            assertEquals(39, sst.getUniqueCount());
+            assertEquals(64, sst.getCount());
+        }
+    }
+
+    @Test
+    public void testDeclaredUniqueCountOverLimit() throws Exception {
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             MapBackedSharedStringsTable sst = new MapBackedSharedStringsTable()) {
+            sst.configureLimits(TableLimits.builder().maxEntries(10).build());
+            // the part declares uniqueCount=38, so no entries are read
+            assertThrows(TableLimitExceededException.class, () -> sst.readFrom(is));
+            assertEquals(0, sst.getUniqueCount());
+        }
+    }
+
+    @Test
+    public void testLimits() throws Exception {
+        try (MapBackedSharedStringsTable sst = new MapBackedSharedStringsTable()) {
+            sst.configureLimits(TableLimits.builder().maxEntries(3).maxEntryLength(5).maxTotalChars(12).build());
+            assertEquals(0, sst.addSharedStringItem(new XSSFRichTextString("abcd")));
+            assertThrows(TableLimitExceededException.class,
+                    () -> sst.addSharedStringItem(new XSSFRichTextString("abcdef")));
+            assertEquals(1, sst.addSharedStringItem(new XSSFRichTextString("efgh")));
+            // duplicates do not count against the limits
+            assertEquals(0, sst.addSharedStringItem(new XSSFRichTextString("abcd")));
+            assertThrows(TableLimitExceededException.class,
+                    () -> sst.addSharedStringItem(new XSSFRichTextString("ijklm")));
+            assertEquals(2, sst.addSharedStringItem(new XSSFRichTextString("ijkl")));
+            assertThrows(TableLimitExceededException.class,
+                    () -> sst.addSharedStringItem(new XSSFRichTextString("")));
+            assertEquals(3, sst.getUniqueCount());
+            assertEquals("ijkl", sst.getString(2));
+        }
+    }
+
+    @Test
+    public void testEstimateFootprint() throws Exception {
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             MapBackedSharedStringsTable sst = new MapBackedSharedStringsTable()) {
+            assertEquals(0, sst.estimateFootprint().getEntryCount());
+            sst.readFrom(is);
+            TableFootprint footprint = sst.estimateFootprint();
+            assertEquals(38, footprint.getEntryCount());
+            assertTrue(footprint.getHeapBytes() > 38 * 2);
+            assertEquals(0, footprint.getOffHeapBytes());
+            assertEquals(0, footprint.getTempFileBytes());
+            assertEquals(footprint.getHeapBytes() / 38.0, footprint.getAverageEntryBytes(), 0.001);
+            sst.freeze();
+            TableFootprint frozen = sst.estimateFootprint();
+            assertEquals(38, frozen.getEntryCount());
+            assertTrue(frozen.getHeapBytes() < footprint.getHeapBytes());
+        }
+    }
+
+    @Test
+    public void testDedupWindow() throws Exception {
+        try (MapBackedSharedStringsTable sst = new MapBackedSharedStringsTable()) {
+            sst.configureDedupWindow(2);
+            assertEquals(0, sst.addSharedStringItem(new XSSFRichTextString("a")));
+            assertEquals(1, sst.addSharedStringItem(new XSSFRichTextString("b")));
+            assertEquals(0, sst.addSharedStringItem(new XSSFRichTextString("a")));
+            // "b" is the least recently used value, so it drops out of the window
+            assertEquals(2, sst.addSharedStringItem(new XSSFRichTextString("c")));
+            assertEquals(3, sst.addSharedStringItem(new XSSFRichTextString("b")));
+            assertEquals(2, sst.addSharedStringItem(new XSSFRichTextString("c")));
+            assertEquals(4, sst.getUniqueCount());
+            assertEquals(6, sst.getCount());
+            assertEquals("b", sst.getString(3));
+            assertThrows(IllegalArgumentException.class, () -> sst.configureDedupWindow(-2));
+        }
+    }
+
+    @Test
+    public void testFreeze() throws Exception {
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             MapBackedSharedStringsTable sst = new MapBackedSharedStringsTable()) {
+            sst.readFrom(is);
+            assertFalse(sst.isFrozen());
+            sst.freeze();
+            assertTrue(sst.isFrozen());
+            assertEquals(38, sst.getUniqueCount());
+            assertEquals("City", sst.getString(0));
+            assertEquals("City", sst.getItemAt(0).getString());
+            assertThrows(NoSuchElementException.class, () -> sst.getString(38));
+            assertThrows(IllegalStateException.class,
+                    () -> sst.addSharedStringItem(new XSSFRichTextString("New City")));
+        }
+    }
+
+    @Test
+    public void testFreezeBigUniqueCount() throws Exception {
+        for (String uniqueCount : new String[]{"2000000000", Integer.toString(Integer.MAX_VALUE)}) {
+            try (MapBackedSharedStringsTable sst = new MapBackedSharedStringsTable()) {
+                sst.readFrom(new ByteArrayInputStream(
+                        MINIMAL_XML.replace("49", uniqueCount).getBytes(StandardCharsets.UTF_8)));
+                sst.freeze();
+                // the snapshot is sized to the entries that were read, not the declared count
+                assertTrue(sst.estimateFootprint().getHeapBytes() < 1024);
+                assertEquals(Integer.parseInt(uniqueCount), sst.getUniqueCount());
+                assertEquals("bla", sst.getString(0));
+                assertThrows(NoSuchElementException.class, () -> sst.getString(1));
+                assertThrows(NoSuchElementException.class, () -> sst.getString(Integer.MAX_VALUE - 1));
+            }
+        }
+    }
+
+    @Test
+    public void testCompressedStringsWithWrongUniqueCount() throws Exception {
+        try (MapBackedSharedStringsTable sst = new MapBackedSharedStringsTable(false, true)) {
+            // uniqueCount is 49 but there is only 1 entry
+            sst.readFrom(new ByteArrayInputStream(MINIMAL_XML.getBytes(StandardCharsets.UTF_8)));
+            assertEquals(49, sst.addSharedStringItem(new XSSFRichTextString("new")));
+            assertEquals(0, sst.addSharedStringItem(new XSSFRichTextString("bla")));
+            assertEquals("new", sst.getString(49));
+            assertThrows(NoSuchElementException.class, () -> sst.getString(1));
+        }
+    }
+
+    @Test
+    public void testFullFormatDedupMatchesPoi() throws Exception {
+        XSSFFont bold = new XSSFFont();
+        bold.setBold(true);
+        XSSFFont boldCopy = new XSSFFont();
+        boldCopy.setBold(true);
+        XSSFFont italic = new XSSFFont();
+        italic.setItalic(true);
+        List<XSSFRichTextString> items = new ArrayList<>();
+        items.add(new XSSFRichTextString("text"));
+        items.add(new XSSFRichTextString("text"));
+        items.add(richText("text", bold, 0, 4));
+        items.add(richText("text", boldCopy, 0, 4));
+        items.add(richText("text", italic, 0, 4));
+        items.add(richText("text", bold, 0, 2));
+        items.add(richText("text", boldCopy, 0, 2));
+        items.add(new XSSFRichTextString("other"));
+        try (
+                MapBackedSharedStringsTable sst = new MapBackedSharedStringsTable(true);
+                SharedStringsTable poiSst = new SharedStringsTable()
+        ) {
+            // the same rich text is stored once, and the same text with other formatting is a new entry
+            for (XSSFRichTextString item : items) {
+                assertEquals(poiSst.addSharedStringItem(item), sst.addSharedStringItem(item));
+            }
+            assertEquals(poiSst.getUniqueCount(), sst.getUniqueCount());
+            assertEquals(5, sst.getUniqueCount());
+        }
+    }
+
+    private static XSSFRichTextString richText(String text, XSSFFont font, int startIndex, int endIndex) {
+        XSSFRichTextString richText = new XSSFRichTextString(text);
+        richText.applyFont(startIndex, endIndex, font);
+        return richText;
+    }
+
+    @Test
+    public void testLowUniqueCount() throws Exception {
+        testLowUniqueCount(false);
+    }
+
+    @Test
+    public void testCompressedStringsWithLowUniqueCount() throws Exception {
+        testLowUniqueCount(true);
+    }
+
+    private void testLowUniqueCount(boolean compressStrings) throws Exception {
+        String xml = "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" uniqueCount=\"1\">" +
+                "<si><t>a</t></si><si><t>b</t></si><si><t>c</t></si></sst>";
+        try (MapBackedSharedStringsTable sst = new MapBackedSharedStringsTable(false, compressStrings)) {
+            sst.readFrom(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+            assertEquals(1, sst.getUniqueCount());
+            // the new entry takes the index after uniqueCount and replaces the entry that was read there
+            assertEquals(1, sst.addSharedStringItem(new XSSFRichTextString("new")));
+            assertEquals("a", sst.getString(0));
+            assertEquals("new", sst.getString(1));
+            assertEquals("c", sst.getString(2));
+        }
+    }
+
+    @Test
+    public void testCompressedStrings() throws Exception {
+        testCompressedStrings(false);
+    }
+
+    @Test
+    public void testCompressedStringsFullFormat() throws Exception {
+        testCompressedStrings(true);
+    }
+
     @Test
     public void testWrite() throws Exception {
         testWrite(10, false);
@@ -170,6 +371,53 @@ public class TestMapBackedSharedStringsTable {
         }
     }
 
+    @Test
+    public void testWriteOutKeepsIndexOrder() throws Exception {
+        final int limit = ChunkedStringArray.CHUNK_SIZE * 2 + 10;
+        try (
+                UnsynchronizedByteArrayOutputStream bos = UnsynchronizedByteArrayOutputStream.builder().get();
+                MapBackedSharedStringsTable sst = new MapBackedSharedStringsTable()
+        ) {
+            for (int i = 0; i < limit; i++) {
+                assertEquals(i, sst.addSharedStringItem(new XSSFRichTextString("value" + i)));
+            }
+            sst.writeTo(bos);
+            try (SharedStringsTable sst2 = new SharedStringsTable()) {
+                sst2.readFrom(bos.toInputStream());
+                assertEquals(limit, sst2.getUniqueCount());
+                for (int i = 0; i < limit; i++) {
+                    assertEquals("value" + i, sst2.getItemAt(i).getString());
+                }
+            }
+        }
+    }
+
+    private void testCompressedStrings(boolean fullFormat) throws Exception {
+        final int limit = 5000;
+        try (
+                UnsynchronizedByteArrayOutputStream bos = UnsynchronizedByteArrayOutputStream.builder().get();
+                MapBackedSharedStringsTable sst = new MapBackedSharedStringsTable(fullFormat, true)
+        ) {
+            for (int i = 0; i < limit; i++) {
+                assertEquals(i, sst.addSharedStringItem(new XSSFRichTextString("value" + i)));
+            }
+            for (int i = 0; i < limit; i++) {
+                assertEquals(i, sst.addSharedStringItem(new XSSFRichTextString("value" + i)));
+                assertEquals("value" + i, sst.getString(i));
+            }
+            assertEquals(limit, sst.getUniqueCount());
+            sst.writeTo(bos);
+            try (MapBackedSharedStringsTable sst2 = new MapBackedSharedStringsTable(fullFormat, true)) {
+                sst2.readFrom(bos.toInputStream());
+                assertEquals(limit, sst2.getUniqueCount());
+                assertEquals(limit * 2, sst2.getCount());
+                for (int i = limit - 1; i >= 0; i--) {
+                    assertEquals("value" + i, sst2.getString(i));
+                }
+            }
+        }
+    }
+
     private void testWrite(int size, boolean fullFormat) throws Exception {
         java.util.Random rnd = new java.util.Random();
         byte[] bytes = new byte[1028];
@@ -0,0 +1,78 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.h2.mvstore.MVStore;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class TestMapStringIndex {
+    @Test
+    public void testPutAndFind() {
+        MapStringIndex index = new MapStringIndex();
+        index.put("value", 3);
+        assertEquals(3, index.find("value"));
+        assertEquals(-1, index.find("other"));
+        index.clear();
+        assertEquals(-1, index.find("value"));
+    }
+
+    @Test
+    public void testDeferral() {
+        MapStringIndex index = new MapStringIndex();
+        index.configureDeferral(3);
+        index.put("a", 0);
+        index.put("b", 1);
+        // the pending entries are found before they are written to the map
+        assertEquals(1, index.find("b"));
+        assertEquals(0, index.getMapSize());
+        index.put("c", 2);
+        assertEquals(3, index.getMapSize());
+        index.put("d", 3);
+        index.configureDeferral(0);
+        assertEquals(4, index.getMapSize());
+        assertEquals(3, index.find("d"));
+    }
+
+    @Test
+    public void testMoveTo() throws Exception {
+        TempFileStore store = new TempFileStore("test", TempFileStoreOptions.DEFAULT, false, null);
+        try {
+            MapStringIndex index = new MapStringIndex();
+            index.put("a", 0);
+            MVStore mvStore = store.open();
+            index.moveTo(mvStore);
+            assertFalse(mvStore.getMapNames().isEmpty());
+            index.put("b", 1);
+            assertEquals(0, index.find("a"));
+            assertEquals(1, index.find("b"));
+            assertEquals(2, index.getMapSize());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testBuildFromSpilledRuns() throws Exception {
+        TempFileStore store = new TempFileStore("test", TempFileStoreOptions.DEFAULT, false, null);
+        try {
+            TempFileStrings strings = new TempFileStrings(false);
+            MapStringIndex index = new MapStringIndex();
+            MVStore mvStore = store.open();
+            strings.moveTo(mvStore);
+            index.moveTo(mvStore);
+            for (int i = 0; i < 1000; i++) {
+                strings.put(i, "value" + (i % 500));
+            }
+            index.setSortRunBytes(4096);
+            index.build(strings);
+            // the highest index wins and the spilled runs are removed
+            assertEquals(500, index.getMapSize());
+            assertEquals(500, index.find("value0"));
+            assertEquals(999, index.find("value499"));
+            assertEquals(2, mvStore.getMapNames().size());
+        } finally {
+            store.close();
+        }
+    }
+}
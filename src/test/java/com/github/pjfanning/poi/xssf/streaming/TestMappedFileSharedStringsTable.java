@@ -0,0 +1,10 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import java.io.IOException;
+
+public class TestMappedFileSharedStringsTable extends SharedStringsTableTestBase {
+    @Override
+    protected SharedStringsTableBase newTable(boolean fullFormat) throws IOException {
+        return new MappedFileSharedStringsTable(fullFormat);
+    }
+}
@@ -0,0 +1,104 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+public class TestMappedStringLog {
+    @Test
+    public void testAppendAndGet() throws Exception {
+        try (MappedStringLog log = new MappedStringLog("poi-shared-strings-test")) {
+            long first = log.append("hello");
+            long empty = log.append("");
+            long third = log.append("沖縄");
+            assertEquals("hello", log.get(first));
+            assertEquals("", log.get(empty));
+            assertEquals("沖縄", log.get(third));
+        }
+    }
+
+    @Test
+    public void testCloseTwice() throws Exception {
+        MappedStringLog log = new MappedStringLog("poi-shared-strings-test");
+        log.append("hello");
+        File file = log.getFile();
+        log.close();
+        assertFalse(file.exists());
+        log.close();
+        assertEquals(0, log.length());
+    }
+
+    @Test
+    public void testEntriesDoNotSpanSegments() throws Exception {
+        // 1KB segments, so that entries regularly hit a segment boundary
+        try (MappedStringLog log = new MappedStringLog("poi-shared-strings-test", 10)) {
+            List<Long> offsets = new ArrayList<>();
+            List<String> values = new ArrayList<>();
+            for (int i = 0; i < 5000; i++) {
+                char[] chars = new char[i % 200];
+                Arrays.fill(chars, (char) ('a' + i % 26));
+                String value = new String(chars) + i;
+                values.add(value);
+                offsets.add(log.append(value));
+                if (i % 7 == 0) {
+                    // mix reads in with the writes
+                    int j = i / 2;
+                    assertEquals(values.get(j), log.get(offsets.get(j)));
+                }
+            }
+            for (int i = 0; i < values.size(); i++) {
+                long offset = offsets.get(i);
+                assertEquals(offset >>> 10, (offset + values.get(i).length()) >>> 10);
+                assertEquals(values.get(i), log.get(offset));
+            }
+            // each segment is mapped once
+            assertEquals((log.length() >>> 10) + 1, log.getSegmentCount());
+            char[] tooBig = new char[2000];
+            assertThrows(IllegalArgumentException.class, () -> log.append(new String(tooBig)));
+        }
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        try (MappedStringLog log = new MappedStringLog("poi-shared-strings-test", 12)) {
+            int count = 20000;
+            long[] offsets = new long[count];
+            AtomicInteger published = new AtomicInteger();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread[] readers = new Thread[4];
+            for (int t = 0; t < readers.length; t++) {
+                readers[t] = new Thread(() -> {
+                    try {
+                        int seen;
+                        while ((seen = published.get()) < count) {
+                            for (int i = Math.max(0, seen - 50); i < seen; i++) {
+                                assertEquals("value" + i, log.get(offsets[i]));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                });
+                readers[t].start();
+            }
+            for (int i = 0; i < count; i++) {
+                offsets[i] = log.append("value" + i);
+                published.set(i + 1);
+            }
+            for (Thread reader : readers) {
+                reader.join();
+            }
+            assertNull(failure.get());
+        }
+    }
+}
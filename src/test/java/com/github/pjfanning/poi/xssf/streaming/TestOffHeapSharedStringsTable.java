@@ -0,0 +1,28 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.junit.Test;
+
+import java.io.InputStream;
+
+import static com.github.pjfanning.poi.xssf.streaming.TestIOUtils.getResourceStream;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestOffHeapSharedStringsTable extends SharedStringsTableTestBase {
+    @Override
+    protected SharedStringsTableBase newTable(boolean fullFormat) {
+        return new OffHeapSharedStringsTable(fullFormat);
+    }
+
+    @Test
+    public void testEstimateFootprint() throws Exception {
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             OffHeapSharedStringsTable sst = new OffHeapSharedStringsTable()) {
+            sst.readFrom(is);
+            TableFootprint footprint = sst.estimateFootprint();
+            assertEquals(38, footprint.getEntryCount());
+            assertTrue(footprint.getOffHeapBytes() > 0);
+            assertEquals(0, footprint.getTempFileBytes());
+        }
+    }
+}
@@ -18,7 +18,9 @@ public class TestSXSSFWorkbookWithTempFileSharedStringsTable {
     public void useStreamingSharedStringsTable() throws Exception {
         SXSSFFactory factory0 = new SXSSFFactory();
         SXSSFFactory factory1 = new SXSSFFactory().encryptTempFiles(true);
-        for (SXSSFFactory factory : new SXSSFFactory[]{factory0, factory1}) {
+        SXSSFFactory factory2 = new SXSSFFactory()
+                .storeOptions(TempFileStoreOptions.builder().cacheSize(1).compress().build());
+        for (SXSSFFactory factory : new SXSSFFactory[]{factory0, factory1, factory2}) {
             try (SXSSFWorkbook wb = new SXSSFWorkbook(new XSSFWorkbook(factory),
                         SXSSFWorkbook.DEFAULT_WINDOW_SIZE, true, true)) {
                 SharedStringsTable sss = POITestUtils.getFieldValue(SXSSFWorkbook.class, wb, SharedStringsTable.class, "_sharedStringSource");
@@ -0,0 +1,87 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestSequentialReadAhead {
+    @Test
+    public void testAscendingRun() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        List<String> loads = Collections.synchronizedList(new ArrayList<>());
+        SequentialReadAhead readAhead = new SequentialReadAhead(100, (from, to) -> {
+            loads.add(from + "-" + to);
+            latch.countDown();
+        });
+        for (int i = 0; i < 2; i++) {
+            readAhead.onRead(i);
+            // repeated lookups of the same index do not break the run
+            readAhead.onRead(i);
+        }
+        assertTrue(loads.isEmpty());
+        // the third ascending lookup starts loading the entries that follow it
+        readAhead.onRead(2);
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("3-103"), loads);
+        readAhead.close();
+    }
+
+    @Test
+    public void testRandomAccess() throws Exception {
+        List<String> loads = Collections.synchronizedList(new ArrayList<>());
+        SequentialReadAhead readAhead = new SequentialReadAhead(100, (from, to) -> loads.add(from + "-" + to));
+        int[] indexes = {50, 7, 300, 12, 13, 5000, 2};
+        for (int idx : indexes) {
+            readAhead.onRead(idx);
+        }
+        readAhead.close();
+        assertTrue(loads.isEmpty());
+    }
+
+    @Test
+    public void testCloseWaitsForLoad() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> loads = Collections.synchronizedList(new ArrayList<>());
+        SequentialReadAhead readAhead = new SequentialReadAhead(100, (from, to) -> {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            loads.add(from + "-" + to);
+        });
+        for (int i = 0; i < 3; i++) {
+            readAhead.onRead(i);
+        }
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        Thread closer = new Thread(readAhead::close);
+        closer.start();
+        closer.join(200);
+        assertTrue("close() should wait for the block that is being loaded", closer.isAlive());
+        release.countDown();
+        closer.join(10000);
+        assertFalse(closer.isAlive());
+        assertEquals(Collections.singletonList("3-103"), loads);
+    }
+
+    @Test
+    public void testNoLoadAfterClose() throws Exception {
+        List<String> loads = Collections.synchronizedList(new ArrayList<>());
+        SequentialReadAhead readAhead = new SequentialReadAhead(100, (from, to) -> loads.add(from + "-" + to));
+        readAhead.close();
+        for (int i = 0; i < 10; i++) {
+            readAhead.onRead(i);
+        }
+        assertTrue(loads.isEmpty());
+    }
+}
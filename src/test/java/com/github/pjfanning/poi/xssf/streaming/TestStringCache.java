@@ -0,0 +1,51 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestStringCache {
+    @Test
+    public void testHitsAndMisses() {
+        StringCache cache = new StringCache(10, Long.MAX_VALUE);
+        assertNull(cache.get(1));
+        cache.put(1, "one");
+        assertEquals("one", cache.get(1));
+        assertEquals("one", cache.get(1));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testEntryLimit() {
+        StringCache cache = new StringCache(3, Long.MAX_VALUE);
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.put(3, "three");
+        // 1 is now the most recently used entry, so 2 is evicted next
+        assertEquals("one", cache.get(1));
+        cache.put(4, "four");
+        assertEquals(3, cache.size());
+        assertNull(cache.get(2));
+        assertEquals("one", cache.get(1));
+        assertEquals("three", cache.get(3));
+        assertEquals("four", cache.get(4));
+    }
+
+    @Test
+    public void testByteLimit() {
+        // room for about 2 entries of 100 chars
+        StringCache cache = new StringCache(100, 600);
+        String value = new String(new char[100]).replace('\0', 'x');
+        cache.put(1, value);
+        cache.put(2, value);
+        cache.put(3, value);
+        assertEquals(2, cache.size());
+        assertNull(cache.get(1));
+        // too big to cache at all
+        cache.put(4, value + value + value);
+        assertEquals(2, cache.size());
+        assertNull(cache.get(4));
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
+import org.apache.poi.xssf.model.SharedStringsTable;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.NoSuchElementException;
+
+import static com.github.pjfanning.poi.xssf.streaming.TestIOUtils.getResourceStream;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class TestSymbolCompressedSharedStringsTable {
+    @Test
+    public void testReadXML() throws Exception {
+        testReadXML(false);
+    }
+
+    @Test
+    public void testReadXMLFullFormat() throws Exception {
+        testReadXML(true);
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        testWrite(false);
+    }
+
+    @Test
+    public void testWriteFullFormat() throws Exception {
+        testWrite(true);
+    }
+
+    @Test
+    public void testMissingEntry() throws Exception {
+        try (SymbolCompressedSharedStringsTable sst = new SymbolCompressedSharedStringsTable()) {
+            assertThrows(NoSuchElementException.class, () -> sst.getString(0));
+        }
+    }
+
+    private void testReadXML(boolean fullFormat) throws Exception {
+        // train on the first 10 entries, so that most of the entries are compressed
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             SymbolCompressedSharedStringsTable sst = new SymbolCompressedSharedStringsTable(fullFormat, 10)) {
+            sst.readFrom(is);
+            assertTrue(sst.isTrained());
+            assertEquals(60, sst.getCount());
+            assertEquals(38, sst.getUniqueCount());
+            assertEquals("City", sst.getItemAt(0).getString());
+            assertEquals("City", sst.getString(0));
+            assertEquals(36, sst.addSharedStringItem(new XSSFRichTextString("Sum of Population")));
+            assertEquals(38, sst.addSharedStringItem(new XSSFRichTextString("New City")));
+            assertEquals("New City", sst.getString(38));
+        }
+    }
+
+    private void testWrite(boolean fullFormat) throws Exception {
+        final int limit = 500;
+        try (
+                UnsynchronizedByteArrayOutputStream bos = UnsynchronizedByteArrayOutputStream.builder().get();
+                SymbolCompressedSharedStringsTable sst = new SymbolCompressedSharedStringsTable(fullFormat, 100)
+        ) {
+            for (int i = 0; i < limit; i++) {
+                assertEquals(i, sst.addSharedStringItem(new XSSFRichTextString("value" + i)));
+                assertEquals(i >= 99, sst.isTrained());
+            }
+            for (int i = 0; i < limit; i++) {
+                assertEquals(i, sst.addSharedStringItem(new XSSFRichTextString("value" + i)));
+                assertEquals("value" + i, sst.getString(i));
+            }
+            assertEquals(limit, sst.getUniqueCount());
+            assertEquals(limit * 2, sst.getCount());
+            sst.writeTo(bos);
+            try (SharedStringsTable sst2 = new SharedStringsTable()) {
+                sst2.readFrom(bos.toInputStream());
+                assertEquals(limit, sst2.getUniqueCount());
+                for (int i = 0; i < limit; i++) {
+                    assertEquals("value" + i, sst2.getItemAt(i).getString());
+                }
+            }
+        }
+        try (SymbolCompressedSharedStringsTable sst = new SymbolCompressedSharedStringsTable(fullFormat)) {
+            sst.addSharedStringItem(new XSSFRichTextString("only entry"));
+            assertFalse(sst.isTrained());
+            assertEquals("only entry", sst.getString(0));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestSymbolTable {
+    private static final String[] WORDS = {"Street", "Avenue", "London", "Paris", "Status: OK", "Status: FAILED", "沖縄"};
+
+    @Test
+    public void testRoundTrip() {
+        List<String> values = sampleValues(2000);
+        SymbolTable table = SymbolTable.train(toSamples(values.subList(0, 500)));
+        long rawLength = 0;
+        long encodedLength = 0;
+        for (String value : values) {
+            byte[] encoded = table.encode(value);
+            assertEquals(value, table.decode(encoded));
+            rawLength += value.getBytes(StandardCharsets.UTF_8).length;
+            encodedLength += encoded.length;
+        }
+        assertTrue("expected the values to compress at least 2x", rawLength > encodedLength * 2);
+    }
+
+    @Test
+    public void testUntrainedBytes() {
+        SymbolTable table = SymbolTable.train(toSamples(sampleValues(100)));
+        String[] values = {"", "\u0000", "￿", "xyzzy", "Ωμέγα"};
+        for (String value : values) {
+            assertEquals(value, table.decode(table.encode(value)));
+        }
+    }
+
+    @Test
+    public void testEmptyTable() {
+        SymbolTable table = SymbolTable.train(Collections.emptyList());
+        assertEquals(0, table.size());
+        assertEquals("abc", table.decode(table.encode("abc")));
+    }
+
+    private static List<String> sampleValues(int count) {
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(WORDS[i % WORDS.length] + " " + (i % 100) + " " + WORDS[(i / 7) % WORDS.length]);
+        }
+        return values;
+    }
+
+    private static List<byte[]> toSamples(List<String> values) {
+        List<byte[]> samples = new ArrayList<>(values.size());
+        for (String value : values) {
+            samples.add(value.getBytes(StandardCharsets.UTF_8));
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,21 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestTableFootprint {
+    @Test
+    public void testTotals() {
+        TableFootprint footprint = new TableFootprint(100, 50, 250, 4);
+        assertEquals(400, footprint.getTotalBytes());
+        assertEquals(100.0, footprint.getAverageEntryBytes(), 0.001);
+    }
+
+    @Test
+    public void testEmpty() {
+        TableFootprint footprint = new TableFootprint(64, 0, 0, 0);
+        assertEquals(0, footprint.getEntryCount());
+        assertEquals(0.0, footprint.getAverageEntryBytes(), 0.001);
+    }
+}
@@ -0,0 +1,61 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class TestTableLimits {
+    @Test
+    public void testNone() {
+        TableLimits limits = TableLimits.NONE;
+        assertEquals(-1, limits.getMaxEntries());
+        assertEquals(-1, limits.getMaxTotalChars());
+        assertEquals(-1, limits.getMaxEntryLength());
+        assertEquals(-1, limits.getMaxTempFileBytes());
+        assertFalse(limits.limitsTempFileBytes());
+        limits.checkEntry("test", Integer.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+        limits.checkTempFileBytes("test", Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testBuilder() {
+        TableLimits limits = TableLimits.builder()
+                .maxEntries(10)
+                .maxTotalChars(1000)
+                .maxEntryLength(100)
+                .maxTempFileBytes(4096)
+                .build();
+        assertEquals(10, limits.getMaxEntries());
+        assertEquals(1000, limits.getMaxTotalChars());
+        assertEquals(100, limits.getMaxEntryLength());
+        assertEquals(4096, limits.getMaxTempFileBytes());
+        assertTrue(limits.limitsTempFileBytes());
+    }
+
+    @Test
+    public void testChecks() {
+        TableLimits limits = TableLimits.builder()
+                .maxEntries(10)
+                .maxTotalChars(1000)
+                .maxEntryLength(100)
+                .maxTempFileBytes(4096)
+                .build();
+        limits.checkEntry("test", 100, 10, 1000);
+        limits.checkTempFileBytes("test", 4096);
+        assertThrows(TableLimitExceededException.class, () -> limits.checkEntry("test", 101, 1, 101));
+        assertThrows(TableLimitExceededException.class, () -> limits.checkEntry("test", 1, 11, 1));
+        assertThrows(TableLimitExceededException.class, () -> limits.checkEntry("test", 1, 1, 1001));
+        assertThrows(TableLimitExceededException.class, () -> limits.checkTempFileBytes("test", 4097));
+    }
+
+    @Test
+    public void testInvalidValues() {
+        assertThrows(IllegalArgumentException.class, () -> TableLimits.builder().maxEntries(-1));
+        assertThrows(IllegalArgumentException.class, () -> TableLimits.builder().maxTotalChars(-1));
+        assertThrows(IllegalArgumentException.class, () -> TableLimits.builder().maxEntryLength(-1));
+        assertThrows(IllegalArgumentException.class, () -> TableLimits.builder().maxTempFileBytes(-1));
+    }
+}
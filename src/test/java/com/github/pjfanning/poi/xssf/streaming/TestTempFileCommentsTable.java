@@ -44,6 +44,30 @@ public class TestTempFileCommentsTable {
         testReadXML(false, true);
     }
 
+    @Test
+    public void testReadXMLWithStoreOptions() throws Exception {
+        TempFileStoreOptions options = TempFileStoreOptions.builder()
+                .cacheSize(1)
+                .compress()
+                .autoCommitDelay(0)
+                .fileStoreType(TempFileStoreOptions.FileStoreType.NIO)
+                .build();
+        testReadXML(false, false, options);
+    }
+
+    @Test
+    public void testReadXMLWithInMemoryStore() throws Exception {
+        TempFileStoreOptions options = TempFileStoreOptions.builder()
+                .fileStoreType(TempFileStoreOptions.FileStoreType.NIO_MEM_LZF)
+                .build();
+        testReadXML(true, false, options);
+    }
+
+    @Test
+    public void testReadXMLWithBulkLoad() throws Exception {
+        testReadXML(true, false, TempFileStoreOptions.builder().bulkLoad(true).build());
+    }
+
     @Test
     public void testWriteEmpty() throws Exception {
         try (
@@ -135,6 +159,41 @@ public class TestTempFileCommentsTable {
         }
     }
 
+    @Test
+    public void testLazyStore() throws Exception {
+        TempFileStoreOptions options = TempFileStoreOptions.builder().inMemoryEntries(2).build();
+        try (
+                SXSSFWorkbook workbook = new SXSSFWorkbook();
+                TempFileCommentsTable commentsTable = new TempFileCommentsTable(false, false, options)
+        ) {
+            CreationHelper factory = workbook.getCreationHelper();
+            SXSSFSheet sheet = workbook.createSheet();
+            commentsTable.setSheet(sheet);
+            for (int i = 0; i < 4; i++) {
+                if (i == 2) {
+                    assertFalse("small tables should not create a temp file", commentsTable.isStoreOpen());
+                }
+                SXSSFRow row = sheet.createRow(i);
+                row.createCell(0);
+                ClientAnchor anchor = factory.createClientAnchor();
+                anchor.setCol1(0);
+                anchor.setCol2(1);
+                anchor.setRow1(row.getRowNum());
+                anchor.setRow2(row.getRowNum());
+                XSSFComment comment = commentsTable.createNewComment(anchor);
+                comment.setString("comment" + i);
+                comment.setAuthor("author" + i);
+            }
+            assertTrue(commentsTable.isStoreOpen());
+            assertEquals(4, commentsTable.getNumberOfComments());
+            for (int i = 0; i < 4; i++) {
+                XSSFComment comment = commentsTable.findCellComment(new CellAddress(i, 0));
+                assertEquals("comment" + i, comment.getString().getString());
+                assertEquals("author" + i, comment.getAuthor());
+            }
+        }
+    }
+
     @Test
     public void testMoveCommentCopy() throws Exception {
         try (
@@ -245,9 +304,13 @@ public class TestTempFileCommentsTable {
     }
 
     private void testReadXML(boolean encrypt, boolean fullFormat) throws Exception {
+        testReadXML(encrypt, fullFormat, TempFileStoreOptions.DEFAULT);
+    }
+
+    private void testReadXML(boolean encrypt, boolean fullFormat, TempFileStoreOptions options) throws Exception {
         try (
                 InputStream is = getResourceStream("comments1.xml");
-                TempFileCommentsTable ct = new TempFileCommentsTable(encrypt, fullFormat)
+                TempFileCommentsTable ct = new TempFileCommentsTable(encrypt, fullFormat, options)
         ) {
             ct.readFrom(is);
             assertEquals(3, ct.getNumberOfComments());
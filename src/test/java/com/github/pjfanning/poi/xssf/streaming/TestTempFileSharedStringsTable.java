@@ -23,7 +23,9 @@ import static com.github.pjfanning.poi.xssf.streaming.TestIOUtils.getResourceStr
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 
 public class TestTempFileSharedStringsTable {
     @Test
@@ -168,6 +170,448 @@ public class TestTempFileSharedStringsTable {
         }
     }
 
+    @Test
+    public void testFreezeMalformedCountFile() throws Exception {
+        try (
+                InputStream is = getResourceStream("MalformedSSTCount.xlsx");
+                OPCPackage pkg = OPCPackage.open(is);
+                TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false, false)
+        ) {
+            List<PackagePart> parts = pkg.getPartsByName(Pattern.compile("/xl/sharedStrings.xml"));
+            try (InputStream ssStream = parts.get(0).getInputStream()) {
+                sst.readFrom(ssStream);
+            }
+            int uniqueCount = sst.getUniqueCount();
+            String last = sst.getString(uniqueCount - 1);
+            sst.freeze();
+            assertEquals(uniqueCount, sst.getUniqueCount());
+            assertEquals(last, sst.getString(uniqueCount - 1));
+            assertThrows(NoSuchElementException.class, () -> sst.getString(uniqueCount));
+        }
+    }
+
+    @Test
+    public void testCompressedStringsAddAfterMalformedCountFile() throws Exception {
+        try (
+                InputStream is = getResourceStream("MalformedSSTCount.xlsx");
+                OPCPackage pkg = OPCPackage.open(is);
+                TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false, false, true)
+        ) {
+            List<PackagePart> parts = pkg.getPartsByName(Pattern.compile("/xl/sharedStrings.xml"));
+            try (InputStream ssStream = parts.get(0).getInputStream()) {
+                sst.readFrom(ssStream);
+            }
+            int uniqueCount = sst.getUniqueCount();
+            assertEquals(uniqueCount, sst.addSharedStringItem(new XSSFRichTextString("new value")));
+            assertEquals("new value", sst.getString(uniqueCount));
+        }
+    }
+
+    @Test
+    public void testCompressedStringsWithWrongUniqueCount() throws Exception {
+        try (TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false, false, true)) {
+            // uniqueCount is 49 but there is only 1 entry
+            sst.readFrom(new ByteArrayInputStream(MINIMAL_XML.getBytes(StandardCharsets.UTF_8)));
+            assertEquals(49, sst.addSharedStringItem(new XSSFRichTextString("new")));
+            assertEquals(0, sst.addSharedStringItem(new XSSFRichTextString("bla")));
+            assertEquals("new", sst.getString(49));
+            assertThrows(NoSuchElementException.class, () -> sst.getString(1));
+        }
+    }
+
+    @Test
+    public void testAddAfterRead() throws Exception {
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             TempFileSharedStringsTable sst = new TempFileSharedStringsTable()) {
+            sst.readFrom(is);
+            assertEquals("readFrom should not populate the index", 0, mapIndex(sst).getMapSize());
+            assertEquals(0, sst.addSharedStringItem(new XSSFRichTextString("City")));
+            assertEquals(36, sst.addSharedStringItem(new XSSFRichTextString("Sum of Population")));
+            assertEquals(38, sst.addSharedStringItem(new XSSFRichTextString("New City")));
+            assertEquals(38, sst.addSharedStringItem(new XSSFRichTextString("New City")));
+            assertEquals(39, sst.getUniqueCount());
+            assertEquals(64, sst.getCount());
+        }
+    }
+
+    @Test
+    public void testCompressedStrings() throws Exception {
+        testCompressedStrings(false);
+    }
+
+    @Test
+    public void testCompressedStringsFullFormat() throws Exception {
+        testCompressedStrings(true);
+    }
+
+    @Test
+    public void testReadCache() throws Exception {
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false, false)) {
+            sst.readFrom(is);
+            sst.configureReadCache(2, Long.MAX_VALUE);
+            assertEquals("City", sst.getString(0));
+            assertEquals("City", sst.getString(0));
+            assertEquals("Sum of Population", sst.getString(36));
+            assertEquals("City", sst.getString(0));
+            assertEquals(2, sst.getReadCacheHits());
+            assertEquals(2, sst.getReadCacheMisses());
+            sst.configureReadCache(0, 0);
+            assertEquals("City", sst.getString(0));
+            assertEquals(0, sst.getReadCacheHits());
+            assertEquals(0, sst.getReadCacheMisses());
+        }
+    }
+
+    @Test
+    public void testWarm() throws Exception {
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false, false)) {
+            sst.readFrom(is);
+            assertEquals("the read cache is disabled by default", 0, sst.getReadCacheHits() + sst.getReadCacheMisses());
+            sst.configureReadCache(TempFileSharedStringsTable.DEFAULT_READ_CACHE_ENTRIES,
+                    TempFileSharedStringsTable.DEFAULT_READ_CACHE_BYTES);
+            sst.warm(10, 20);
+            for (int i = 10; i < 20; i++) {
+                assertNotNull(sst.getString(i));
+            }
+            assertEquals(10, sst.getReadCacheHits());
+            assertEquals(0, sst.getReadCacheMisses());
+        }
+    }
+
+    @Test
+    public void testReadAhead() throws Exception {
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false, false)) {
+            sst.readFrom(is);
+            sst.configureReadCache(TempFileSharedStringsTable.DEFAULT_READ_CACHE_ENTRIES,
+                    TempFileSharedStringsTable.DEFAULT_READ_CACHE_BYTES);
+            sst.configureReadAhead(8);
+            for (int i = 0; i < 38; i++) {
+                assertNotNull(sst.getString(i));
+            }
+            assertEquals("City", sst.getString(0));
+            assertEquals(39, sst.getReadCacheHits() + sst.getReadCacheMisses());
+        }
+    }
+
+    @Test
+    public void testReadAheadEnablesReadCache() throws Exception {
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false, false)) {
+            sst.readFrom(is);
+            sst.configureReadAhead(8);
+            for (int i = 0; i < 38; i++) {
+                assertNotNull(sst.getString(i));
+            }
+            assertEquals(38, sst.getReadCacheHits() + sst.getReadCacheMisses());
+            // disabling the read cache disables read ahead too
+            sst.configureReadCache(0, 0);
+            assertEquals("City", sst.getString(0));
+            assertEquals(0, sst.getReadCacheHits() + sst.getReadCacheMisses());
+        }
+    }
+
+    @Test
+    public void testFreezeBypassesReadCache() throws Exception {
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false, false)) {
+            sst.readFrom(is);
+            sst.configureReadAhead(8);
+            sst.freeze();
+            assertEquals(0, sst.getReadCacheHits() + sst.getReadCacheMisses());
+            assertEquals("City", sst.getString(0));
+        }
+    }
+
+    @Test
+    public void testCanonicalStrings() throws Exception {
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false, false)) {
+            sst.readFrom(is);
+            sst.configureReadCache(0, 0);
+            sst.configureCanonicalStrings(100);
+            String city = sst.getString(0);
+            assertEquals("City", city);
+            assertSame(city, sst.getString(0));
+            sst.configureCanonicalStrings(0);
+            assertEquals("City", sst.getString(0));
+        }
+    }
+
+    @Test
+    public void testStoreOptions() throws Exception {
+        TempFileStoreOptions options = TempFileStoreOptions.builder()
+                .cacheSize(1)
+                .pageSplitSize(4096)
+                .compressHigh()
+                .autoCommitBufferSize(256)
+                .fileStoreType(TempFileStoreOptions.FileStoreType.NIO_MAPPED)
+                .build();
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             TempFileSharedStringsTable sst = new TempFileSharedStringsTable(true, false, false, options)) {
+            sst.readFrom(is);
+            assertEquals(38, sst.getUniqueCount());
+            assertEquals("City", sst.getItemAt(0).getString());
+            assertEquals(38, sst.addSharedStringItem(new XSSFRichTextString("new-value")));
+            assertEquals("new-value", sst.getItemAt(38).getString());
+        }
+    }
+
+    @Test
+    public void testInMemoryStore() throws Exception {
+        TempFileStoreOptions options = TempFileStoreOptions.builder()
+                .fileStoreType(TempFileStoreOptions.FileStoreType.NIO_MEM_LZF)
+                .build();
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             TempFileSharedStringsTable sst = new TempFileSharedStringsTable(true, false, false, options)) {
+            sst.readFrom(is);
+            assertEquals(38, sst.getUniqueCount());
+            assertEquals("City", sst.getItemAt(0).getString());
+            assertEquals(38, sst.addSharedStringItem(new XSSFRichTextString("new-value")));
+            assertEquals("new-value", sst.getItemAt(38).getString());
+        }
+    }
+
+    @Test
+    public void testEstimateFootprint() throws Exception {
+        TempFileStoreOptions options = TempFileStoreOptions.builder()
+                .fileStoreType(TempFileStoreOptions.FileStoreType.NIO_MEM_LZF)
+                .build();
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false, false, false, options)) {
+            sst.useFingerprintIndex(true);
+            sst.readFrom(is);
+            assertEquals(38, sst.addSharedStringItem(new XSSFRichTextString("New City")));
+            TableFootprint footprint = sst.estimateFootprint();
+            assertEquals(39, footprint.getEntryCount());
+            // the store is in memory, so there is no temp file
+            assertEquals(0, footprint.getTempFileBytes());
+            assertTrue(footprint.getOffHeapBytes() > 0);
+        }
+    }
+
+    @Test
+    public void testEntryLengthLimit() throws Exception {
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             TempFileSharedStringsTable sst = new TempFileSharedStringsTable()) {
+            sst.configureLimits(TableLimits.builder().maxEntryLength(40).build());
+            TableLimitExceededException e = assertThrows(TableLimitExceededException.class, () -> sst.readFrom(is));
+            assertTrue(e.getMessage().contains("40"));
+            // the entries before the long one were read
+            assertEquals(18, sst.getUniqueCount());
+        }
+    }
+
+    @Test
+    public void testBulkLoad() throws Exception {
+        TempFileStoreOptions options = TempFileStoreOptions.builder().bulkLoad(true).build();
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false, false, false, options)) {
+            sst.readFrom(is);
+            assertEquals(38, sst.getUniqueCount());
+            assertEquals("City", sst.getItemAt(0).getString());
+            assertEquals(36, sst.addSharedStringItem(new XSSFRichTextString("Sum of Population")));
+            assertEquals(38, sst.addSharedStringItem(new XSSFRichTextString("New City")));
+        }
+    }
+
+    @Test
+    public void testBuildIndexFromSpilledRuns() throws Exception {
+        StringBuilder xml = new StringBuilder("<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">");
+        for (int i = 0; i < 1000; i++) {
+            // every value is stored twice, 500 entries apart, so duplicates end up in different runs
+            xml.append("<si><t>value").append(i % 500).append("</t></si>");
+        }
+        xml.append("</sst>");
+        try (TempFileSharedStringsTable sst = new TempFileSharedStringsTable()) {
+            mapIndex(sst).setSortRunBytes(4096);
+            sst.readFrom(new ByteArrayInputStream(xml.toString().getBytes(StandardCharsets.UTF_8)));
+            assertEquals(1000, sst.getUniqueCount());
+            // the highest index wins
+            assertEquals(500, sst.addSharedStringItem(new XSSFRichTextString("value0")));
+            assertEquals(999, sst.addSharedStringItem(new XSSFRichTextString("value499")));
+            assertEquals(1000, sst.addSharedStringItem(new XSSFRichTextString("new-value")));
+            assertEquals(501, mapIndex(sst).getMapSize());
+        }
+    }
+
+    @Test
+    public void testDeferredIndex() throws Exception {
+        try (TempFileSharedStringsTable sst = new TempFileSharedStringsTable()) {
+            sst.configureDeferredIndex(10);
+            for (int i = 0; i < 95; i++) {
+                assertEquals(i, sst.addSharedStringItem(new XSSFRichTextString("value" + i)));
+            }
+            // 90 entries have been written to the on-disk index, the last 5 are still pending
+            assertEquals(90, mapIndex(sst).getMapSize());
+            for (int i = 0; i < 95; i++) {
+                assertEquals(i, sst.addSharedStringItem(new XSSFRichTextString("value" + i)));
+            }
+            sst.configureDeferredIndex(0);
+            assertEquals(95, mapIndex(sst).getMapSize());
+            assertEquals(95, sst.getUniqueCount());
+            assertEquals(190, sst.getCount());
+        }
+    }
+
+    @Test
+    public void testNoDedup() throws Exception {
+        try (TempFileSharedStringsTable sst = new TempFileSharedStringsTable()) {
+            sst.configureDedupWindow(0);
+            assertEquals(0, sst.addSharedStringItem(new XSSFRichTextString("value")));
+            assertEquals(1, sst.addSharedStringItem(new XSSFRichTextString("value")));
+            assertEquals(2, sst.getUniqueCount());
+            assertEquals("value", sst.getString(1));
+            assertEquals("the index should not be used", 0, mapIndex(sst).getMapSize());
+            // full dedup indexes the entries that were added without dedup
+            sst.configureDedupWindow(-1);
+            assertEquals(1, sst.addSharedStringItem(new XSSFRichTextString("value")));
+            assertEquals(2, sst.getUniqueCount());
+            assertEquals(3, sst.getCount());
+        }
+    }
+
+    @Test
+    public void testLazyStore() throws Exception {
+        TempFileStoreOptions options = TempFileStoreOptions.builder().inMemoryEntries(4).build();
+        for (boolean compressStrings : new boolean[]{false, true}) {
+            try (TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false, false, compressStrings, options)) {
+                for (int i = 0; i < 4; i++) {
+                    assertEquals(i, sst.addSharedStringItem(new XSSFRichTextString("value" + i)));
+                }
+                assertEquals(1, sst.addSharedStringItem(new XSSFRichTextString("value1")));
+                assertFalse("small tables should not create a temp file", sst.isStoreOpen());
+                assertEquals(0, sst.estimateFootprint().getTempFileBytes());
+                for (int i = 4; i < 10; i++) {
+                    assertEquals(i, sst.addSharedStringItem(new XSSFRichTextString("value" + i)));
+                }
+                assertTrue(sst.isStoreOpen());
+                // the entries that were held in memory were moved to the store
+                for (int i = 0; i < 10; i++) {
+                    assertEquals(i, sst.addSharedStringItem(new XSSFRichTextString("value" + i)));
+                    assertEquals("value" + i, sst.getString(i));
+                }
+                assertEquals(10, sst.getUniqueCount());
+                assertEquals(21, sst.getCount());
+            }
+        }
+    }
+
+    @Test
+    public void testEagerStore() throws Exception {
+        TempFileStoreOptions options = TempFileStoreOptions.builder().inMemoryEntries(0).build();
+        try (TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false, false, false, options)) {
+            // the temp file is created by the constructor, so failures surface as an IOException there
+            assertTrue(sst.isStoreOpen());
+            assertEquals(0, sst.addSharedStringItem(new XSSFRichTextString("value")));
+            assertEquals("value", sst.getString(0));
+        }
+    }
+
+    @Test
+    public void testLazyStoreWriteOut() throws Exception {
+        try (TempFileSharedStringsTable sst = new TempFileSharedStringsTable()) {
+            sst.addSharedStringItem(new XSSFRichTextString("First"));
+            sst.addSharedStringItem(new XSSFRichTextString("Second"));
+            assertFalse(sst.isStoreOpen());
+            UnsynchronizedByteArrayOutputStream bos = UnsynchronizedByteArrayOutputStream.builder().get();
+            sst.writeTo(bos);
+            try (TempFileSharedStringsTable sst2 = new TempFileSharedStringsTable()) {
+                sst2.readFrom(bos.toInputStream());
+                assertTrue(sst2.isStoreOpen());
+                assertEquals(2, sst2.getUniqueCount());
+                assertEquals("Second", sst2.getString(1));
+            }
+        }
+    }
+
+    @Test
+    public void testHotValueCache() throws Exception {
+        try (TempFileSharedStringsTable sst = new TempFileSharedStringsTable()) {
+            sst.configureHotValueCache(TempFileSharedStringsTable.DEFAULT_HOT_VALUE_CACHE_ENTRIES);
+            String[] statuses = {"open", "closed", "pending"};
+            for (int i = 0; i < 300; i++) {
+                assertEquals(i % 3, sst.addSharedStringItem(new XSSFRichTextString(statuses[i % 3])));
+            }
+            assertEquals(3, sst.getUniqueCount());
+            // each value is looked up on disk the first two times it is added
+            assertEquals(300 - 6, sst.getHotValueCacheHits());
+            sst.configureHotValueCache(0);
+            assertEquals(1, sst.addSharedStringItem(new XSSFRichTextString("closed")));
+            assertEquals(0, sst.getHotValueCacheHits());
+        }
+    }
+
+    @Test
+    public void testFingerprintIndex() throws Exception {
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             TempFileSharedStringsTable sst = new TempFileSharedStringsTable()) {
+            sst.useFingerprintIndex(true);
+            sst.readFrom(is);
+            assertEquals(0, sst.addSharedStringItem(new XSSFRichTextString("City")));
+            assertEquals(36, sst.addSharedStringItem(new XSSFRichTextString("Sum of Population")));
+            assertEquals(38, sst.addSharedStringItem(new XSSFRichTextString("New City")));
+            assertEquals(38, sst.addSharedStringItem(new XSSFRichTextString("New City")));
+            assertEquals(39, sst.getUniqueCount());
+            assertTrue(sst.getIndex() instanceof FingerprintStringIndex);
+        }
+    }
+
+    @Test
+    public void testFingerprintIndexAfterAdds() throws Exception {
+        try (TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false, false, true)) {
+            assertEquals(0, sst.addSharedStringItem(new XSSFRichTextString("first")));
+            assertEquals(1, sst.addSharedStringItem(new XSSFRichTextString("second")));
+            // the entries in the map index are moved to the fingerprint index
+            MapStringIndex mapIndex = mapIndex(sst);
+            sst.useFingerprintIndex(false);
+            assertTrue(sst.getIndex() instanceof FingerprintStringIndex);
+            assertEquals(0, mapIndex.getMapSize());
+            assertEquals(1, sst.addSharedStringItem(new XSSFRichTextString("second")));
+            assertEquals(2, sst.addSharedStringItem(new XSSFRichTextString("third")));
+            assertEquals("third", sst.getItemAt(2).getString());
+        }
+    }
+
+    @Test
+    public void testFreeze() throws Exception {
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             TempFileSharedStringsTable sst = new TempFileSharedStringsTable(true)) {
+            sst.readFrom(is);
+            String city = sst.getString(0);
+            sst.freeze();
+            assertTrue(sst.isFrozen());
+            assertEquals(city, sst.getString(0));
+            assertEquals(38, sst.getUniqueCount());
+            assertThrows(NoSuchElementException.class, () -> sst.getString(38));
+            assertThrows(IllegalStateException.class,
+                    () -> sst.addSharedStringItem(new XSSFRichTextString("New City")));
+            // the temp file has been released
+            sst.warm(0, 10);
+            sst.freeze();
+        }
+    }
+
+    @Test
+    public void testFreezeWriteOut() throws Exception {
+        try (InputStream is = getResourceStream("sharedStrings.xml");
+             TempFileSharedStringsTable sst = new TempFileSharedStringsTable()) {
+            sst.readFrom(is);
+            sst.freeze();
+            UnsynchronizedByteArrayOutputStream bos = UnsynchronizedByteArrayOutputStream.builder().get();
+            sst.writeTo(bos);
+            try (TempFileSharedStringsTable sst2 = new TempFileSharedStringsTable()) {
+                sst2.readFrom(bos.toInputStream());
+                assertEquals(sst.getUniqueCount(), sst2.getUniqueCount());
+                for (int i = 0; i < sst.getUniqueCount(); i++) {
+                    assertEquals(sst.getString(i), sst2.getString(i));
+                }
+            }
+        }
+    }
+
     @Test
     public void testWrite() throws Exception {
         testWrite(10, false);
@@ -251,6 +695,32 @@ public class TestTempFileSharedStringsTable {
         }
     }
 
+    private void testCompressedStrings(boolean fullFormat) throws Exception {
+        final int limit = 5000;
+        try (
+                UnsynchronizedByteArrayOutputStream bos = UnsynchronizedByteArrayOutputStream.builder().get();
+                TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false, fullFormat, true)
+        ) {
+            for (int i = 0; i < limit; i++) {
+                assertEquals(i, sst.addSharedStringItem(new XSSFRichTextString("value" + i)));
+            }
+            for (int i = 0; i < limit; i++) {
+                assertEquals(i, sst.addSharedStringItem(new XSSFRichTextString("value" + i)));
+                assertEquals("value" + i, sst.getString(i));
+            }
+            assertEquals(limit, sst.getUniqueCount());
+            sst.writeTo(bos);
+            try (TempFileSharedStringsTable sst2 = new TempFileSharedStringsTable(false, fullFormat, true)) {
+                sst2.readFrom(bos.toInputStream());
+                assertEquals(limit, sst2.getUniqueCount());
+                assertEquals(limit * 2, sst2.getCount());
+                for (int i = limit - 1; i >= 0; i--) {
+                    assertEquals("value" + i, sst2.getString(i));
+                }
+            }
+        }
+    }
+
     private void testWrite(int size, boolean fullFormat) throws Exception {
         java.util.Random rnd = new java.util.Random();
         byte[] bytes = new byte[1028];
@@ -357,4 +827,8 @@ public class TestTempFileSharedStringsTable {
             }
         }
     }
+
+    private static MapStringIndex mapIndex(TempFileSharedStringsTable sst) {
+        return (MapStringIndex) sst.getIndex();
+    }
 }
@@ -0,0 +1,46 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.h2.mvstore.MVStore;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestTempFileStore {
+    @Test
+    public void testOpenAndClose() throws Exception {
+        TempFileStore store = new TempFileStore("test", TempFileStoreOptions.DEFAULT, false, null);
+        assertFalse(store.isOpen());
+        assertNull(store.getStore());
+        assertEquals(0, store.estimateTempFileBytes());
+        MVStore mvStore = store.open();
+        assertTrue(store.isOpen());
+        assertSame(mvStore, store.open());
+        store.close();
+        assertFalse(store.isOpen());
+        assertTrue(mvStore.isClosed());
+        // the store can be opened again, on a new temp file
+        MVStore reopened = store.open();
+        assertNotSame(mvStore, reopened);
+        store.close();
+        assertTrue(reopened.isClosed());
+    }
+
+    @Test
+    public void testPooledStore() throws Exception {
+        try (TempFileStorePool pool = new TempFileStorePool(TempFileStoreOptions.DEFAULT, false)) {
+            TempFileStore store = new TempFileStore("test", pool.getStoreOptions(), false, pool);
+            MVStore mvStore = store.open();
+            assertEquals(0, pool.getIdleCount());
+            store.close();
+            assertFalse(store.isOpen());
+            // the store is returned to the pool rather than closed
+            assertFalse(mvStore.isClosed());
+            assertEquals(1, pool.getIdleCount());
+        }
+    }
+}
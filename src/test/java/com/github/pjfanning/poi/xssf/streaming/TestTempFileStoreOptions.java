@@ -0,0 +1,73 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class TestTempFileStoreOptions {
+    @Test
+    public void testDefaults() {
+        TempFileStoreOptions options = TempFileStoreOptions.DEFAULT;
+        assertEquals(-1, options.getCacheSize());
+        assertEquals(-1, options.getPageSplitSize());
+        assertSame(TempFileStoreOptions.Compression.NONE, options.getCompression());
+        assertEquals(-1, options.getAutoCommitBufferSize());
+        assertEquals(-1, options.getAutoCommitDelay());
+        assertSame(TempFileStoreOptions.FileStoreType.DEFAULT, options.getFileStoreType());
+        assertFalse(options.isBulkLoad());
+        assertEquals(TempFileStoreOptions.DEFAULT_IN_MEMORY_ENTRIES, options.getInMemoryEntries());
+    }
+
+    @Test
+    public void testBuilder() {
+        TempFileStoreOptions options = TempFileStoreOptions.builder()
+                .cacheSize(4)
+                .pageSplitSize(8192)
+                .compress()
+                .autoCommitBufferSize(512)
+                .autoCommitDelay(250)
+                .fileStoreType(TempFileStoreOptions.FileStoreType.NIO_MAPPED)
+                .bulkLoad(true)
+                .inMemoryEntries(0)
+                .build();
+        assertEquals(4, options.getCacheSize());
+        assertEquals(8192, options.getPageSplitSize());
+        assertSame(TempFileStoreOptions.Compression.FAST, options.getCompression());
+        assertEquals(512, options.getAutoCommitBufferSize());
+        assertEquals(250, options.getAutoCommitDelay());
+        assertSame(TempFileStoreOptions.FileStoreType.NIO_MAPPED, options.getFileStoreType());
+        assertTrue(options.isBulkLoad());
+        assertEquals(0, options.getInMemoryEntries());
+        assertSame(TempFileStoreOptions.Compression.HIGH,
+                TempFileStoreOptions.builder().compressHigh().build().getCompression());
+    }
+
+    @Test
+    public void testInMemoryTempFile() throws Exception {
+        TempFileStoreOptions options = TempFileStoreOptions.builder()
+                .fileStoreType(TempFileStoreOptions.FileStoreType.NIO_MEM_LZF)
+                .build();
+        assertTrue(options.getFileStoreType().isInMemory());
+        assertFalse(TempFileStoreOptions.FileStoreType.NIO_MAPPED.isInMemory());
+        File tempFile = options.createTempFile("poi-test");
+        assertFalse("no file should be created on disk", tempFile.exists());
+        assertNotEquals(tempFile, options.createTempFile("poi-test"));
+        assertTrue(options.deleteTempFile(tempFile));
+    }
+
+    @Test
+    public void testInvalidValues() {
+        assertThrows(IllegalArgumentException.class, () -> TempFileStoreOptions.builder().cacheSize(-1));
+        assertThrows(IllegalArgumentException.class, () -> TempFileStoreOptions.builder().pageSplitSize(0));
+        assertThrows(IllegalArgumentException.class, () -> TempFileStoreOptions.builder().autoCommitDelay(-5));
+        assertThrows(IllegalArgumentException.class, () -> TempFileStoreOptions.builder().fileStoreType(null));
+        assertThrows(IllegalArgumentException.class, () -> TempFileStoreOptions.builder().inMemoryEntries(-1));
+    }
+}
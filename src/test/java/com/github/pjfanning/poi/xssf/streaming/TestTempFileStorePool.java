@@ -0,0 +1,122 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.h2.mvstore.MVMap;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class TestTempFileStorePool {
+    private static final TempFileStoreOptions OPTIONS = TempFileStoreOptions.builder().inMemoryEntries(0).build();
+
+    @Test
+    public void testReleaseClearsStore() throws Exception {
+        try (TempFileStorePool pool = new TempFileStorePool(OPTIONS, false)) {
+            TempFileStorePool.PooledStore store = pool.acquire();
+            MVMap<Integer, String> map = store.getStore().openMap("test");
+            map.put(1, "value");
+            pool.release(store);
+            assertEquals(1, pool.getIdleCount());
+            TempFileStorePool.PooledStore reused = pool.acquire();
+            assertSame(store, reused);
+            assertTrue("the maps of the previous user should be removed", reused.getStore().getMapNames().isEmpty());
+            assertTrue(reused.getStore().<Integer, String>openMap("test").isEmpty());
+            assertEquals(1, pool.getCreatedCount());
+            assertEquals(1, pool.getReusedCount());
+            pool.release(reused);
+        }
+    }
+
+    @Test
+    public void testSharedStringsTable() throws Exception {
+        try (TempFileStorePool pool = new TempFileStorePool(OPTIONS, true)) {
+            for (int i = 0; i < 3; i++) {
+                try (TempFileSharedStringsTable sst = new TempFileSharedStringsTable(false, false, pool)) {
+                    assertEquals(0, sst.addSharedStringItem(new XSSFRichTextString("table" + i)));
+                    assertEquals(1, sst.addSharedStringItem(new XSSFRichTextString("value")));
+                    assertEquals(0, sst.addSharedStringItem(new XSSFRichTextString("table" + i)));
+                    assertTrue(sst.isStoreOpen());
+                    assertEquals(2, sst.getUniqueCount());
+                    assertEquals("table" + i, sst.getString(0));
+                    assertEquals(0, pool.getIdleCount());
+                }
+                assertEquals(1, pool.getIdleCount());
+            }
+            assertEquals(1, pool.getCreatedCount());
+            assertEquals(2, pool.getReusedCount());
+        }
+    }
+
+    @Test
+    public void testPrefill() throws Exception {
+        try (TempFileStorePool pool = new TempFileStorePool(OPTIONS, false, 2)) {
+            pool.prefill(3);
+            assertEquals(2, pool.getIdleCount());
+            assertEquals(2, pool.getCreatedCount());
+            pool.prefill(1);
+            assertEquals(2, pool.getCreatedCount());
+        }
+    }
+
+    @Test
+    public void testFullPoolDiscardsStore() throws Exception {
+        try (TempFileStorePool pool = new TempFileStorePool(OPTIONS, false, 0)) {
+            TempFileStorePool.PooledStore store = pool.acquire();
+            assertTrue(store.getTempFile().exists());
+            pool.release(store);
+            assertEquals(0, pool.getIdleCount());
+            assertTrue(store.getStore().isClosed());
+            assertFalse("temp file should be deleted", store.getTempFile().exists());
+        }
+    }
+
+    @Test
+    public void testBigStoreDiscarded() throws Exception {
+        try (TempFileStorePool pool = new TempFileStorePool(OPTIONS, false, 2, 64 * 1024)) {
+            TempFileStorePool.PooledStore store = pool.acquire();
+            MVMap<Integer, String> map = store.getStore().openMap("test");
+            StringBuilder value = new StringBuilder();
+            for (int i = 0; i < 1000; i++) {
+                value.append(i);
+            }
+            for (int i = 0; i < 1000; i++) {
+                map.put(i, i + value.toString());
+            }
+            store.getStore().commit();
+            assertTrue(TempFileStoreOptions.fileBytes(store.getStore()) > pool.getMaxIdleFileBytes());
+            pool.release(store);
+            assertEquals(0, pool.getIdleCount());
+            assertTrue(store.getStore().isClosed());
+            assertFalse("temp file should be deleted", store.getTempFile().exists());
+        }
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        TempFileStorePool pool = new TempFileStorePool(OPTIONS, false);
+        pool.prefill(1);
+        TempFileStorePool.PooledStore idle = pool.acquire();
+        TempFileStorePool.PooledStore leased = pool.acquire();
+        pool.release(idle);
+        pool.close();
+        assertEquals(0, pool.getIdleCount());
+        assertTrue(idle.getStore().isClosed());
+        assertFalse(idle.getTempFile().exists());
+        assertThrows(IllegalStateException.class, pool::acquire);
+        // stores that are released after the pool is closed are discarded
+        pool.release(leased);
+        assertTrue(leased.getStore().isClosed());
+        assertFalse(leased.getTempFile().exists());
+    }
+
+    @Test
+    public void testInvalidValues() {
+        assertThrows(IllegalArgumentException.class, () -> new TempFileStorePool(null, false));
+        assertThrows(IllegalArgumentException.class, () -> new TempFileStorePool(OPTIONS, false, -1));
+        assertThrows(IllegalArgumentException.class, () -> new TempFileStorePool(OPTIONS, false, 1, -1));
+    }
+}
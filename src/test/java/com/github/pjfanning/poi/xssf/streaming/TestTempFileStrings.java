@@ -0,0 +1,78 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestTempFileStrings {
+    @Test
+    public void testMoveTo() throws Exception {
+        testMoveTo(false);
+    }
+
+    @Test
+    public void testMoveToCompressed() throws Exception {
+        testMoveTo(true);
+    }
+
+    @Test
+    public void testLoadRange() throws Exception {
+        TempFileStore store = new TempFileStore("test", TempFileStoreOptions.DEFAULT, false, null);
+        try {
+            for (boolean compressStrings : new boolean[]{false, true}) {
+                TempFileStrings strings = new TempFileStrings(compressStrings);
+                for (int i = 0; i < 10; i++) {
+                    strings.put(i, "value" + i);
+                }
+                if (compressStrings) {
+                    store.open();
+                    strings.moveTo(store.getStore());
+                }
+                StringCache cache = new StringCache(100, 1024 * 1024);
+                strings.loadRange(cache, 5, 20);
+                assertEquals(5, cache.size());
+                assertEquals("value9", cache.get(9));
+                assertNull(cache.get(4));
+                strings.close();
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    private void testMoveTo(boolean compressStrings) throws Exception {
+        TempFileStore store = new TempFileStore("test", TempFileStoreOptions.DEFAULT, false, null);
+        TempFileStrings strings = new TempFileStrings(compressStrings);
+        try {
+            strings.put(0, "first");
+            strings.put(1, "second");
+            assertFalse(strings.isStored());
+            strings.moveTo(store.open());
+            assertTrue(strings.isStored());
+            strings.put(2, "third");
+            assertEquals("first", strings.get(0));
+            assertEquals("third", strings.get(2));
+            assertNull(strings.get(3));
+            List<Integer> indexes = new ArrayList<>();
+            Iterator<Integer> idIter = strings.indexIterator();
+            while (idIter.hasNext()) {
+                indexes.add(idIter.next());
+            }
+            assertEquals(Arrays.asList(0, 1, 2), indexes);
+            List<String> entries = new ArrayList<>();
+            strings.forEach((entry, idx) -> entries.add(idx + "=" + entry));
+            assertEquals(Arrays.asList("0=first", "1=second", "2=third"), entries);
+        } finally {
+            strings.close();
+            store.close();
+        }
+    }
+}
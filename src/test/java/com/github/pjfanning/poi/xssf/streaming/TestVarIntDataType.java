@@ -0,0 +1,40 @@
+package com.github.pjfanning.poi.xssf.streaming;
+
+import org.h2.mvstore.WriteBuffer;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestVarIntDataType {
+    @Test
+    public void testRoundTrip() {
+        int[] values = {0, 1, 127, 128, 16383, 16384, 2_000_000, Integer.MAX_VALUE};
+        WriteBuffer buff = new WriteBuffer();
+        for (int value : values) {
+            VarIntDataType.INSTANCE.write(buff, value);
+        }
+        ByteBuffer read = buff.getBuffer();
+        read.flip();
+        for (int value : values) {
+            assertEquals(value, (int) VarIntDataType.INSTANCE.read(read));
+        }
+        assertEquals(0, read.remaining());
+    }
+
+    @Test
+    public void testSmallIndexesUseOneByte() {
+        WriteBuffer buff = new WriteBuffer();
+        VarIntDataType.INSTANCE.write(buff, 100);
+        assertEquals(1, buff.getBuffer().position());
+    }
+
+    @Test
+    public void testCompare() {
+        assertTrue(VarIntDataType.INSTANCE.compare(1, 200) < 0);
+        assertTrue(VarIntDataType.INSTANCE.compare(200, 1) > 0);
+        assertEquals(0, VarIntDataType.INSTANCE.compare(5, 5));
+    }
+}